@@ -16,39 +16,56 @@
 
 package mk.gdx.firebase.android.database;
 
-import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.MutableData;
-import com.google.firebase.database.Transaction;
+import com.google.firebase.database.Query;
 import com.google.firebase.database.ValueEventListener;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import mk.gdx.firebase.callbacks.CompleteCallback;
 import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.DelegatingCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
 import mk.gdx.firebase.callbacks.TransactionCallback;
-import mk.gdx.firebase.distributions.AnalyticsDistribution;
+import mk.gdx.firebase.callbacks.TypedCallback;
+import mk.gdx.firebase.database.CallbackDispatcher;
+import mk.gdx.firebase.database.ChildEventType;
+import mk.gdx.firebase.database.DatabaseRef;
+import mk.gdx.firebase.database.DecodedValueCache;
+import mk.gdx.firebase.database.LazySnapshot;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.ListenerRegistry;
+import mk.gdx.firebase.database.TransactionPolicy;
+import mk.gdx.firebase.database.TypeToken;
+import mk.gdx.firebase.database.ValueMapper;
+import mk.gdx.firebase.database.ValueMappers;
 import mk.gdx.firebase.distributions.DatabaseDistribution;
 import mk.gdx.firebase.exceptions.DatabaseReferenceNotSetException;
+import mk.gdx.firebase.listeners.ChildChangeListener;
 import mk.gdx.firebase.listeners.ConnectedListener;
 import mk.gdx.firebase.listeners.DataChangeListener;
 
 /**
  * Android Firebase database API implementation.
  * <p>
+ * Every operation is delegated to the {@link Ref} created by {@link #inReference(String)}.
  *
  * @see DatabaseDistribution
  */
 public class Database implements DatabaseDistribution {
 
-    private DatabaseReference databaseReference;
-    private String databasePath;
-    private ObjectMap<String, Array<ValueEventListener>> valueEventListeners;
+    private Ref ref;
+    private final ObjectMap<String, ValueObserver> valueObservers;
+    private final ListenerRegistry<QueryListenerRegistration> childListeners;
+    private final ListenerRegistry<QueryListenerRegistration> primitiveListeners;
+    private volatile DecodedValueCache decodedValueCache;
+    private volatile CallbackDispatcher callbackDispatcher;
     private ConnectedListener connectedListener;
     private ConnectionValueListener connectionValueListener;
 
@@ -57,7 +74,10 @@ public class Database implements DatabaseDistribution {
      */
     public Database()
     {
-        valueEventListeners = new ObjectMap<>();
+        valueObservers = new ObjectMap<>();
+        childListeners = new ListenerRegistry<>();
+        primitiveListeners = new ListenerRegistry<>();
+        callbackDispatcher = new CallbackDispatcher(CallbackDispatcher.Mode.IMMEDIATE);
     }
 
     /**
@@ -84,18 +104,26 @@ public class Database implements DatabaseDistribution {
     @Override
     public DatabaseDistribution inReference(String databasePath)
     {
-        databaseReference = FirebaseDatabase.getInstance().getReference(databasePath);
-        this.databasePath = databasePath;
+        ref = (Ref) ref(databasePath);
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseRef ref(String databasePath)
+    {
+        return new Ref(this, FirebaseDatabase.getInstance().getReference(databasePath), databasePath);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void setValue(Object value)
     {
-        databaseReference().setValue(value);
+        ref().setValue(value);
         terminateOperation();
     }
 
@@ -105,17 +133,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public void setValue(Object value, final CompleteCallback completeCallback)
     {
-        databaseReference().setValue(value, new DatabaseReference.CompletionListener() {
-            @Override
-            public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference)
-            {
-                if (databaseError != null) {
-                    completeCallback.onError(databaseError.toException());
-                } else {
-                    completeCallback.onSuccess();
-                }
-            }
-        });
+        ref().setValue(value, completeCallback);
         terminateOperation();
     }
 
@@ -123,26 +141,19 @@ public class Database implements DatabaseDistribution {
      * {@inheritDoc}
      */
     @Override
-    @SuppressWarnings("unchecked")
     public <T, E extends T> void readValue(final Class<T> dataType, final DataCallback<E> callback)
     {
-        databaseReference().addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(DataSnapshot dataSnapshot)
-            {
-                if (dataType == List.class || dataType == Map.class) {
-                    callback.onData((E) dataSnapshot.getValue());
-                } else {
-                    callback.onData((E) dataSnapshot.getValue(dataType));
-                }
-            }
+        ref().readValue(dataType, callback);
+        terminateOperation();
+    }
 
-            @Override
-            public void onCancelled(DatabaseError databaseError)
-            {
-                callback.onError(databaseError.toException());
-            }
-        });
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void readValue(Class<T> dataType, ElementCallback<R> callback)
+    {
+        ref().readValue(dataType, callback);
         terminateOperation();
     }
 
@@ -150,21 +161,22 @@ public class Database implements DatabaseDistribution {
      * {@inheritDoc}
      */
     @Override
-    public <T, R extends T> void onDataChange(Class<T> dataType, DataChangeListener<R> listener)
-    {
-        if (listener != null) {
-            DataChangeValueListener<T, R> dataChangeListener = new DataChangeValueListener<>(dataType, listener);
-            if (!valueEventListeners.containsKey(databasePath))
-                valueEventListeners.put(databasePath, new Array<ValueEventListener>());
-            valueEventListeners.get(databasePath).add(dataChangeListener);
-            databaseReference().addValueEventListener(dataChangeListener);
-        } else {
-            Array<ValueEventListener> listeners = valueEventListeners.get(databasePath);
-            for (ValueEventListener v : listeners) {
-                databaseReference().removeEventListener(v);
-            }
-        }
+    public <T, R extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<R> listener)
+    {
+        ListenerRegistration registration = ref().onDataChange(dataType, listener);
+        terminateOperation();
+        return registration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events)
+    {
+        ListenerRegistration registration = ref().onChildChange(dataType, listener, events);
         terminateOperation();
+        return registration;
     }
 
     /**
@@ -173,8 +185,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public DatabaseDistribution push()
     {
-        databaseReference = databaseReference().push();
-        databasePath = databasePath + "/" + databaseReference.getKey();
+        ref = ref().push();
         return this;
     }
 
@@ -184,7 +195,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public void removeValue()
     {
-        databaseReference().removeValue();
+        ref().removeValue();
         terminateOperation();
     }
 
@@ -194,17 +205,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public void removeValue(final CompleteCallback completeCallback)
     {
-        databaseReference().removeValue(new DatabaseReference.CompletionListener() {
-            @Override
-            public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference)
-            {
-                if (databaseError != null) {
-                    completeCallback.onError(databaseError.toException());
-                } else {
-                    completeCallback.onSuccess();
-                }
-            }
-        });
+        ref().removeValue(completeCallback);
         terminateOperation();
     }
 
@@ -214,7 +215,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public void updateChildren(Map<String, Object> data)
     {
-        databaseReference().updateChildren(data);
+        ref().updateChildren(data);
         terminateOperation();
     }
 
@@ -224,17 +225,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public void updateChildren(Map<String, Object> data, final CompleteCallback completeCallback)
     {
-        databaseReference().updateChildren(data, new DatabaseReference.CompletionListener() {
-            @Override
-            public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference)
-            {
-                if (databaseError != null) {
-                    completeCallback.onError(databaseError.toException());
-                } else {
-                    completeCallback.onSuccess();
-                }
-            }
-        });
+        ref().updateChildren(data, completeCallback);
         terminateOperation();
     }
 
@@ -242,34 +233,19 @@ public class Database implements DatabaseDistribution {
      * {@inheritDoc}
      */
     @Override
-    @SuppressWarnings("unchecked")
     public <T, R extends T> void transaction(final Class<T> dataType, final TransactionCallback<R> transactionCallback, final CompleteCallback completeCallback)
     {
-        databaseReference().runTransaction(new Transaction.Handler() {
-            @Override
-            public Transaction.Result doTransaction(MutableData mutableData)
-            {
-                R transactionData = null;
-                if (dataType == List.class || dataType == Map.class) {
-                    transactionData = (R) mutableData.getValue();
-                } else {
-                    transactionData = (R) mutableData.getValue(dataType);
-                }
-                mutableData.setValue(transactionCallback.run(transactionData));
-                return Transaction.success(mutableData);
-            }
+        ref().transaction(dataType, transactionCallback, completeCallback);
+        terminateOperation();
+    }
 
-            @Override
-            public void onComplete(DatabaseError databaseError, boolean b, DataSnapshot dataSnapshot)
-            {
-                if (completeCallback == null) return;
-                if (databaseError != null) {
-                    completeCallback.onError(databaseError.toException());
-                } else {
-                    completeCallback.onSuccess();
-                }
-            }
-        });
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, TransactionPolicy transactionPolicy, CompleteCallback completeCallback)
+    {
+        ref().transaction(dataType, transactionCallback, transactionPolicy, completeCallback);
         terminateOperation();
     }
 
@@ -286,81 +262,226 @@ public class Database implements DatabaseDistribution {
      * {@inheritDoc}
      */
     @Override
-    public void keepSynced(boolean synced)
+    public void setDecodedValueCacheSize(long maxBytes)
     {
-        databaseReference().keepSynced(synced);
+        decodedValueCache = maxBytes > 0 ? new DecodedValueCache(maxBytes) : null;
     }
 
     /**
-     * Simple getter of {@link DatabaseReference} which which this {@link Database} instance will be deal with.
-     *
-     * @return FirebaseSDK Database reference. Every action will be deal with it.
-     * @throws DatabaseReferenceNotSetException It is thrown when user forgot to call {@link #inReference(String)}
+     * {@inheritDoc}
      */
-    private DatabaseReference databaseReference()
+    @Override
+    public void setCallbackDispatcher(CallbackDispatcher callbackDispatcher)
     {
-        if (databaseReference == null)
-            throw new DatabaseReferenceNotSetException("Please call GdxFIRDatabase#inReference() first.");
-        return databaseReference;
+        this.callbackDispatcher = callbackDispatcher;
     }
 
     /**
-     * Reset {@link #databaseReference} and {@link #databasePath} to initial state.
-     * After each flow-terminate operation{@link #databaseReference} and {@link #databasePath} should be reset the initial value,
-     * it forces the users to call {@link #inReference(String)} before each flow-terminate operation.
+     * @return Dispatcher which wraps callbacks and listeners given by user
+     */
+    CallbackDispatcher getCallbackDispatcher()
+    {
+        return callbackDispatcher;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void keepSynced(boolean synced)
+    {
+        ref().keepSynced(synced);
+    }
+
+    /**
+     * Gives type of the data wanted by the callback or listener given by user.
      * <p>
-     * Flow-terminate operations are: <uL>
-     * <li>{@link #setValue(Object)}</li>
-     * <li>{@link #setValue(Object, CompleteCallback)}</li>
-     * <li>{@link #readValue(Class, DataCallback)}</li>
-     * <li>{@link #onDataChange(Class, DataChangeListener)}</li>
-     * <li>{@link #updateChildren(Map)}</li>
-     * <li>{@link #updateChildren(Map, CompleteCallback)}</li>
-     * <li>{@link #transaction(Class, TransactionCallback, CompleteCallback)}</li>
-     * </uL>
+     * Element type of {@link List} is known only if the callback is {@link TypedCallback}, then list elements are mapped to it.
+     *
+     * @param dataType Wanted type
+     * @param callback Callback or listener given by user, before it is wrapped by {@link CallbackDispatcher}
+     * @return Type token, not null
      */
-    private void terminateOperation()
+    static TypeToken<?> typeOf(Class<?> dataType, Object callback)
     {
-        databaseReference = null;
-        databasePath = null;
+        if (dataType == List.class) {
+            while (callback instanceof DelegatingCallback && !(callback instanceof TypedCallback))
+                callback = ((DelegatingCallback) callback).getDelegate();
+            if (callback instanceof TypedCallback && ((TypedCallback) callback).getTypeToken().getElementType() != null)
+                return TypeToken.listOf(((TypedCallback) callback).getTypeToken().getElementType());
+        }
+        return TypeToken.of(dataType);
     }
 
     /**
-     * Wrapper for {@link ValueEventListener} used when need to deal with {@link DatabaseReference#addValueEventListener(ValueEventListener)}
+     * Gets value of the snapshot as instance of the wanted type, reuses objects decoded earlier if the snapshot has not changed.
+     * <p>
+     * Snapshot is read by Firebase SDK only once for the lookup, on cache miss the object is mapped by {@link ValueMapper} from the same raw value<p>
+     * or by Firebase SDK.
+     * <p>
+     * List with known element type is built from snapshot children, each child is cached under its own key -<p>
+     * when only some children have changed, only they are mapped again.
+     * <p>
+     * {@link Map} and lists without element type are not mapped anyway and {@link LazySnapshot} does not read the value, they are not cached.
      *
-     * @param <T> Class of object that we want to listen for change
-     * @param <R> Generic type of object that we want to listen for change. For ex. in case of List we cant put {@code List<String>.class} as dataType, so we can put it here.
+     * @param key          Path with query id
+     * @param dataSnapshot Snapshot from Firebase SDK
+     * @param type         Wanted type
+     * @return Snapshot value, may be null
      */
-    private class DataChangeValueListener<T, R extends T> implements ValueEventListener {
+    Object getValue(String key, DataSnapshot dataSnapshot, TypeToken<?> type)
+    {
+        DecodedValueCache cache = decodedValueCache;
+        if (type.getRawType() == List.class && isMapped(type.getElementType()))
+            return childrenToList(key, dataSnapshot, type.getElementType(), cache);
+        if (cache == null || !isMapped(type.getRawType()))
+            return RefQuery.getValue(dataSnapshot, type.getRawType());
+        return getMappedValue(key, dataSnapshot, type.getRawType(), cache);
+    }
 
-        private Class<T> dataType;
-        private DataChangeListener<R> dataChangeListener;
+    /**
+     * @param key          Path with query id
+     * @param dataSnapshot Snapshot which children are list elements
+     * @param elementType  Type of list elements
+     * @param cache        Cache of decoded objects, may be null
+     * @return Values of the children in order of the query, null if snapshot does not exist
+     */
+    private static List<Object> childrenToList(String key, DataSnapshot dataSnapshot, Class<?> elementType, DecodedValueCache cache)
+    {
+        if (!dataSnapshot.exists())
+            return null;
+        List<Object> list = new ArrayList<>((int) dataSnapshot.getChildrenCount());
+        for (DataSnapshot child : dataSnapshot.getChildren()) {
+            list.add(cache != null ? getMappedValue(key + "/" + child.getKey(), child, elementType, cache)
+                    : RefQuery.getValue(child, elementType));
+        }
+        return list;
+    }
 
-        public DataChangeValueListener(Class<T> dataType, DataChangeListener<R> dataChangeListener)
-        {
-            this.dataChangeListener = dataChangeListener;
-            this.dataType = dataType;
+    /**
+     * @param key          Key of the value inside the cache
+     * @param dataSnapshot Snapshot from Firebase SDK
+     * @param dataType     POJO type
+     * @param cache        Cache of decoded objects
+     * @return Snapshot value, may be null
+     */
+    private static Object getMappedValue(String key, DataSnapshot dataSnapshot, Class<?> dataType, DecodedValueCache cache)
+    {
+        Object raw = dataSnapshot.getValue();
+        if (!(raw instanceof Map) && !(raw instanceof List))
+            return RefQuery.getValue(dataSnapshot, dataType);
+        int rawHash = raw.hashCode();
+        Object value = cache.get(key, dataType, raw, rawHash);
+        if (value == null) {
+            ValueMapper<?> mapper = ValueMappers.get(dataType);
+            value = mapper != null ? RefQuery.fromMap(mapper, raw) : dataSnapshot.getValue(dataType);
+            cache.put(key, dataType, raw, rawHash, value);
         }
+        return value;
+    }
 
+    /**
+     * @param dataType Wanted type, may be null
+     * @return True if objects of the type are mapped from snapshot value
+     */
+    private static boolean isMapped(Class<?> dataType)
+    {
+        return dataType != null && dataType != Object.class && dataType != LazySnapshot.class
+                && !List.class.isAssignableFrom(dataType) && !Map.class.isAssignableFrom(dataType);
+    }
 
-        @Override
-        @SuppressWarnings("unchecked")
-        public void onDataChange(DataSnapshot dataSnapshot)
-        {
-            if (dataType == List.class || dataType == Map.class) {
-                dataChangeListener.onChange((R) dataSnapshot.getValue());
-            } else {
-                dataChangeListener.onChange((R) dataSnapshot.getValue(dataType));
+    /**
+     * Adds data change listener to the observer shared by all listeners of the same query, creates observer if needed.
+     *
+     * @param key      Path with query id
+     * @param query    Firebase SDK query
+     * @param type     Type of data which {@code listener} wants to get
+     * @param listener Listener
+     * @return Handle which removes only the given {@code listener}
+     */
+    ListenerRegistration addValueListener(String key, Query query, TypeToken<?> type, DataChangeListener<?> listener)
+    {
+        ValueObserver observer;
+        ListenerRegistration registration;
+        synchronized (valueObservers) {
+            observer = valueObservers.get(key);
+            if (observer == null) {
+                observer = new ValueObserver(this, valueObservers, key, query);
+                valueObservers.put(key, observer);
             }
+            registration = observer.add(type, listener);
         }
+        observer.deliverCurrent(registration);
+        return registration;
+    }
 
-        @Override
-        public void onCancelled(DatabaseError databaseError)
-        {
-            dataChangeListener.onCanceled(databaseError.toException());
+    /**
+     * Removes all data change listeners of the query and detaches its observer, listeners of primitive values as well.
+     *
+     * @param key Path with query id
+     */
+    void removeValueListeners(String key)
+    {
+        ValueObserver observer;
+        synchronized (valueObservers) {
+            observer = valueObservers.get(key);
+        }
+        if (observer != null)
+            observer.removeAll();
+        for (QueryListenerRegistration registration : primitiveListeners.removeAll(key)) {
+            registration.detach();
         }
+    }
 
+    /**
+     * @return Registry of listeners added by {@link Ref#onChildChange(Class, ChildChangeListener, ChildEventType...)}
+     */
+    ListenerRegistry<QueryListenerRegistration> getChildListeners()
+    {
+        return childListeners;
+    }
+
+    /**
+     * @return Registry of listeners added by {@code onLongChange}, {@code onDoubleChange}, {@code onBooleanChange} and {@code onStringChange}
+     */
+    ListenerRegistry<QueryListenerRegistration> getPrimitiveListeners()
+    {
+        return primitiveListeners;
+    }
 
+    /**
+     * Simple getter of {@link Ref} which which this {@link Database} instance will be deal with.
+     *
+     * @return Database reference handle. Every action will be deal with it.
+     * @throws DatabaseReferenceNotSetException It is thrown when user forgot to call {@link #inReference(String)}
+     */
+    private Ref ref()
+    {
+        if (ref == null)
+            throw new DatabaseReferenceNotSetException("Please call GdxFIRDatabase#inReference() first.");
+        return ref;
+    }
+
+    /**
+     * Reset {@link #ref} to initial state.
+     * After each flow-terminate operation {@link #ref} should be reset the initial value,
+     * it forces the users to call {@link #inReference(String)} before each flow-terminate operation.
+     * <p>
+     * Flow-terminate operations are: <uL>
+     * <li>{@link #setValue(Object)}</li>
+     * <li>{@link #setValue(Object, CompleteCallback)}</li>
+     * <li>{@link #readValue(Class, DataCallback)}</li>
+     * <li>{@link #onDataChange(Class, DataChangeListener)}</li>
+     * <li>{@link #onChildChange(Class, ChildChangeListener, ChildEventType...)}</li>
+     * <li>{@link #updateChildren(Map)}</li>
+     * <li>{@link #updateChildren(Map, CompleteCallback)}</li>
+     * <li>{@link #transaction(Class, TransactionCallback, CompleteCallback)}</li>
+     * <li>{@link #transaction(Class, TransactionCallback, TransactionPolicy, CompleteCallback)}</li>
+     * </uL>
+     */
+    private void terminateOperation()
+    {
+        ref = null;
     }
 
     /**
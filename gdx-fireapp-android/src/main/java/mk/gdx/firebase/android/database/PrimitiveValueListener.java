@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.android.database;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.ValueEventListener;
+
+import mk.gdx.firebase.callbacks.PrimitiveValueHandler;
+
+/**
+ * {@link ValueEventListener} which passes snapshot value to callback or listener of primitive value.
+ * <p>
+ * Value is taken by {@link DataSnapshot#getValue()}, so Firebase SDK class mapping is not involved.<p>
+ * Kind of the value is fixed by {@link PrimitiveValueHandler} chosen at registration.
+ */
+class PrimitiveValueListener implements ValueEventListener {
+
+    private final PrimitiveValueHandler handler;
+
+    /**
+     * @param handler Handler of the primitive value
+     */
+    PrimitiveValueListener(PrimitiveValueHandler handler)
+    {
+        this.handler = handler;
+    }
+
+    @Override
+    public void onDataChange(DataSnapshot dataSnapshot)
+    {
+        handler.handle(dataSnapshot.getValue());
+    }
+
+    @Override
+    public void onCancelled(DatabaseError databaseError)
+    {
+        handler.fail(databaseError.toException());
+    }
+}
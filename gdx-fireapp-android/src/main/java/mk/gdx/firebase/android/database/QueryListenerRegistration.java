@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.android.database;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.ListenerRegistry;
+
+/**
+ * Android implementation of {@link ListenerRegistration}.
+ * <p>
+ * Keeps Firebase SDK child or value listener together with the {@link Query} it was attached to, so it can be detached alone.
+ */
+class QueryListenerRegistration implements ListenerRegistration {
+
+    private final ListenerRegistry<QueryListenerRegistration> registry;
+    private final String key;
+    private final Query query;
+    private final ChildEventListener childEventListener;
+    private final ValueEventListener valueEventListener;
+
+    /**
+     * @param registry           Registry which keeps this registration
+     * @param key                Key of the listened query inside {@code registry}
+     * @param query              Firebase SDK query
+     * @param childEventListener Listener attached to the {@code query}
+     */
+    QueryListenerRegistration(ListenerRegistry<QueryListenerRegistration> registry, String key, Query query, ChildEventListener childEventListener)
+    {
+        this(registry, key, query, childEventListener, null);
+    }
+
+    /**
+     * @param registry           Registry which keeps this registration
+     * @param key                Key of the listened query inside {@code registry}
+     * @param query              Firebase SDK query
+     * @param valueEventListener Listener attached to the {@code query}
+     */
+    QueryListenerRegistration(ListenerRegistry<QueryListenerRegistration> registry, String key, Query query, ValueEventListener valueEventListener)
+    {
+        this(registry, key, query, null, valueEventListener);
+    }
+
+    private QueryListenerRegistration(ListenerRegistry<QueryListenerRegistration> registry, String key, Query query,
+                                      ChildEventListener childEventListener, ValueEventListener valueEventListener)
+    {
+        this.registry = registry;
+        this.key = key;
+        this.query = query;
+        this.childEventListener = childEventListener;
+        this.valueEventListener = valueEventListener;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove()
+    {
+        if (registry.remove(key, this))
+            detach();
+    }
+
+    /**
+     * Attaches listener to the query and keeps this registration in the registry.
+     */
+    void attach()
+    {
+        registry.add(key, this);
+        if (childEventListener != null)
+            query.addChildEventListener(childEventListener);
+        else
+            query.addValueEventListener(valueEventListener);
+    }
+
+    /**
+     * Detaches listener from the query, registry is not touched.
+     */
+    void detach()
+    {
+        if (childEventListener != null)
+            query.removeEventListener(childEventListener);
+        else
+            query.removeEventListener(valueEventListener);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.android.database;
+
+import com.badlogic.gdx.utils.TimeUtils;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Transaction;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.callbacks.TransactionCallback;
+import mk.gdx.firebase.callbacks.TransactionCompleteCallback;
+import mk.gdx.firebase.database.DatabaseRef;
+import mk.gdx.firebase.database.TransactionMetrics;
+import mk.gdx.firebase.database.TransactionPolicy;
+import mk.gdx.firebase.database.ValueMapper;
+import mk.gdx.firebase.database.ValueMappers;
+import mk.gdx.firebase.exceptions.TransactionAbortedException;
+import mk.gdx.firebase.helpers.ValueMapperHelper;
+
+/**
+ * Android implementation of {@link DatabaseRef}.
+ * <p>
+ * Keeps {@link DatabaseReference} resolved once in the constructor, all fields are final so instance can be shared between threads.
+ * <p>
+ * Reading and listening is inherited from {@link RefQuery} - reference is a not filtered query.
+ *
+ * @see DatabaseRef
+ */
+public class Ref extends RefQuery implements DatabaseRef {
+
+    private final DatabaseReference databaseReference;
+
+    /**
+     * @param database          Database distribution which holds listeners registered by this handle
+     * @param databaseReference Firebase SDK reference for {@code databasePath}
+     * @param databasePath      Database path
+     */
+    Ref(Database database, DatabaseReference databaseReference, String databasePath)
+    {
+        super(database, databaseReference, databasePath, "");
+        this.databaseReference = databaseReference;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseRef child(String childPath)
+    {
+        return new Ref(database, databaseReference.child(childPath), databasePath + "/" + childPath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Ref push()
+    {
+        DatabaseReference pushed = databaseReference.push();
+        return new Ref(database, pushed, databasePath + "/" + pushed.getKey());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value)
+    {
+        databaseReference.setValue(ValueMapperHelper.toData(value));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value, CompleteCallback completeCallback)
+    {
+        databaseReference.setValue(ValueMapperHelper.toData(value), new CompletionListener(database.getCallbackDispatcher().wrap(completeCallback)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue()
+    {
+        databaseReference.removeValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue(CompleteCallback completeCallback)
+    {
+        databaseReference.removeValue(new CompletionListener(database.getCallbackDispatcher().wrap(completeCallback)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data)
+    {
+        databaseReference.updateChildren(ValueMapperHelper.toData(data));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data, CompleteCallback completeCallback)
+    {
+        databaseReference.updateChildren(ValueMapperHelper.toData(data), new CompletionListener(database.getCallbackDispatcher().wrap(completeCallback)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, CompleteCallback completeCallback)
+    {
+        transaction(dataType, transactionCallback, null, completeCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R extends T> void transaction(final Class<T> dataType, final TransactionCallback<R> transactionCallback, final TransactionPolicy transactionPolicy,
+                                             CompleteCallback completeCallback)
+    {
+        final CompleteCallback dispatchedCallback = database.getCallbackDispatcher().wrap(completeCallback);
+        final ValueMapper<T> mapper = ValueMappers.get(dataType);
+        final long startTime = TimeUtils.millis();
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicBoolean abortedByPolicy = new AtomicBoolean();
+        databaseReference.runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData mutableData)
+            {
+                R transactionData = null;
+                if (dataType == List.class || dataType == Map.class) {
+                    transactionData = (R) mutableData.getValue();
+                } else if (mapper != null) {
+                    transactionData = (R) RefQuery.fromMap(mapper, mutableData.getValue());
+                } else {
+                    transactionData = (R) mutableData.getValue(dataType);
+                }
+                if (transactionPolicy != null && transactionPolicy.shouldAbort(transactionData, attempts.get() + 1)) {
+                    abortedByPolicy.set(true);
+                    return Transaction.abort();
+                }
+                abortedByPolicy.set(false);
+                // Only attempts which call the transaction callback are counted, aborted one is not.
+                attempts.incrementAndGet();
+                mutableData.setValue(ValueMapperHelper.toData(transactionCallback.run(transactionData)));
+                return Transaction.success(mutableData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError databaseError, boolean committed, DataSnapshot dataSnapshot)
+            {
+                if (dispatchedCallback == null) return;
+                if (dispatchedCallback instanceof TransactionCompleteCallback) {
+                    ((TransactionCompleteCallback) dispatchedCallback).onMetrics(
+                            new TransactionMetrics(attempts.get(), TimeUtils.timeSinceMillis(startTime), committed, abortedByPolicy.get()));
+                }
+                if (databaseError != null) {
+                    dispatchedCallback.onError(databaseError.toException());
+                } else if (!committed) {
+                    dispatchedCallback.onError(new TransactionAbortedException(abortedByPolicy.get()));
+                } else {
+                    dispatchedCallback.onSuccess();
+                }
+            }
+        });
+    }
+
+    /**
+     * Wrapper for {@link DatabaseReference.CompletionListener} which passes result to the {@link CompleteCallback}.
+     */
+    private static class CompletionListener implements DatabaseReference.CompletionListener {
+
+        private final CompleteCallback completeCallback;
+
+        CompletionListener(CompleteCallback completeCallback)
+        {
+            this.completeCallback = completeCallback;
+        }
+
+        @Override
+        public void onComplete(DatabaseError databaseError, DatabaseReference databaseReference)
+        {
+            if (databaseError != null) {
+                completeCallback.onError(databaseError.toException());
+            } else {
+                completeCallback.onSuccess();
+            }
+        }
+    }
+}
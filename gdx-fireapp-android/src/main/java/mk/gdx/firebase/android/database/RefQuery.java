@@ -0,0 +1,519 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.android.database;
+
+import com.google.firebase.database.ChildEventListener;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import mk.gdx.firebase.callbacks.BooleanCallback;
+import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.DoubleCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
+import mk.gdx.firebase.callbacks.ElementDataCallback;
+import mk.gdx.firebase.callbacks.LongCallback;
+import mk.gdx.firebase.callbacks.PrimitiveValueHandler;
+import mk.gdx.firebase.database.ChildEventType;
+import mk.gdx.firebase.database.DatabaseQuery;
+import mk.gdx.firebase.database.LazySnapshot;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.TypeToken;
+import mk.gdx.firebase.database.ValueMapper;
+import mk.gdx.firebase.database.ValueMappers;
+import mk.gdx.firebase.listeners.BooleanChangeListener;
+import mk.gdx.firebase.listeners.ChildChangeListener;
+import mk.gdx.firebase.listeners.DataChangeListener;
+import mk.gdx.firebase.listeners.DoubleChangeListener;
+import mk.gdx.firebase.listeners.LongChangeListener;
+
+/**
+ * Android implementation of {@link DatabaseQuery}.
+ * <p>
+ * Keeps {@link Query} created once in the constructor, all fields are final so instance can be shared between threads.
+ *
+ * @see DatabaseQuery
+ */
+public class RefQuery implements DatabaseQuery {
+
+    protected final Database database;
+    protected final String databasePath;
+    private final Query query;
+    private final String queryId;
+
+    /**
+     * @param database     Database distribution which holds listeners registered by this query
+     * @param query        Firebase SDK query for {@code databasePath}
+     * @param databasePath Database path
+     * @param queryId      Ordering and filtering of {@code query}, empty if not filtered
+     */
+    RefQuery(Database database, Query query, String databasePath, String queryId)
+    {
+        this.database = database;
+        this.query = query;
+        this.databasePath = databasePath;
+        this.queryId = queryId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getPath()
+    {
+        return databasePath;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getQueryId()
+    {
+        return queryId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByChild(String childPath)
+    {
+        return query(query.orderByChild(childPath), "orderByChild=" + childPath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByKey()
+    {
+        return query(query.orderByKey(), "orderByKey");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByValue()
+    {
+        return query(query.orderByValue(), "orderByValue");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery limitToFirst(int limit)
+    {
+        return query(query.limitToFirst(limit), "limitToFirst=" + limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery limitToLast(int limit)
+    {
+        return query(query.limitToLast(limit), "limitToLast=" + limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(String value)
+    {
+        return query(query.startAt(value), "startAt=\"" + value + "\"");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(double value)
+    {
+        return query(query.startAt(value), "startAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(boolean value)
+    {
+        return query(query.startAt(value), "startAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(String value)
+    {
+        return query(query.endAt(value), "endAt=\"" + value + "\"");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(double value)
+    {
+        return query(query.endAt(value), "endAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(boolean value)
+    {
+        return query(query.endAt(value), "endAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(String value)
+    {
+        return query(query.equalTo(value), "equalTo=\"" + value + "\"");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(double value)
+    {
+        return query(query.equalTo(value), "equalTo=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(boolean value)
+    {
+        return query(query.equalTo(value), "equalTo=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, E extends T> void readValue(Class<T> dataType, DataCallback<E> callback)
+    {
+        final TypeToken<?> type = Database.typeOf(dataType, callback);
+        final DataCallback<E> dispatchedCallback = database.getCallbackDispatcher().wrap(callback);
+        query.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot dataSnapshot)
+            {
+                dispatchedCallback.onData((E) database.getValue(listenersKey(), dataSnapshot, type));
+            }
+
+            @Override
+            public void onCancelled(DatabaseError databaseError)
+            {
+                dispatchedCallback.onError(databaseError.toException());
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are children of {@link LazySnapshot} decoded by {@link ElementDataCallback}.
+     */
+    @Override
+    public <T, R extends T> void readValue(Class<T> dataType, ElementCallback<R> callback)
+    {
+        readValue(LazySnapshot.class, new ElementDataCallback<>(dataType, callback));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<R> listener)
+    {
+        if (listener == null) {
+            database.removeValueListeners(listenersKey());
+            return null;
+        }
+        return database.addValueListener(listenersKey(), query, Database.typeOf(dataType, listener), database.getCallbackDispatcher().wrap(listener));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events)
+    {
+        if (listener == null) {
+            detachChildListeners();
+            return null;
+        }
+        QueryListenerRegistration registration = new QueryListenerRegistration(database.getChildListeners(), listenersKey(), query,
+                new ChildChangeEventListener<>(dataType, database.getCallbackDispatcher().wrap(listener), events));
+        registration.attach();
+        return registration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readLong(LongCallback callback)
+    {
+        query.addListenerForSingleValueEvent(new PrimitiveValueListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readDouble(DoubleCallback callback)
+    {
+        query.addListenerForSingleValueEvent(new PrimitiveValueListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readBoolean(BooleanCallback callback)
+    {
+        query.addListenerForSingleValueEvent(new PrimitiveValueListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readString(DataCallback<String> callback)
+    {
+        query.addListenerForSingleValueEvent(new PrimitiveValueListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onLongChange(LongChangeListener listener)
+    {
+        return addPrimitiveListener(new PrimitiveValueListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onDoubleChange(DoubleChangeListener listener)
+    {
+        return addPrimitiveListener(new PrimitiveValueListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onBooleanChange(BooleanChangeListener listener)
+    {
+        return addPrimitiveListener(new PrimitiveValueListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onStringChange(DataChangeListener<String> listener)
+    {
+        return addPrimitiveListener(new PrimitiveValueListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void keepSynced(boolean synced)
+    {
+        query.keepSynced(synced);
+    }
+
+    /**
+     * Gets value of the snapshot as instance of {@code dataType}.
+     * <p>
+     * {@link List} is built from snapshot children, so elements keep order of the query. {@link Map} is taken as it is,<p>
+     * types which have {@link ValueMapper} are mapped by it, other types are mapped by Firebase SDK.<p>
+     * For {@link LazySnapshot} the snapshot is wrapped without reading its value.
+     *
+     * @param dataSnapshot Snapshot from Firebase SDK
+     * @param dataType     Wanted type
+     * @return Snapshot value, may be null
+     */
+    static Object getValue(DataSnapshot dataSnapshot, Class<?> dataType)
+    {
+        if (dataType == LazySnapshot.class) {
+            return new Snapshot(dataSnapshot);
+        }
+        if (dataType == List.class) {
+            return childrenToList(dataSnapshot);
+        }
+        if (dataType == Map.class) {
+            return dataSnapshot.getValue();
+        }
+        ValueMapper<?> mapper = ValueMappers.get(dataType);
+        if (mapper != null) {
+            return fromMap(mapper, dataSnapshot.getValue());
+        } else {
+            return dataSnapshot.getValue(dataType);
+        }
+    }
+
+    /**
+     * @param dataSnapshot Snapshot from Firebase SDK
+     * @return Values of the snapshot children in order given by Firebase SDK - order of the query, null if snapshot does not exist
+     */
+    static List<Object> childrenToList(DataSnapshot dataSnapshot)
+    {
+        if (!dataSnapshot.exists())
+            return null;
+        List<Object> list = new ArrayList<>((int) dataSnapshot.getChildrenCount());
+        for (DataSnapshot child : dataSnapshot.getChildren())
+            list.add(child.getValue());
+        return list;
+    }
+
+    /**
+     * @param mapper Mapper of the wanted type
+     * @param raw    Value taken from Firebase SDK without mapping, may be null
+     * @return Mapped object, null if {@code raw} is not a map
+     */
+    @SuppressWarnings("unchecked")
+    static Object fromMap(ValueMapper<?> mapper, Object raw)
+    {
+        return raw instanceof Map ? mapper.fromMap((Map<String, Object>) raw) : null;
+    }
+
+    /**
+     * Removes all child listeners of this query.
+     */
+    private void detachChildListeners()
+    {
+        for (QueryListenerRegistration registration : database.getChildListeners().removeAll(listenersKey())) {
+            registration.detach();
+        }
+    }
+
+    /**
+     * @param listener Listener of primitive value
+     * @return Registration of the listener attached to the query
+     */
+    private ListenerRegistration addPrimitiveListener(PrimitiveValueListener listener)
+    {
+        QueryListenerRegistration registration = new QueryListenerRegistration(database.getPrimitiveListeners(), listenersKey(), query, listener);
+        registration.attach();
+        return registration;
+    }
+
+    /**
+     * @return Key under which listeners of this query are kept by {@link Database}
+     */
+    private String listenersKey()
+    {
+        return queryId.isEmpty() ? databasePath : databasePath + "?" + queryId;
+    }
+
+    /**
+     * @param newQuery Firebase SDK query with one more ordering or filtering rule
+     * @param param    Text representation of the new rule
+     * @return New query
+     */
+    private DatabaseQuery query(Query newQuery, String param)
+    {
+        return new RefQuery(database, newQuery, databasePath, queryId.isEmpty() ? param : queryId + "&" + param);
+    }
+
+    /**
+     * Wrapper for {@link ChildEventListener} used when need to deal with {@link Query#addChildEventListener(ChildEventListener)}
+     *
+     * @param <T> Class of child that we want to listen for change
+     * @param <R> Generic type of child that we want to listen for change.
+     */
+    private static class ChildChangeEventListener<T, R extends T> implements ChildEventListener {
+
+        private final Class<T> dataType;
+        private final ChildChangeListener<R> childChangeListener;
+        private final EnumSet<ChildEventType> events;
+
+        ChildChangeEventListener(Class<T> dataType, ChildChangeListener<R> childChangeListener, ChildEventType[] events)
+        {
+            this.dataType = dataType;
+            this.childChangeListener = childChangeListener;
+            this.events = events.length == 0 ? EnumSet.allOf(ChildEventType.class) : EnumSet.copyOf(Arrays.asList(events));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onChildAdded(DataSnapshot dataSnapshot, String previousChildKey)
+        {
+            if (!events.contains(ChildEventType.ADDED)) return;
+            childChangeListener.onChildAdded(dataSnapshot.getKey(), (R) getValue(dataSnapshot, dataType), previousChildKey);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onChildChanged(DataSnapshot dataSnapshot, String previousChildKey)
+        {
+            if (!events.contains(ChildEventType.CHANGED)) return;
+            childChangeListener.onChildChanged(dataSnapshot.getKey(), (R) getValue(dataSnapshot, dataType), previousChildKey);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onChildRemoved(DataSnapshot dataSnapshot)
+        {
+            if (!events.contains(ChildEventType.REMOVED)) return;
+            childChangeListener.onChildRemoved(dataSnapshot.getKey(), (R) getValue(dataSnapshot, dataType));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onChildMoved(DataSnapshot dataSnapshot, String previousChildKey)
+        {
+            if (!events.contains(ChildEventType.MOVED)) return;
+            childChangeListener.onChildMoved(dataSnapshot.getKey(), (R) getValue(dataSnapshot, dataType), previousChildKey);
+        }
+
+        @Override
+        public void onCancelled(DatabaseError databaseError)
+        {
+            childChangeListener.onCanceled(databaseError.toException());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.android.database;
+
+import com.google.firebase.database.DataSnapshot;
+
+import java.util.Iterator;
+
+import mk.gdx.firebase.database.LazySnapshot;
+
+/**
+ * Android implementation of {@link LazySnapshot} - wraps {@link DataSnapshot} which is given by Firebase SDK.
+ * <p>
+ * Value of the snapshot is read only by {@link #getValue(Class)}, children snapshots are created by Firebase SDK without decoding.
+ */
+class Snapshot implements LazySnapshot {
+
+    private final DataSnapshot dataSnapshot;
+
+    /**
+     * @param dataSnapshot Snapshot from Firebase SDK
+     */
+    Snapshot(DataSnapshot dataSnapshot)
+    {
+        this.dataSnapshot = dataSnapshot;
+    }
+
+    @Override
+    public String getKey()
+    {
+        return dataSnapshot.getKey();
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return dataSnapshot.exists();
+    }
+
+    @Override
+    public boolean hasChild(String path)
+    {
+        return dataSnapshot.hasChild(path);
+    }
+
+    @Override
+    public LazySnapshot child(String path)
+    {
+        return new Snapshot(dataSnapshot.child(path));
+    }
+
+    @Override
+    public long childrenCount()
+    {
+        return dataSnapshot.getChildrenCount();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getValue(Class<T> dataType)
+    {
+        if (dataType == LazySnapshot.class)
+            return (T) this;
+        return (T) RefQuery.getValue(dataSnapshot, dataType);
+    }
+
+    @Override
+    public Iterator<LazySnapshot> iterator()
+    {
+        final Iterator<DataSnapshot> children = dataSnapshot.getChildren().iterator();
+        return new Iterator<LazySnapshot>() {
+            @Override
+            public boolean hasNext()
+            {
+                return children.hasNext();
+            }
+
+            @Override
+            public LazySnapshot next()
+            {
+                return new Snapshot(children.next());
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.android.database;
+
+import com.badlogic.gdx.utils.ObjectMap;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import mk.gdx.firebase.database.SharedValueObserver;
+import mk.gdx.firebase.database.TypeToken;
+
+/**
+ * Android implementation of {@link SharedValueObserver} - one {@link ValueEventListener} attached to the query for all data change listeners.
+ * <p>
+ * Type key of listener is {@link TypeToken} of the data it wants to get.
+ */
+class ValueObserver extends SharedValueObserver<DataSnapshot> implements ValueEventListener {
+
+    private final Database database;
+    private final Query query;
+
+    /**
+     * @param database Database distribution which decodes snapshots
+     * @param pool     Observers of the database
+     * @param key      Key of the observer inside {@code pool}
+     * @param query    Firebase SDK query
+     */
+    ValueObserver(Database database, ObjectMap<String, ValueObserver> pool, String key, Query query)
+    {
+        super(pool, key);
+        this.database = database;
+        this.query = query;
+    }
+
+    @Override
+    protected void attach()
+    {
+        query.addValueEventListener(this);
+    }
+
+    @Override
+    protected void detach()
+    {
+        query.removeEventListener(this);
+    }
+
+    @Override
+    protected Object decode(DataSnapshot snapshot, Object typeKey)
+    {
+        return database.getValue(getKey(), snapshot, (TypeToken<?>) typeKey);
+    }
+
+    @Override
+    public void onDataChange(DataSnapshot dataSnapshot)
+    {
+        dispatchChange(dataSnapshot);
+    }
+
+    @Override
+    public void onCancelled(DatabaseError databaseError)
+    {
+        dispatchCancel(databaseError.toException());
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates {@code ValueMapper} for each class annotated by {@code mk.gdx.firebase.database.MappedValue}.
+ * <p>
+ * Generated mapper reads and writes fields directly or by getters and setters, so there is no reflection at runtime.<p>
+ * Processor works only on names of core classes, so it has no dependencies - add it as annotation processor of the core project.
+ */
+@SupportedAnnotationTypes(ValueMapperProcessor.ANNOTATION)
+public class ValueMapperProcessor extends AbstractProcessor
+{
+    static final String ANNOTATION = "mk.gdx.firebase.database.MappedValue";
+    private static final String SUFFIX = "_ValueMapper";
+    private static final String HELPER = "mk.gdx.firebase.helpers.ValueMapperHelper";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion()
+    {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv)
+    {
+        TypeElement annotation = processingEnv.getElementUtils().getTypeElement(ANNOTATION);
+        if (annotation == null)
+            return false;
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@MappedValue can be used only with classes.");
+                continue;
+            }
+            try {
+                generate((TypeElement) element);
+            } catch (IOException e) {
+                error(element, "Can not write value mapper: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes source of the mapper, reports errors if the model can not be mapped.
+     *
+     * @param model Annotated class
+     * @throws IOException If source file can not be written
+     */
+    private void generate(TypeElement model) throws IOException
+    {
+        if (!checkModel(model))
+            return;
+        List<Property> properties = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        boolean valid = true;
+        for (TypeElement type = model; type != null; type = superclass(type)) {
+            for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+                Set<Modifier> modifiers = field.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT) || !names.add(field.getSimpleName().toString()))
+                    continue;
+                Property property = property(model, type, field);
+                if (property == null)
+                    valid = false;
+                else
+                    properties.add(property);
+            }
+        }
+        if (!valid)
+            return;
+        String packageName = packageOf(model).getQualifiedName().toString();
+        String mapperName = flatName(model) + SUFFIX;
+        String modelName = model.getQualifiedName().toString();
+        Writer writer = processingEnv.getFiler().createSourceFile((packageName.isEmpty() ? "" : packageName + ".") + mapperName, model).openWriter();
+        try {
+            StringBuilder source = new StringBuilder();
+            if (!packageName.isEmpty())
+                source.append("package ").append(packageName).append(";\n\n");
+            source.append("/**\n * Value mapper of {@link ").append(modelName).append("}, generated by {@code ValueMapperProcessor} - do not edit.\n */\n");
+            source.append("public final class ").append(mapperName).append(" implements mk.gdx.firebase.database.ValueMapper<").append(modelName).append(">\n{\n\n");
+            source.append("    @Override\n");
+            source.append("    public java.util.Map<String, Object> toMap(").append(modelName).append(" value)\n    {\n");
+            source.append("        java.util.Map<String, Object> map = new java.util.HashMap<>(").append(properties.size() * 4 / 3 + 1).append(");\n");
+            if (hasReferenceProperty(properties))
+                source.append("        Object data;\n");
+            for (Property property : properties)
+                property.writeToMap(source);
+            source.append("        return map;\n    }\n\n");
+            source.append("    @Override\n");
+            source.append("    @SuppressWarnings(\"unchecked\")\n");
+            source.append("    public ").append(modelName).append(" fromMap(java.util.Map<String, Object> map)\n    {\n");
+            source.append("        ").append(modelName).append(" object = new ").append(modelName).append("();\n");
+            if (!properties.isEmpty())
+                source.append("        Object data;\n");
+            for (Property property : properties)
+                property.writeFromMap(source);
+            source.append("        return object;\n    }\n}\n");
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param model Annotated class
+     * @return True if the class can be created by the mapper
+     */
+    private boolean checkModel(TypeElement model)
+    {
+        Set<Modifier> modifiers = model.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+            error(model, "@MappedValue class should not be abstract or private.");
+            return false;
+        }
+        if (model.getNestingKind().isNested() && !modifiers.contains(Modifier.STATIC)) {
+            error(model, "@MappedValue nested class should be static.");
+            return false;
+        }
+        if (!model.getTypeParameters().isEmpty()) {
+            error(model, "@MappedValue class should not have type parameters.");
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(model.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE))
+                return true;
+        }
+        error(model, "@MappedValue class should have non-private no-arg constructor.");
+        return false;
+    }
+
+    /**
+     * Finds how the field can be read and written by the mapper.
+     *
+     * @param model Annotated class
+     * @param owner Class which declares the field, {@code model} or its superclass
+     * @param field Field
+     * @return Property or null if error was reported
+     */
+    private Property property(TypeElement model, TypeElement owner, VariableElement field)
+    {
+        String name = field.getSimpleName().toString();
+        TypeMirror type = field.asType();
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        boolean visible = isVisible(model, owner, field);
+        String getter = null;
+        String setter = null;
+        if (!visible) {
+            for (ExecutableElement method : ElementFilter.methodsIn(owner.getEnclosedElements())) {
+                if (!isVisible(model, owner, method) || method.getModifiers().contains(Modifier.STATIC))
+                    continue;
+                String methodName = method.getSimpleName().toString();
+                boolean sameType = processingEnv.getTypeUtils().isSameType(method.getReturnType(), type);
+                if (method.getParameters().isEmpty() && sameType && (methodName.equals("get" + capitalized) || (type.getKind() == TypeKind.BOOLEAN && methodName.equals("is" + capitalized))))
+                    getter = methodName;
+                if (method.getParameters().size() == 1 && methodName.equals("set" + capitalized)
+                        && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), type))
+                    setter = methodName;
+            }
+            if (getter == null || setter == null) {
+                error(field, "Field is not visible from " + packageOf(model).getQualifiedName() + " and it has no getter and setter.");
+                return null;
+            }
+        } else if (field.getModifiers().contains(Modifier.FINAL)) {
+            error(field, "@MappedValue class should not have final fields, mark them transient or static.");
+            return null;
+        }
+        String read = readConversion(type, field);
+        if (read == null)
+            return null;
+        return new Property(name, type, visible ? "value." + name : "value." + getter + "()",
+                visible ? "object." + name + " = %s;" : "object." + setter + "(%s);", read);
+    }
+
+    /**
+     * @param type  Field type
+     * @param field Field, for error reporting
+     * @return Format of expression which transforms {@code data} to the field type, null if error was reported
+     */
+    private String readConversion(TypeMirror type, VariableElement field)
+    {
+        switch (type.getKind()) {
+            case INT:
+                return HELPER + ".toInt(data)";
+            case LONG:
+                return HELPER + ".toLong(data)";
+            case SHORT:
+                return HELPER + ".toShort(data)";
+            case BYTE:
+                return HELPER + ".toByte(data)";
+            case FLOAT:
+                return HELPER + ".toFloat(data)";
+            case DOUBLE:
+                return HELPER + ".toDouble(data)";
+            case BOOLEAN:
+                return HELPER + ".toBoolean(data)";
+            case CHAR:
+                return HELPER + ".toChar(data)";
+            case DECLARED:
+                break;
+            default:
+                error(field, "Type " + type + " is not supported by @MappedValue.");
+                return null;
+        }
+        DeclaredType declaredType = (DeclaredType) type;
+        TypeElement element = (TypeElement) declaredType.asElement();
+        String name = element.getQualifiedName().toString();
+        List<? extends TypeMirror> arguments = declaredType.getTypeArguments();
+        if (name.equals("java.util.List") || name.equals("java.util.ArrayList") || name.equals("java.util.Collection") || name.equals("java.lang.Iterable")) {
+            String elementType = arguments.isEmpty() ? "Object" : erasure(arguments.get(0));
+            return "(" + type + ") (Object) " + HELPER + ".toList(data, " + elementType + ".class)";
+        }
+        if (name.equals("java.util.Map") || name.equals("java.util.HashMap")) {
+            if (!arguments.isEmpty() && !erasure(arguments.get(0)).equals("java.lang.String")) {
+                error(field, "Only maps with String keys are supported by @MappedValue.");
+                return null;
+            }
+            String valueType = arguments.isEmpty() ? "Object" : erasure(arguments.get(1));
+            return "(" + type + ") (Object) " + HELPER + ".toMap(data, " + valueType + ".class)";
+        }
+        if (name.equals("java.lang.Object"))
+            return "data";
+        if (!name.startsWith("java.lang.") && element.getKind() != ElementKind.ENUM && !isMapped(element)) {
+            error(field, "Type " + type + " is not supported, annotate it with @MappedValue.");
+            return null;
+        }
+        return HELPER + ".toType(data, " + name + ".class)";
+    }
+
+    /**
+     * @param element Class
+     * @return True if the class is annotated by {@link #ANNOTATION}
+     */
+    private boolean isMapped(TypeElement element)
+    {
+        for (javax.lang.model.element.AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(ANNOTATION))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param model  Annotated class, generated mapper is in its package
+     * @param owner  Class which declares the member
+     * @param member Field or method
+     * @return True if generated mapper can access the member
+     */
+    private boolean isVisible(TypeElement model, TypeElement owner, Element member)
+    {
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE))
+            return false;
+        if (modifiers.contains(Modifier.PUBLIC))
+            return owner.getModifiers().contains(Modifier.PUBLIC) || packageOf(owner).equals(packageOf(model));
+        return packageOf(owner).equals(packageOf(model));
+    }
+
+    /**
+     * @param type Class
+     * @return Superclass or null if it is {@code java.lang.Object}
+     */
+    private TypeElement superclass(TypeElement type)
+    {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED)
+            return null;
+        TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+    }
+
+    private PackageElement packageOf(Element element)
+    {
+        return processingEnv.getElementUtils().getPackageOf(element);
+    }
+
+    /**
+     * @param type Class
+     * @return Simple names of the class and classes enclosing it, joined by {@code _}
+     */
+    private String flatName(TypeElement type)
+    {
+        List<String> names = new ArrayList<>();
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement())
+            names.add(element.getSimpleName().toString());
+        Collections.reverse(names);
+        StringBuilder flatName = new StringBuilder();
+        for (String name : names)
+            flatName.append(flatName.length() > 0 ? "_" : "").append(name);
+        return flatName.toString();
+    }
+
+    private String erasure(TypeMirror type)
+    {
+        TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+        if (erasure.getKind() == TypeKind.DECLARED)
+            return ((TypeElement) ((DeclaredType) erasure).asElement()).getQualifiedName().toString();
+        return "Object";
+    }
+
+    private boolean hasReferenceProperty(List<Property> properties)
+    {
+        for (Property property : properties) {
+            if (!property.type.getKind().isPrimitive())
+                return true;
+        }
+        return false;
+    }
+
+    private void error(Element element, String message)
+    {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * Field of the model with expressions which read and write it.
+     */
+    private static class Property
+    {
+        private final String name;
+        private final TypeMirror type;
+        private final String getExpression;
+        private final String setStatement;
+        private final String readConversion;
+
+        private Property(String name, TypeMirror type, String getExpression, String setStatement, String readConversion)
+        {
+            this.name = name;
+            this.type = type;
+            this.getExpression = getExpression;
+            this.setStatement = setStatement;
+            this.readConversion = readConversion;
+        }
+
+        private void writeToMap(StringBuilder source)
+        {
+            switch (type.getKind()) {
+                case FLOAT:
+                    source.append("        map.put(\"").append(name).append("\", (double) ").append(getExpression).append(");\n");
+                    return;
+                case BYTE:
+                case SHORT:
+                    source.append("        map.put(\"").append(name).append("\", (int) ").append(getExpression).append(");\n");
+                    return;
+                case CHAR:
+                    source.append("        map.put(\"").append(name).append("\", String.valueOf(").append(getExpression).append("));\n");
+                    return;
+                default:
+                    if (type.getKind().isPrimitive()) {
+                        source.append("        map.put(\"").append(name).append("\", ").append(getExpression).append(");\n");
+                        return;
+                    }
+            }
+            source.append("        data = ").append(HELPER).append(".toData(").append(getExpression).append(");\n");
+            source.append("        if (data != null) map.put(\"").append(name).append("\", data);\n");
+        }
+
+        private void writeFromMap(StringBuilder source)
+        {
+            source.append("        data = map.get(\"").append(name).append("\");\n");
+            source.append("        if (data != null) ").append(String.format(setStatement, readConversion)).append("\n");
+        }
+    }
+}
@@ -20,9 +20,21 @@ import java.util.Map;
 
 import mk.gdx.firebase.callbacks.CompleteCallback;
 import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.DelegatingCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
 import mk.gdx.firebase.callbacks.TransactionCallback;
+import mk.gdx.firebase.database.CallbackDispatcher;
+import mk.gdx.firebase.database.ChildEventType;
+import mk.gdx.firebase.database.DatabaseRef;
+import mk.gdx.firebase.database.LazySnapshot;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.ReadValueCache;
+import mk.gdx.firebase.database.SnapshotDiskCache;
+import mk.gdx.firebase.database.TransactionPolicy;
+import mk.gdx.firebase.database.WriteCoalescer;
 import mk.gdx.firebase.distributions.DatabaseDistribution;
 import mk.gdx.firebase.exceptions.PlatformDistributorException;
+import mk.gdx.firebase.listeners.ChildChangeListener;
 import mk.gdx.firebase.listeners.ConnectedListener;
 import mk.gdx.firebase.listeners.DataChangeListener;
 
@@ -37,6 +49,12 @@ public class GdxFIRDatabase extends PlatformDistributor<DatabaseDistribution> im
 
     private static GdxFIRDatabase instance;
 
+    private volatile WriteCoalescer writeCoalescer;
+    private volatile ReadValueCache readValueCache;
+    private volatile SnapshotDiskCache snapshotDiskCache;
+    private volatile CallbackDispatcher callbackDispatcher = new CallbackDispatcher(CallbackDispatcher.Mode.IMMEDIATE);
+    private final ThreadLocal<String> pendingPath = new ThreadLocal<>();
+
     /**
      * GdxFIRDatabase protected constructor.
      * <p>
@@ -82,16 +100,31 @@ public class GdxFIRDatabase extends PlatformDistributor<DatabaseDistribution> im
     @Override
     public DatabaseDistribution inReference(String databasePath)
     {
+        if (writeCoalescer != null || readValueCache != null || snapshotDiskCache != null) {
+            pendingPath.set(databasePath);
+            return this;
+        }
         return platformObject.inReference(databasePath);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseRef ref(String databasePath)
+    {
+        return platformObject.ref(databasePath);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void setValue(Object value)
     {
-        platformObject.setValue(value);
+        invalidateCachedValues();
+        if (!coalesceValue(value, null))
+            target().setValue(value);
     }
 
     /**
@@ -100,31 +133,92 @@ public class GdxFIRDatabase extends PlatformDistributor<DatabaseDistribution> im
     @Override
     public void setValue(Object value, CompleteCallback completeCallback)
     {
-        platformObject.setValue(value, completeCallback);
+        invalidateCachedValues();
+        if (!coalesceValue(value, completeCallback))
+            target().setValue(value, completeCallback);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
+    @SuppressWarnings("unchecked")
     public <T, E extends T> void readValue(Class<T> dataType, DataCallback<E> callback)
     {
-        platformObject.readValue(dataType, callback);
+        ReadValueCache cache = readValueCache;
+        SnapshotDiskCache diskCache = snapshotDiskCache;
+        String databasePath = pendingPath.get();
+        // Snapshot wraps native data, its size can not be estimated and it can not be written to the disk.
+        boolean cacheable = databasePath != null && dataType != LazySnapshot.class;
+        boolean memoryCached = cache != null && cacheable && cache.isCachedPath(databasePath);
+        boolean diskCached = diskCache != null && cacheable && diskCache.isCachedPath(databasePath);
+        if (!memoryCached && !diskCached) {
+            target().readValue(dataType, callback);
+            return;
+        }
+        pendingPath.remove();
+        if (memoryCached) {
+            Object value = cache.get(databasePath, dataType);
+            if (value != null) {
+                callbackDispatcher.wrap(callback).onData((E) value);
+                return;
+            }
+        }
+        DataCallback<E> databaseCallback = callback;
+        if (diskCached) {
+            Object staleValue = diskCache.get(databasePath, dataType);
+            if (staleValue != null)
+                callbackDispatcher.wrap(callback).onData((E) staleValue);
+            databaseCallback = new DiskCachingDataCallback<>(diskCache, databasePath, staleValue != null, databaseCallback);
+        }
+        if (memoryCached)
+            databaseCallback = new CachingDataCallback<>(cache, databasePath, dataType, databaseCallback);
+        platformObject.inReference(databasePath).readValue(dataType, databaseCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are never taken from {@link ReadValueCache} nor {@link SnapshotDiskCache}.
+     */
+    @Override
+    public <T, E extends T> void readValue(Class<T> dataType, ElementCallback<E> callback)
+    {
+        target().readValue(dataType, callback);
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    public <T, E extends T> void onDataChange(Class<T> dataType, DataChangeListener<E> listener)
+    public <T, E extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<E> listener)
     {
-        platformObject.onDataChange(dataType, listener);
+        ReadValueCache cache = readValueCache;
+        String databasePath = pendingPath.get();
+        if (cache != null && databasePath != null && listener != null && cache.isCachedPath(databasePath))
+            return target().onDataChange(dataType, new InvalidatingDataChangeListener<>(cache, databasePath, listener));
+        return target().onDataChange(dataType, listener);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
+    public <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events)
+    {
+        return target().onChildChange(dataType, listener, events);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Coalesced writes which overlap the path are sent first, so they can not overwrite the pushed child later.
+     */
+    @Override
     public DatabaseDistribution push()
     {
-        return platformObject.push();
+        flushOverlappingWrites();
+        return target().push();
     }
 
     /**
@@ -133,7 +227,9 @@ public class GdxFIRDatabase extends PlatformDistributor<DatabaseDistribution> im
     @Override
     public void removeValue()
     {
-        platformObject.removeValue();
+        invalidateCachedValues();
+        flushOverlappingWrites();
+        target().removeValue();
     }
 
     /**
@@ -142,7 +238,9 @@ public class GdxFIRDatabase extends PlatformDistributor<DatabaseDistribution> im
     @Override
     public void removeValue(CompleteCallback completeCallback)
     {
-        platformObject.removeValue(completeCallback);
+        invalidateCachedValues();
+        flushOverlappingWrites();
+        target().removeValue(completeCallback);
     }
 
     /**
@@ -151,7 +249,9 @@ public class GdxFIRDatabase extends PlatformDistributor<DatabaseDistribution> im
     @Override
     public void updateChildren(Map<String, Object> data)
     {
-        platformObject.updateChildren(data);
+        invalidateCachedValues();
+        flushOverlappingWrites();
+        target().updateChildren(data);
     }
 
     /**
@@ -160,7 +260,9 @@ public class GdxFIRDatabase extends PlatformDistributor<DatabaseDistribution> im
     @Override
     public void updateChildren(Map<String, Object> data, CompleteCallback completeCallback)
     {
-        platformObject.updateChildren(data, completeCallback);
+        invalidateCachedValues();
+        flushOverlappingWrites();
+        target().updateChildren(data, completeCallback);
     }
 
     /**
@@ -169,7 +271,20 @@ public class GdxFIRDatabase extends PlatformDistributor<DatabaseDistribution> im
     @Override
     public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, CompleteCallback completeCallback)
     {
-        platformObject.transaction(dataType, transactionCallback, completeCallback);
+        invalidateCachedValues();
+        flushOverlappingWrites();
+        target().transaction(dataType, transactionCallback, completeCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, TransactionPolicy transactionPolicy, CompleteCallback completeCallback)
+    {
+        invalidateCachedValues();
+        flushOverlappingWrites();
+        target().transaction(dataType, transactionCallback, transactionPolicy, completeCallback);
     }
 
     /**
@@ -181,13 +296,173 @@ public class GdxFIRDatabase extends PlatformDistributor<DatabaseDistribution> im
         platformObject.setPersistenceEnabled(enabled);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDecodedValueCacheSize(long maxBytes)
+    {
+        platformObject.setDecodedValueCacheSize(maxBytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCallbackDispatcher(CallbackDispatcher callbackDispatcher)
+    {
+        this.callbackDispatcher = callbackDispatcher;
+        platformObject.setCallbackDispatcher(callbackDispatcher);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void keepSynced(boolean synced)
     {
-        platformObject.keepSynced(synced);
+        target().keepSynced(synced);
+    }
+
+    /**
+     * Enables or disables coalescing of {@code inReference(path).setValue(value)} calls.
+     * <p>
+     * When enabled, values set within the given time window are not sent one by one. Only the last value per path is kept<p>
+     * and all of them are sent together as one multi-path {@code updateChildren}. {@link CompleteCallback} of each write<p>
+     * gets the result of the flush which carried it.
+     * <p>
+     * Writes which are waiting for flush are sent immediately when coalescing is disabled or the window is changed.
+     *
+     * @param windowSeconds Time in seconds for which writes are collected, {@code 0} disables coalescing
+     * @see WriteCoalescer
+     */
+    public synchronized void setWriteCoalescingWindow(float windowSeconds)
+    {
+        if (writeCoalescer != null)
+            writeCoalescer.flush();
+        writeCoalescer = windowSeconds > 0 ? new WriteCoalescer(this, windowSeconds) : null;
+    }
+
+    /**
+     * Sends writes which are waiting for coalescing flush immediately. Does nothing if coalescing is disabled.
+     */
+    public void flushCoalescedWrites()
+    {
+        WriteCoalescer coalescer = writeCoalescer;
+        if (coalescer != null)
+            coalescer.flush();
+    }
+
+    /**
+     * Sets cache which serves {@code inReference(path).readValue(...)} for chosen paths from memory.
+     * <p>
+     * Cached values of a path are removed when data change listener added by {@code inReference(path).onDataChange(...)} gets new data<p>
+     * and when the path is written by {@code inReference(path)} flow. Values served from the cache are passed to the callback at once,<p>
+     * through {@link CallbackDispatcher} set by {@link #setCallbackDispatcher(CallbackDispatcher)}.
+     * <p>
+     * Handles created by {@link #ref(String)} are not cached.
+     *
+     * @param readValueCache Cache, null disables caching
+     * @see ReadValueCache
+     */
+    public void setReadValueCache(ReadValueCache readValueCache)
+    {
+        this.readValueCache = readValueCache;
+    }
+
+    /**
+     * @return Cache set by {@link #setReadValueCache(ReadValueCache)}, may be null
+     */
+    public ReadValueCache getReadValueCache()
+    {
+        return readValueCache;
+    }
+
+    /**
+     * Sets cache which keeps values of {@code inReference(path).readValue(...)} for chosen paths on the disk, between application runs.
+     * <p>
+     * Reads are served stale-while-revalidate: value kept on the disk is passed to the callback at once (through {@link CallbackDispatcher}), then the value<p>
+     * from the database is passed again if it differs. Values of a path are removed when the path is written by {@code inReference(path)} flow.
+     * <p>
+     * When {@link #setReadValueCache(ReadValueCache)} is used too, memory cache is asked first.
+     *
+     * @param snapshotDiskCache Cache, null disables caching
+     * @see SnapshotDiskCache
+     */
+    public void setSnapshotDiskCache(SnapshotDiskCache snapshotDiskCache)
+    {
+        this.snapshotDiskCache = snapshotDiskCache;
+    }
+
+    /**
+     * @return Cache set by {@link #setSnapshotDiskCache(SnapshotDiskCache)}, may be null
+     */
+    public SnapshotDiskCache getSnapshotDiskCache()
+    {
+        return snapshotDiskCache;
+    }
+
+    /**
+     * Gives distribution which should handle next operation.
+     * <p>
+     * If path was set by {@link #inReference(String)} when coalescing or one of read caches was enabled, it is passed to the platform distribution now.
+     *
+     * @return Platform distribution object
+     */
+    private DatabaseDistribution target()
+    {
+        String databasePath = pendingPath.get();
+        if (databasePath == null)
+            return platformObject;
+        pendingPath.remove();
+        return platformObject.inReference(databasePath);
+    }
+
+    /**
+     * Passes value to the {@link WriteCoalescer} if path was set by {@link #inReference(String)} when coalescing was enabled.
+     *
+     * @param value            Value to set
+     * @param completeCallback Complete callback, may be null
+     * @return True if value was taken by coalescer
+     */
+    private boolean coalesceValue(Object value, CompleteCallback completeCallback)
+    {
+        WriteCoalescer coalescer = writeCoalescer;
+        String databasePath = pendingPath.get();
+        if (coalescer == null || databasePath == null)
+            return false;
+        pendingPath.remove();
+        coalescer.setValue(databasePath, value, completeCallback);
+        return true;
+    }
+
+    /**
+     * Sends coalesced writes which overlap the path set by {@link #inReference(String)}, called before the path is written without coalescing.
+     * <p>
+     * Otherwise pending {@code setValue} would reach the database after, for ex. {@code removeValue} and bring the data back.
+     */
+    private void flushOverlappingWrites()
+    {
+        WriteCoalescer coalescer = writeCoalescer;
+        String databasePath = pendingPath.get();
+        if (coalescer != null && databasePath != null)
+            coalescer.flushOverlapping(databasePath);
+    }
+
+    /**
+     * Removes cached values of the path set by {@link #inReference(String)}, called before it is written.
+     */
+    private void invalidateCachedValues()
+    {
+        ReadValueCache cache = readValueCache;
+        SnapshotDiskCache diskCache = snapshotDiskCache;
+        String databasePath = pendingPath.get();
+        if (databasePath == null)
+            return;
+        if (cache != null)
+            cache.invalidate(databasePath);
+        if (diskCache != null && diskCache.isCachedPath(databasePath))
+            diskCache.remove(databasePath);
     }
 
     /**
@@ -207,4 +482,116 @@ public class GdxFIRDatabase extends PlatformDistributor<DatabaseDistribution> im
     {
         return "mk.gdx.firebase.android.database.Database";
     }
+
+    /**
+     * Puts value read from database to the {@link ReadValueCache} and passes it further.
+     */
+    private static class CachingDataCallback<R> implements DataCallback<R>, DelegatingCallback
+    {
+        private final ReadValueCache cache;
+        private final String databasePath;
+        private final Class<?> dataType;
+        private final DataCallback<R> callback;
+
+        private CachingDataCallback(ReadValueCache cache, String databasePath, Class<?> dataType, DataCallback<R> callback)
+        {
+            this.cache = cache;
+            this.databasePath = databasePath;
+            this.dataType = dataType;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onData(R data)
+        {
+            cache.put(databasePath, dataType, data);
+            callback.onData(data);
+        }
+
+        @Override
+        public void onError(Exception e)
+        {
+            callback.onError(e);
+        }
+
+        @Override
+        public Object getDelegate()
+        {
+            return callback;
+        }
+    }
+
+    /**
+     * Writes value read from database to the {@link SnapshotDiskCache}, passes it further only if it was not delivered from the disk already.
+     */
+    private static class DiskCachingDataCallback<R> implements DataCallback<R>, DelegatingCallback
+    {
+        private final SnapshotDiskCache cache;
+        private final String databasePath;
+        private final boolean staleDelivered;
+        private final DataCallback<R> callback;
+
+        private DiskCachingDataCallback(SnapshotDiskCache cache, String databasePath, boolean staleDelivered, DataCallback<R> callback)
+        {
+            this.cache = cache;
+            this.databasePath = databasePath;
+            this.staleDelivered = staleDelivered;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onData(R data)
+        {
+            if (cache.put(databasePath, data) || !staleDelivered)
+                callback.onData(data);
+        }
+
+        @Override
+        public void onError(Exception e)
+        {
+            callback.onError(e);
+        }
+
+        @Override
+        public Object getDelegate()
+        {
+            return callback;
+        }
+    }
+
+    /**
+     * Removes values of the path from the {@link ReadValueCache} when new data comes and passes it further.
+     */
+    private static class InvalidatingDataChangeListener<R> implements DataChangeListener<R>, DelegatingCallback
+    {
+        private final ReadValueCache cache;
+        private final String databasePath;
+        private final DataChangeListener<R> listener;
+
+        private InvalidatingDataChangeListener(ReadValueCache cache, String databasePath, DataChangeListener<R> listener)
+        {
+            this.cache = cache;
+            this.databasePath = databasePath;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onChange(R newValue)
+        {
+            cache.invalidate(databasePath);
+            listener.onChange(newValue);
+        }
+
+        @Override
+        public void onCanceled(Exception e)
+        {
+            listener.onCanceled(e);
+        }
+
+        @Override
+        public Object getDelegate()
+        {
+            return listener;
+        }
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase;
+
+import java.util.Map;
+import java.util.Random;
+
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.TransactionCallback;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.distributions.DatabaseDistribution;
+import mk.gdx.firebase.listeners.DataChangeListener;
+
+/**
+ * Counter which is split into many database nodes, so many clients can increment it at the same time.
+ * <p>
+ * Each increment is a transaction on one randomly chosen shard (or shard chosen by hash given by user), so clients contend<p>
+ * only when they hit the same shard. Value of the counter is a sum of all shards.
+ * <p>
+ * Shards are stored as children of the counter path: {@code "shard_0"}, {@code "shard_1"}, ...<p>
+ * Number of shards may be increased later, but never decreased - data of removed shards would be lost.
+ * <p>
+ * Usage:
+ * {@code
+ * ShardedCounter kills = new ShardedCounter("/stats/kills", 10);
+ * kills.increment(1, null);
+ * kills.startListening(null);
+ * ...
+ * long value = kills.getCachedValue();
+ * }
+ */
+public class ShardedCounter
+{
+    private static final String SHARD_PREFIX = "shard_";
+
+    private final DatabaseDistribution database;
+    private final String databasePath;
+    private final int shards;
+    private final Random random;
+    private volatile long cachedValue;
+    private ListenerRegistration registration;
+
+    /**
+     * Creates counter which uses {@link GdxFIRDatabase#instance()}
+     *
+     * @param databasePath Path of the counter, for ex. {@code "/stats/kills"}
+     * @param shards       Number of shards, at least 1
+     */
+    public ShardedCounter(String databasePath, int shards)
+    {
+        this(GdxFIRDatabase.instance(), databasePath, shards);
+    }
+
+    /**
+     * @param database     Database distribution used to read and write shards
+     * @param databasePath Path of the counter, for ex. {@code "/stats/kills"}
+     * @param shards       Number of shards, at least 1
+     * @throws IllegalArgumentException If {@code shards} is less than 1
+     */
+    public ShardedCounter(DatabaseDistribution database, String databasePath, int shards)
+    {
+        if (shards < 1)
+            throw new IllegalArgumentException("ShardedCounter needs at least one shard.");
+        this.database = database;
+        this.databasePath = databasePath.endsWith("/") ? databasePath.substring(0, databasePath.length() - 1) : databasePath;
+        this.shards = shards;
+        random = new Random();
+    }
+
+    /**
+     * Adds {@code delta} to randomly chosen shard.
+     *
+     * @param delta            Value to add, may be negative
+     * @param completeCallback Callback that handles response, may be null
+     */
+    public void increment(long delta, CompleteCallback completeCallback)
+    {
+        incrementShard(random.nextInt(shards), delta, completeCallback);
+    }
+
+    /**
+     * Adds {@code delta} to shard chosen by the given hash, for ex. user id hash - same user always hits the same shard.
+     *
+     * @param delta            Value to add, may be negative
+     * @param hash             Any hash
+     * @param completeCallback Callback that handles response, may be null
+     */
+    public void increment(long delta, int hash, CompleteCallback completeCallback)
+    {
+        incrementShard((hash & Integer.MAX_VALUE) % shards, delta, completeCallback);
+    }
+
+    /**
+     * Reads all shards once and gives their sum by {@code DataCallback}. The sum is also kept as {@link #getCachedValue()}.
+     *
+     * @param callback Callback that handles response
+     */
+    public void readValue(final DataCallback<Long> callback)
+    {
+        database.ref(databasePath).readValue(Map.class, new DataCallback<Map<String, Object>>() {
+            @Override
+            public void onData(Map<String, Object> data)
+            {
+                cachedValue = sum(data);
+                callback.onData(cachedValue);
+            }
+
+            @Override
+            public void onError(Exception e)
+            {
+                callback.onError(e);
+            }
+        });
+    }
+
+    /**
+     * Starts listening for changes of the shards, {@link #getCachedValue()} is refreshed on each change.
+     * <p>
+     * Does nothing if counter is listening already.
+     *
+     * @param listener Listener which gets sum after each change, may be null
+     */
+    public synchronized void startListening(final DataChangeListener<Long> listener)
+    {
+        if (registration != null) return;
+        registration = database.ref(databasePath).onDataChange(Map.class, new DataChangeListener<Map<String, Object>>() {
+            @Override
+            public void onChange(Map<String, Object> newValue)
+            {
+                cachedValue = sum(newValue);
+                if (listener != null)
+                    listener.onChange(cachedValue);
+            }
+
+            @Override
+            public void onCanceled(Exception e)
+            {
+                if (listener != null)
+                    listener.onCanceled(e);
+            }
+        });
+    }
+
+    /**
+     * Stops listening started by {@link #startListening(DataChangeListener)}.
+     */
+    public synchronized void stopListening()
+    {
+        if (registration == null) return;
+        registration.remove();
+        registration = null;
+    }
+
+    /**
+     * @return Last known sum of shards, 0 before first read
+     */
+    public long getCachedValue()
+    {
+        return cachedValue;
+    }
+
+    /**
+     * @return Number of shards
+     */
+    public int getShards()
+    {
+        return shards;
+    }
+
+    /**
+     * @param shard            Index of the shard
+     * @param delta            Value to add
+     * @param completeCallback Callback that handles response, may be null
+     */
+    private void incrementShard(int shard, final long delta, CompleteCallback completeCallback)
+    {
+        database.ref(databasePath + "/" + SHARD_PREFIX + shard).transaction(Long.class, new TransactionCallback<Long>() {
+            @Override
+            public Long run(Long transactionData)
+            {
+                return transactionData == null ? delta : transactionData + delta;
+            }
+        }, completeCallback);
+    }
+
+    /**
+     * @param data Shards values, may be null
+     * @return Sum of numeric shards values
+     */
+    private static long sum(Map<String, Object> data)
+    {
+        long sum = 0;
+        if (data == null) return sum;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if (entry.getKey().startsWith(SHARD_PREFIX) && entry.getValue() instanceof Number)
+                sum += ((Number) entry.getValue()).longValue();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.distributions.DatabaseDistribution;
+import mk.gdx.firebase.helpers.DataSizeHelper;
+import mk.gdx.firebase.helpers.PathHelper;
+
+/**
+ * Collects writes for many unrelated database paths and commits them as one root-level {@code updateChildren}.
+ * <p>
+ * Usage:
+ * {@code
+ * new WriteBatch()
+ * .set("/users/" + uid + "/name", name)
+ * .set("/names/" + name, uid)
+ * .remove("/invites/" + inviteId)
+ * .commit(completeCallback);
+ * }
+ * <p>
+ * Batch which fits in {@link #setMaxPayloadBytes(long)} is written atomically. Bigger batch is split<p>
+ * into several {@code updateChildren} calls sent one after another - next part is sent only when the previous one succeeded,<p>
+ * so parts are written in order and sending stops at the first error. Each part is still atomic, but the whole batch is not.
+ * <p>
+ * Paths inside one batch can not overlap, for ex. {@code "/users/a"} and {@code "/users/a/name"} can not be used together.
+ * <p>
+ * This class is not thread-safe, build one batch on one thread.
+ */
+public class WriteBatch
+{
+    /**
+     * Default limit for one {@code updateChildren} payload - Firebase accepts at most 16MB in a single write.
+     */
+    public static final long DEFAULT_MAX_PAYLOAD_BYTES = 16L * 1024 * 1024;
+
+    private final DatabaseDistribution database;
+    private final LinkedHashMap<String, Object> writes;
+    private final Map<String, Long> writeSizes;
+    private final Set<String> writeAncestors;
+    private long maxPayloadBytes;
+    private boolean committed;
+
+    /**
+     * Creates batch which will be committed by {@link GdxFIRDatabase#instance()}
+     */
+    public WriteBatch()
+    {
+        this(GdxFIRDatabase.instance());
+    }
+
+    /**
+     * @param database Database distribution used to commit the batch
+     */
+    public WriteBatch(DatabaseDistribution database)
+    {
+        this.database = database;
+        writes = new LinkedHashMap<>();
+        writeSizes = new HashMap<>();
+        writeAncestors = new HashSet<>();
+        maxPayloadBytes = DEFAULT_MAX_PAYLOAD_BYTES;
+    }
+
+    /**
+     * Sets value for the given absolute path.
+     *
+     * @param databasePath Absolute database path, for ex. {@code "/users/abc/name"}
+     * @param value        Any value which you want to store. Given object will be transformed to Firebase-like data type.
+     * @return this
+     * @throws IllegalArgumentException If path is root or it overlaps other path from this batch
+     * @throws IllegalStateException    If batch has been already committed
+     */
+    public WriteBatch set(String databasePath, Object value)
+    {
+        if (committed)
+            throw new IllegalStateException("WriteBatch has been already committed.");
+        String key = PathHelper.normalize(databasePath);
+        if (key.isEmpty())
+            throw new IllegalArgumentException("WriteBatch can not write the database root.");
+        if (writeAncestors.contains(key))
+            throw new IllegalArgumentException("Path " + databasePath + " is an ancestor of other path which is already in the batch.");
+        for (int i = key.lastIndexOf('/'); i > 0; i = key.lastIndexOf('/', i - 1)) {
+            String path = key.substring(0, i);
+            if (writes.containsKey(path))
+                throw new IllegalArgumentException("Path " + databasePath + " overlaps " + path + " which is already in the batch.");
+        }
+        if (writes.put(key, value) == null) {
+            for (int i = key.lastIndexOf('/'); i > 0; i = key.lastIndexOf('/', i - 1)) {
+                if (!writeAncestors.add(key.substring(0, i)))
+                    break;
+            }
+        }
+        writeSizes.put(key, key.length() + 4 + DataSizeHelper.estimateBytes(value));
+        return this;
+    }
+
+    /**
+     * Removes value at the given absolute path.
+     *
+     * @param databasePath Absolute database path, for ex. {@code "/invites/abc"}
+     * @return this
+     * @throws IllegalArgumentException If path is root or it overlaps other path from this batch
+     * @throws IllegalStateException    If batch has been already committed
+     */
+    public WriteBatch remove(String databasePath)
+    {
+        return set(databasePath, null);
+    }
+
+    /**
+     * Sets limit of one {@code updateChildren} payload. If batch is bigger it will be split when committed.
+     *
+     * @param maxPayloadBytes Maximum estimated payload size in bytes, default is {@link #DEFAULT_MAX_PAYLOAD_BYTES}
+     * @return this
+     */
+    public WriteBatch setMaxPayloadBytes(long maxPayloadBytes)
+    {
+        this.maxPayloadBytes = maxPayloadBytes;
+        return this;
+    }
+
+    /**
+     * @return Number of paths in this batch
+     */
+    public int size()
+    {
+        return writes.size();
+    }
+
+    /**
+     * Sends all writes of this batch.
+     * <p>
+     * {@code completeCallback} is called once - when all parts of the batch were written or just after the first error.<p>
+     * Parts after the failed one are not sent.
+     *
+     * @param completeCallback Callback that handles result of the whole batch, may be null
+     * @throws IllegalStateException If batch has been already committed
+     */
+    public void commit(CompleteCallback completeCallback)
+    {
+        if (committed)
+            throw new IllegalStateException("WriteBatch has been already committed.");
+        committed = true;
+        List<Map<String, Object>> parts = split();
+        if (parts.isEmpty()) {
+            if (completeCallback != null)
+                completeCallback.onSuccess();
+            return;
+        }
+        new BatchCallback(database, parts, completeCallback).sendNext();
+    }
+
+    /**
+     * Splits writes into parts which do not exceed {@link #maxPayloadBytes}. Single write bigger than limit gets its own part.
+     *
+     * @return Parts of the batch in order of adding, not null
+     */
+    private List<Map<String, Object>> split()
+    {
+        List<Map<String, Object>> parts = new ArrayList<>();
+        Map<String, Object> part = null;
+        long partSize = 0;
+        for (Map.Entry<String, Object> entry : writes.entrySet()) {
+            long size = writeSizes.get(entry.getKey());
+            if (part == null || (partSize + size > maxPayloadBytes && !part.isEmpty())) {
+                part = new HashMap<>();
+                parts.add(part);
+                partSize = 0;
+            }
+            part.put(entry.getKey(), entry.getValue());
+            partSize += size;
+        }
+        return parts;
+    }
+
+    /**
+     * Sends batch parts one by one, each after the previous one succeeded, and passes the final result to user callback.
+     */
+    private static class BatchCallback implements CompleteCallback
+    {
+        private final DatabaseDistribution database;
+        private final List<Map<String, Object>> parts;
+        private final CompleteCallback completeCallback;
+        private int next;
+
+        private BatchCallback(DatabaseDistribution database, List<Map<String, Object>> parts, CompleteCallback completeCallback)
+        {
+            this.database = database;
+            this.parts = parts;
+            this.completeCallback = completeCallback;
+        }
+
+        /**
+         * Sends the next part of the batch.
+         */
+        private void sendNext()
+        {
+            database.ref("/").updateChildren(parts.get(next++), this);
+        }
+
+        @Override
+        public void onSuccess()
+        {
+            if (next < parts.size()) {
+                sendNext();
+            } else if (completeCallback != null) {
+                completeCallback.onSuccess();
+            }
+        }
+
+        @Override
+        public void onError(Exception e)
+        {
+            if (completeCallback != null)
+                completeCallback.onError(e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.callbacks;
+
+/**
+ * Callback or listener which passes everything to another one, given by user.
+ * <p>
+ * Platforms which read generic type declared by the user callback class (for ex. iOS) should look at the delegate instead.
+ */
+public interface DelegatingCallback
+{
+
+    /**
+     * @return Callback or listener which gets results, not null
+     */
+    Object getDelegate();
+}
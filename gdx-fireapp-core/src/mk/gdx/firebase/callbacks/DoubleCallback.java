@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.callbacks;
+
+/**
+ * Handles response when reading single {@code double} value from Firebase database, without wrapper object.
+ * <p>
+ * Absent value is passed to {@link #onError(Exception)} as {@link mk.gdx.firebase.exceptions.AbsentValueException},<p>
+ * value which is not a number as {@link IllegalArgumentException}.
+ */
+public interface DoubleCallback
+{
+    /**
+     * Calls when everything was done without issues.
+     *
+     * @param data Fetched value
+     */
+    void onData(double data);
+
+    /**
+     * Calls when something goes wrong.
+     *
+     * @param e Exception with description what was wrong.
+     */
+    void onError(Exception e);
+}
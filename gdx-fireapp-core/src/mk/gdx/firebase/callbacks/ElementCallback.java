@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.callbacks;
+
+/**
+ * Handles response when dealing with elements of Firebase database list or map, one element at a time.
+ * <p>
+ * Each element is decoded just before it is passed to {@link #onElement(String, Object)}, so whole decoded list does not have to be kept in memory.
+ *
+ * @param <T> Type of element you expecting to get
+ */
+public interface ElementCallback<T>
+{
+    /**
+     * Calls for each element, in order given by the query.
+     *
+     * @param key     Key of the element, index for lists
+     * @param element Element transformed to specified generic type {@code <T>}
+     * @return True to get next element, false to stop - {@link #onComplete()} is called then
+     */
+    boolean onElement(String key, T element);
+
+    /**
+     * Calls when there are no more elements or {@link #onElement(String, Object)} asked to stop.
+     */
+    void onComplete();
+
+    /**
+     * Calls when something goes wrong, no more elements are given then.
+     *
+     * @param e Exception with description what was wrong.
+     */
+    void onError(Exception e);
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.callbacks;
+
+import mk.gdx.firebase.database.LazySnapshot;
+
+/**
+ * Passes children of {@link LazySnapshot} to {@link ElementCallback}, decoding them one by one.
+ * <p>
+ * Used by database distributions to implement {@code readValue(Class, ElementCallback)} on top of {@code readValue(LazySnapshot.class, DataCallback)}.
+ *
+ * @param <T> Type of element wanted by the callback
+ * @param <R> More specific type of element associated with the callback
+ */
+public class ElementDataCallback<T, R extends T> implements DataCallback<LazySnapshot>
+{
+
+    private final Class<T> dataType;
+    private final ElementCallback<R> callback;
+
+    /**
+     * @param dataType Class of elements
+     * @param callback Callback given by user
+     */
+    public ElementDataCallback(Class<T> dataType, ElementCallback<R> callback)
+    {
+        this.dataType = dataType;
+        this.callback = callback;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onData(LazySnapshot data)
+    {
+        for (LazySnapshot child : data) {
+            R element;
+            try {
+                element = (R) child.getValue(dataType);
+            } catch (RuntimeException e) {
+                callback.onError(e);
+                return;
+            }
+            if (!callback.onElement(child.getKey(), element))
+                break;
+        }
+        callback.onComplete();
+    }
+
+    @Override
+    public void onError(Exception e)
+    {
+        callback.onError(e);
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.callbacks;
+
+import mk.gdx.firebase.exceptions.AbsentValueException;
+import mk.gdx.firebase.listeners.BooleanChangeListener;
+import mk.gdx.firebase.listeners.DataChangeListener;
+import mk.gdx.firebase.listeners.DoubleChangeListener;
+import mk.gdx.firebase.listeners.LongChangeListener;
+
+/**
+ * Passes database value to callback or listener of primitive value.
+ * <p>
+ * There is one small subclass per primitive kind, chosen at registration by overloaded {@code of} methods,<p>
+ * so delivering the value does not check type of the target. Used by database distributions which get values as Firebase-like data types.
+ * <p>
+ * Absent value is passed to error handler as {@link AbsentValueException}, value of wrong type as {@link IllegalArgumentException}.<p>
+ * Only string targets get absent value as null.
+ * <p>
+ * Platforms which read native numbers (for ex. iOS) may check {@link #getKind()} and pass the number straight<p>
+ * by {@link #handleLong(long)}, {@link #handleDouble(double)} or {@link #handleBoolean(boolean)}, without wrapper object.
+ */
+public abstract class PrimitiveValueHandler
+{
+
+    /**
+     * Kind of primitive value passed to the callback or listener.
+     */
+    public enum Kind
+    {
+        LONG, DOUBLE, BOOLEAN, STRING
+    }
+
+    /**
+     * @param value Firebase-like value, null if there is no value
+     */
+    public void handle(Object value)
+    {
+        if (value == null) {
+            fail(new AbsentValueException("There is no value at the given path."));
+        } else {
+            onValue(value);
+        }
+    }
+
+    /**
+     * Passes long value, should be called only if {@link #getKind()} is {@link Kind#LONG}.
+     *
+     * @param value Value
+     */
+    public void handleLong(long value)
+    {
+        handle(value);
+    }
+
+    /**
+     * Passes double value, should be called only if {@link #getKind()} is {@link Kind#DOUBLE}.
+     *
+     * @param value Value
+     */
+    public void handleDouble(double value)
+    {
+        handle(value);
+    }
+
+    /**
+     * Passes boolean value, should be called only if {@link #getKind()} is {@link Kind#BOOLEAN}.
+     *
+     * @param value Value
+     */
+    public void handleBoolean(boolean value)
+    {
+        handle(value);
+    }
+
+    /**
+     * @return Kind of value passed to the callback or listener
+     */
+    public abstract Kind getKind();
+
+    /**
+     * Passes error to the callback or listener.
+     *
+     * @param e Exception
+     */
+    public abstract void fail(Exception e);
+
+    /**
+     * @param value Firebase-like value, not null
+     */
+    protected abstract void onValue(Object value);
+
+    /**
+     * @param callback Callback of long value, not null
+     * @return Handler which passes long value to the {@code callback}
+     */
+    public static PrimitiveValueHandler of(LongCallback callback)
+    {
+        return new LongHandler(callback, null);
+    }
+
+    /**
+     * @param listener Listener of long value, not null
+     * @return Handler which passes long value to the {@code listener}
+     */
+    public static PrimitiveValueHandler of(LongChangeListener listener)
+    {
+        return new LongHandler(null, listener);
+    }
+
+    /**
+     * @param callback Callback of double value, not null
+     * @return Handler which passes double value to the {@code callback}
+     */
+    public static PrimitiveValueHandler of(DoubleCallback callback)
+    {
+        return new DoubleHandler(callback, null);
+    }
+
+    /**
+     * @param listener Listener of double value, not null
+     * @return Handler which passes double value to the {@code listener}
+     */
+    public static PrimitiveValueHandler of(DoubleChangeListener listener)
+    {
+        return new DoubleHandler(null, listener);
+    }
+
+    /**
+     * @param callback Callback of boolean value, not null
+     * @return Handler which passes boolean value to the {@code callback}
+     */
+    public static PrimitiveValueHandler of(BooleanCallback callback)
+    {
+        return new BooleanHandler(callback, null);
+    }
+
+    /**
+     * @param listener Listener of boolean value, not null
+     * @return Handler which passes boolean value to the {@code listener}
+     */
+    public static PrimitiveValueHandler of(BooleanChangeListener listener)
+    {
+        return new BooleanHandler(null, listener);
+    }
+
+    /**
+     * @param callback Callback of string value, not null
+     * @return Handler which passes string value to the {@code callback}
+     */
+    public static PrimitiveValueHandler of(DataCallback<String> callback)
+    {
+        return new StringHandler(callback, null);
+    }
+
+    /**
+     * @param listener Listener of string value, not null
+     * @return Handler which passes string value to the {@code listener}
+     */
+    public static PrimitiveValueHandler of(DataChangeListener<String> listener)
+    {
+        return new StringHandler(null, listener);
+    }
+
+    /**
+     * @param value    Value of wrong type
+     * @param expected Name of expected type
+     * @return Exception which describes the value
+     */
+    protected static IllegalArgumentException wrongType(Object value, String expected)
+    {
+        return new IllegalArgumentException(value.getClass().getName() + " can not be transformed to " + expected);
+    }
+
+    private static class LongHandler extends PrimitiveValueHandler
+    {
+        private final LongCallback callback;
+        private final LongChangeListener listener;
+
+        private LongHandler(LongCallback callback, LongChangeListener listener)
+        {
+            this.callback = callback;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void onValue(Object value)
+        {
+            if (!(value instanceof Number)) {
+                fail(wrongType(value, "long"));
+                return;
+            }
+            handleLong(((Number) value).longValue());
+        }
+
+        @Override
+        public void handleLong(long value)
+        {
+            if (listener != null) {
+                listener.onChange(value);
+            } else {
+                callback.onData(value);
+            }
+        }
+
+        @Override
+        public Kind getKind()
+        {
+            return Kind.LONG;
+        }
+
+        @Override
+        public void fail(Exception e)
+        {
+            if (listener != null) {
+                listener.onCanceled(e);
+            } else {
+                callback.onError(e);
+            }
+        }
+    }
+
+    private static class DoubleHandler extends PrimitiveValueHandler
+    {
+        private final DoubleCallback callback;
+        private final DoubleChangeListener listener;
+
+        private DoubleHandler(DoubleCallback callback, DoubleChangeListener listener)
+        {
+            this.callback = callback;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void onValue(Object value)
+        {
+            if (!(value instanceof Number)) {
+                fail(wrongType(value, "double"));
+                return;
+            }
+            handleDouble(((Number) value).doubleValue());
+        }
+
+        @Override
+        public void handleDouble(double value)
+        {
+            if (listener != null) {
+                listener.onChange(value);
+            } else {
+                callback.onData(value);
+            }
+        }
+
+        @Override
+        public Kind getKind()
+        {
+            return Kind.DOUBLE;
+        }
+
+        @Override
+        public void fail(Exception e)
+        {
+            if (listener != null) {
+                listener.onCanceled(e);
+            } else {
+                callback.onError(e);
+            }
+        }
+    }
+
+    private static class BooleanHandler extends PrimitiveValueHandler
+    {
+        private final BooleanCallback callback;
+        private final BooleanChangeListener listener;
+
+        private BooleanHandler(BooleanCallback callback, BooleanChangeListener listener)
+        {
+            this.callback = callback;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void onValue(Object value)
+        {
+            if (value instanceof Boolean) {
+                handleBoolean((Boolean) value);
+            } else if (value instanceof Number) {
+                handleBoolean(((Number) value).intValue() != 0);
+            } else {
+                fail(wrongType(value, "boolean"));
+            }
+        }
+
+        @Override
+        public void handleBoolean(boolean value)
+        {
+            if (listener != null) {
+                listener.onChange(value);
+            } else {
+                callback.onData(value);
+            }
+        }
+
+        @Override
+        public Kind getKind()
+        {
+            return Kind.BOOLEAN;
+        }
+
+        @Override
+        public void fail(Exception e)
+        {
+            if (listener != null) {
+                listener.onCanceled(e);
+            } else {
+                callback.onError(e);
+            }
+        }
+    }
+
+    private static class StringHandler extends PrimitiveValueHandler
+    {
+        private final DataCallback<String> callback;
+        private final DataChangeListener<String> listener;
+
+        private StringHandler(DataCallback<String> callback, DataChangeListener<String> listener)
+        {
+            this.callback = callback;
+            this.listener = listener;
+        }
+
+        @Override
+        public void handle(Object value)
+        {
+            String data = value != null ? value.toString() : null;
+            if (listener != null) {
+                listener.onChange(data);
+            } else {
+                callback.onData(data);
+            }
+        }
+
+        @Override
+        protected void onValue(Object value)
+        {
+            handle(value);
+        }
+
+        @Override
+        public Kind getKind()
+        {
+            return Kind.STRING;
+        }
+
+        @Override
+        public void fail(Exception e)
+        {
+            if (listener != null) {
+                listener.onCanceled(e);
+            } else {
+                callback.onError(e);
+            }
+        }
+    }
+}
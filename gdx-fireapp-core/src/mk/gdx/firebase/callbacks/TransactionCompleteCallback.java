@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.callbacks;
+
+import mk.gdx.firebase.database.TransactionMetrics;
+
+/**
+ * Handles response of transaction together with information how it went.
+ * <p>
+ * {@link #onMetrics(TransactionMetrics)} is called first, then {@link #onSuccess()} or {@link #onError(Exception)}.
+ */
+public interface TransactionCompleteCallback extends CompleteCallback
+{
+    /**
+     * Calls when transaction has finished, successfully or not.
+     *
+     * @param metrics Number of attempts, duration and result of the transaction
+     */
+    void onMetrics(TransactionMetrics metrics);
+}
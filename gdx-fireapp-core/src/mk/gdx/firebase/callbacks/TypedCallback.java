@@ -0,0 +1,33 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.callbacks;
+
+import mk.gdx.firebase.database.TypeToken;
+
+/**
+ * Callback or listener which gives type of wanted data explicitly.
+ * <p>
+ * Needed when generic type can not be read from the callback class, for ex. for lambdas, or when it should not be read by reflection.
+ */
+public interface TypedCallback
+{
+
+    /**
+     * @return Type of data wanted by this callback, not null
+     */
+    TypeToken<?> getTypeToken();
+}
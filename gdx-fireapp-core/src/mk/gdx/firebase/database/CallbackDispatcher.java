@@ -0,0 +1,701 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import mk.gdx.firebase.callbacks.BooleanCallback;
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.DoubleCallback;
+import mk.gdx.firebase.callbacks.LongCallback;
+import mk.gdx.firebase.callbacks.TransactionCompleteCallback;
+import mk.gdx.firebase.listeners.BooleanChangeListener;
+import mk.gdx.firebase.listeners.ChildChangeListener;
+import mk.gdx.firebase.listeners.DataChangeListener;
+import mk.gdx.firebase.listeners.DoubleChangeListener;
+import mk.gdx.firebase.listeners.LongChangeListener;
+
+/**
+ * Decides on which thread database callbacks and listeners are called.
+ * <p>
+ * Available modes:
+ * <ul>
+ * <li>{@link Mode#IMMEDIATE} - callbacks are called on the thread used by Firebase SDK, it is default mode
+ * <li>{@link Mode#GL_THREAD} - callbacks are posted to the libGDX rendering thread by {@code Gdx.app.postRunnable}
+ * <li>{@link Mode#FRAME_BUDGET} - callbacks are queued and called on the rendering thread, but in one frame only for given amount of time,<p>
+ * rest of them waits for the next frame. It prevents from long frames when many events arrive at once, for ex. after reconnection.
+ * </ul>
+ * <p>
+ * Usage:
+ * {@code
+ * GdxFIRDatabase.instance().setCallbackDispatcher(new CallbackDispatcher(CallbackDispatcher.Mode.FRAME_BUDGET, 4f));
+ * }
+ * <p>
+ * Order of callbacks is kept in every mode.
+ */
+public class CallbackDispatcher
+{
+    /**
+     * Delivery mode of callbacks.
+     */
+    public enum Mode
+    {
+        IMMEDIATE, GL_THREAD, FRAME_BUDGET
+    }
+
+    private final Mode mode;
+    private final long frameBudgetNanos;
+    private final ConcurrentLinkedQueue<Runnable> queue;
+    private final AtomicBoolean drainPosted;
+    private final Runnable drainTask;
+
+    /**
+     * @param mode {@link Mode#IMMEDIATE} or {@link Mode#GL_THREAD}. For {@link Mode#FRAME_BUDGET} default budget of 2ms is used.
+     */
+    public CallbackDispatcher(Mode mode)
+    {
+        this(mode, 2f);
+    }
+
+    /**
+     * @param mode              Delivery mode
+     * @param frameBudgetMillis Time in milliseconds which callbacks may take in one frame, used only by {@link Mode#FRAME_BUDGET}
+     */
+    public CallbackDispatcher(Mode mode, float frameBudgetMillis)
+    {
+        this.mode = mode;
+        this.frameBudgetNanos = (long) (frameBudgetMillis * 1000000);
+        queue = new ConcurrentLinkedQueue<>();
+        drainPosted = new AtomicBoolean();
+        drainTask = new Runnable() {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        };
+    }
+
+    /**
+     * @return Delivery mode
+     */
+    public Mode getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * @return Number of callbacks waiting for the next frame, always 0 if mode is not {@link Mode#FRAME_BUDGET}
+     */
+    public int getQueuedCount()
+    {
+        return queue.size();
+    }
+
+    /**
+     * Runs the task according to the mode.
+     *
+     * @param task Task which calls user callback
+     */
+    public void dispatch(Runnable task)
+    {
+        switch (mode) {
+            case GL_THREAD:
+                Gdx.app.postRunnable(task);
+                break;
+            case FRAME_BUDGET:
+                queue.add(task);
+                if (drainPosted.compareAndSet(false, true))
+                    Gdx.app.postRunnable(drainTask);
+                break;
+            default:
+                task.run();
+        }
+    }
+
+    /**
+     * @param callback Callback, may be null
+     * @param <T>      Type of data
+     * @return Callback which is called according to the mode, the given one if mode is {@link Mode#IMMEDIATE}
+     */
+    public <T> DataCallback<T> wrap(DataCallback<T> callback)
+    {
+        return callback == null || mode == Mode.IMMEDIATE ? callback : new DispatchedDataCallback<>(this, callback);
+    }
+
+    /**
+     * @param listener Listener, may be null
+     * @param <T>      Type of data
+     * @return Listener which is called according to the mode, the given one if mode is {@link Mode#IMMEDIATE}
+     */
+    public <T> DataChangeListener<T> wrap(DataChangeListener<T> listener)
+    {
+        return listener == null || mode == Mode.IMMEDIATE ? listener : new DispatchedDataChangeListener<>(this, listener);
+    }
+
+    /**
+     * @param listener Listener, may be null
+     * @param <T>      Type of child data
+     * @return Listener which is called according to the mode, the given one if mode is {@link Mode#IMMEDIATE}
+     */
+    public <T> ChildChangeListener<T> wrap(ChildChangeListener<T> listener)
+    {
+        return listener == null || mode == Mode.IMMEDIATE ? listener : new DispatchedChildChangeListener<>(this, listener);
+    }
+
+    /**
+     * @param callback Callback, may be null
+     * @return Callback which is called according to the mode, the given one if mode is {@link Mode#IMMEDIATE}
+     */
+    public CompleteCallback wrap(CompleteCallback callback)
+    {
+        if (callback == null || mode == Mode.IMMEDIATE)
+            return callback;
+        if (callback instanceof TransactionCompleteCallback)
+            return new DispatchedTransactionCompleteCallback(this, (TransactionCompleteCallback) callback);
+        return new DispatchedCompleteCallback(this, callback);
+    }
+
+    /**
+     * @param callback Callback, may be null
+     * @return Callback which is called according to the mode, the given one if mode is {@link Mode#IMMEDIATE}
+     */
+    public LongCallback wrap(LongCallback callback)
+    {
+        return callback == null || mode == Mode.IMMEDIATE ? callback : new DispatchedLongCallback(this, callback);
+    }
+
+    /**
+     * @param listener Listener, may be null
+     * @return Listener which is called according to the mode, the given one if mode is {@link Mode#IMMEDIATE}
+     */
+    public LongChangeListener wrap(LongChangeListener listener)
+    {
+        return listener == null || mode == Mode.IMMEDIATE ? listener : new DispatchedLongChangeListener(this, listener);
+    }
+
+    /**
+     * @param callback Callback, may be null
+     * @return Callback which is called according to the mode, the given one if mode is {@link Mode#IMMEDIATE}
+     */
+    public DoubleCallback wrap(DoubleCallback callback)
+    {
+        return callback == null || mode == Mode.IMMEDIATE ? callback : new DispatchedDoubleCallback(this, callback);
+    }
+
+    /**
+     * @param listener Listener, may be null
+     * @return Listener which is called according to the mode, the given one if mode is {@link Mode#IMMEDIATE}
+     */
+    public DoubleChangeListener wrap(DoubleChangeListener listener)
+    {
+        return listener == null || mode == Mode.IMMEDIATE ? listener : new DispatchedDoubleChangeListener(this, listener);
+    }
+
+    /**
+     * @param callback Callback, may be null
+     * @return Callback which is called according to the mode, the given one if mode is {@link Mode#IMMEDIATE}
+     */
+    public BooleanCallback wrap(BooleanCallback callback)
+    {
+        return callback == null || mode == Mode.IMMEDIATE ? callback : new DispatchedBooleanCallback(this, callback);
+    }
+
+    /**
+     * @param listener Listener, may be null
+     * @return Listener which is called according to the mode, the given one if mode is {@link Mode#IMMEDIATE}
+     */
+    public BooleanChangeListener wrap(BooleanChangeListener listener)
+    {
+        return listener == null || mode == Mode.IMMEDIATE ? listener : new DispatchedBooleanChangeListener(this, listener);
+    }
+
+    /**
+     * Runs queued callbacks until the frame budget is used, posts itself to the next frame if something left.
+     */
+    private void drain()
+    {
+        long start = TimeUtils.nanoTime();
+        Runnable task;
+        // At least one callback is called in each frame, even if budget is 0.
+        do {
+            task = queue.poll();
+            if (task == null) break;
+            task.run();
+        } while (TimeUtils.nanoTime() - start < frameBudgetNanos);
+        drainPosted.set(false);
+        if (!queue.isEmpty() && drainPosted.compareAndSet(false, true))
+            Gdx.app.postRunnable(drainTask);
+    }
+
+    /**
+     * Wrapper for {@link DataCallback} which passes every call through the dispatcher.
+     */
+    private static class DispatchedDataCallback<T> implements DataCallback<T>
+    {
+        private final CallbackDispatcher dispatcher;
+        private final DataCallback<T> callback;
+
+        private DispatchedDataCallback(CallbackDispatcher dispatcher, DataCallback<T> callback)
+        {
+            this.dispatcher = dispatcher;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onData(final T data)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onData(data);
+                }
+            });
+        }
+
+        @Override
+        public void onError(final Exception e)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onError(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wrapper for {@link DataChangeListener} which passes every call through the dispatcher.
+     */
+    private static class DispatchedDataChangeListener<T> implements DataChangeListener<T>
+    {
+        private final CallbackDispatcher dispatcher;
+        private final DataChangeListener<T> listener;
+
+        private DispatchedDataChangeListener(CallbackDispatcher dispatcher, DataChangeListener<T> listener)
+        {
+            this.dispatcher = dispatcher;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onChange(final T newValue)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onChange(newValue);
+                }
+            });
+        }
+
+        @Override
+        public void onCanceled(final Exception e)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onCanceled(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wrapper for {@link ChildChangeListener} which passes every call through the dispatcher.
+     */
+    private static class DispatchedChildChangeListener<T> implements ChildChangeListener<T>
+    {
+        private final CallbackDispatcher dispatcher;
+        private final ChildChangeListener<T> listener;
+
+        private DispatchedChildChangeListener(CallbackDispatcher dispatcher, ChildChangeListener<T> listener)
+        {
+            this.dispatcher = dispatcher;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onChildAdded(final String key, final T value, final String previousChildKey)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onChildAdded(key, value, previousChildKey);
+                }
+            });
+        }
+
+        @Override
+        public void onChildChanged(final String key, final T value, final String previousChildKey)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onChildChanged(key, value, previousChildKey);
+                }
+            });
+        }
+
+        @Override
+        public void onChildRemoved(final String key, final T value)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onChildRemoved(key, value);
+                }
+            });
+        }
+
+        @Override
+        public void onChildMoved(final String key, final T value, final String previousChildKey)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onChildMoved(key, value, previousChildKey);
+                }
+            });
+        }
+
+        @Override
+        public void onCanceled(final Exception e)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onCanceled(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wrapper for {@link CompleteCallback} which passes every call through the dispatcher.
+     */
+    private static class DispatchedCompleteCallback implements CompleteCallback
+    {
+        protected final CallbackDispatcher dispatcher;
+        private final CompleteCallback callback;
+
+        private DispatchedCompleteCallback(CallbackDispatcher dispatcher, CompleteCallback callback)
+        {
+            this.dispatcher = dispatcher;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onSuccess()
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onSuccess();
+                }
+            });
+        }
+
+        @Override
+        public void onError(final Exception e)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onError(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wrapper for {@link TransactionCompleteCallback} which passes every call through the dispatcher.
+     */
+    private static class DispatchedTransactionCompleteCallback extends DispatchedCompleteCallback implements TransactionCompleteCallback
+    {
+        private final TransactionCompleteCallback callback;
+
+        private DispatchedTransactionCompleteCallback(CallbackDispatcher dispatcher, TransactionCompleteCallback callback)
+        {
+            super(dispatcher, callback);
+            this.callback = callback;
+        }
+
+        @Override
+        public void onMetrics(final TransactionMetrics metrics)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onMetrics(metrics);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wrapper for {@link LongCallback} which passes every call through the dispatcher.
+     */
+    private static class DispatchedLongCallback implements LongCallback
+    {
+        private final CallbackDispatcher dispatcher;
+        private final LongCallback callback;
+
+        private DispatchedLongCallback(CallbackDispatcher dispatcher, LongCallback callback)
+        {
+            this.dispatcher = dispatcher;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onData(final long data)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onData(data);
+                }
+            });
+        }
+
+        @Override
+        public void onError(final Exception e)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onError(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wrapper for {@link LongChangeListener} which passes every call through the dispatcher.
+     */
+    private static class DispatchedLongChangeListener implements LongChangeListener
+    {
+        private final CallbackDispatcher dispatcher;
+        private final LongChangeListener listener;
+
+        private DispatchedLongChangeListener(CallbackDispatcher dispatcher, LongChangeListener listener)
+        {
+            this.dispatcher = dispatcher;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onChange(final long newValue)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onChange(newValue);
+                }
+            });
+        }
+
+        @Override
+        public void onCanceled(final Exception e)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onCanceled(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wrapper for {@link DoubleCallback} which passes every call through the dispatcher.
+     */
+    private static class DispatchedDoubleCallback implements DoubleCallback
+    {
+        private final CallbackDispatcher dispatcher;
+        private final DoubleCallback callback;
+
+        private DispatchedDoubleCallback(CallbackDispatcher dispatcher, DoubleCallback callback)
+        {
+            this.dispatcher = dispatcher;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onData(final double data)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onData(data);
+                }
+            });
+        }
+
+        @Override
+        public void onError(final Exception e)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onError(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wrapper for {@link DoubleChangeListener} which passes every call through the dispatcher.
+     */
+    private static class DispatchedDoubleChangeListener implements DoubleChangeListener
+    {
+        private final CallbackDispatcher dispatcher;
+        private final DoubleChangeListener listener;
+
+        private DispatchedDoubleChangeListener(CallbackDispatcher dispatcher, DoubleChangeListener listener)
+        {
+            this.dispatcher = dispatcher;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onChange(final double newValue)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onChange(newValue);
+                }
+            });
+        }
+
+        @Override
+        public void onCanceled(final Exception e)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onCanceled(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wrapper for {@link BooleanCallback} which passes every call through the dispatcher.
+     */
+    private static class DispatchedBooleanCallback implements BooleanCallback
+    {
+        private final CallbackDispatcher dispatcher;
+        private final BooleanCallback callback;
+
+        private DispatchedBooleanCallback(CallbackDispatcher dispatcher, BooleanCallback callback)
+        {
+            this.dispatcher = dispatcher;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onData(final boolean data)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onData(data);
+                }
+            });
+        }
+
+        @Override
+        public void onError(final Exception e)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    callback.onError(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * Wrapper for {@link BooleanChangeListener} which passes every call through the dispatcher.
+     */
+    private static class DispatchedBooleanChangeListener implements BooleanChangeListener
+    {
+        private final CallbackDispatcher dispatcher;
+        private final BooleanChangeListener listener;
+
+        private DispatchedBooleanChangeListener(CallbackDispatcher dispatcher, BooleanChangeListener listener)
+        {
+            this.dispatcher = dispatcher;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onChange(final boolean newValue)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onChange(newValue);
+                }
+            });
+        }
+
+        @Override
+        public void onCanceled(final Exception e)
+        {
+            dispatcher.dispatch(new Runnable() {
+                @Override
+                public void run()
+                {
+                    listener.onCanceled(e);
+                }
+            });
+        }
+    }
+}
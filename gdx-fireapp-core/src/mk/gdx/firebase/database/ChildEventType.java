@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import mk.gdx.firebase.listeners.ChildChangeListener;
+
+/**
+ * Types of child events which can be handled by {@link ChildChangeListener}.
+ */
+public enum ChildEventType
+{
+    /**
+     * New child was added.
+     */
+    ADDED,
+    /**
+     * Data of existing child was changed.
+     */
+    CHANGED,
+    /**
+     * Child was removed.
+     */
+    REMOVED,
+    /**
+     * Child changed its position in ordering of the query.
+     */
+    MOVED
+}
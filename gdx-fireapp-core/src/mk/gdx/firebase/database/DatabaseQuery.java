@@ -0,0 +1,309 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import mk.gdx.firebase.callbacks.BooleanCallback;
+import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.DoubleCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
+import mk.gdx.firebase.callbacks.LongCallback;
+import mk.gdx.firebase.listeners.BooleanChangeListener;
+import mk.gdx.firebase.listeners.ChildChangeListener;
+import mk.gdx.firebase.listeners.DataChangeListener;
+import mk.gdx.firebase.listeners.DoubleChangeListener;
+import mk.gdx.firebase.listeners.LongChangeListener;
+
+/**
+ * Immutable, read-only view of database location which may be ordered and limited.
+ * <p>
+ * Every ordering or filtering method returns new instance, so queries can be built step by step and shared between threads.<p>
+ * Only part of data selected by the query is downloaded and deserialized.
+ * <p>
+ * Usage:
+ * {@code
+ * GdxFIRDatabase.instance().ref("/scores")
+ * .orderByChild("points")
+ * .limitToLast(10)
+ * .readValue(List.class, new DataCallback<List<Score>>() {...});
+ * }
+ * <p>
+ * Same rules as in Firebase SDK apply - only one {@code orderBy*} method can be used in one query<p>
+ * and {@code equalTo} can not be combined with {@code startAt} or {@code endAt}.
+ *
+ * @see DatabaseRef
+ */
+public interface DatabaseQuery
+{
+
+    /**
+     * @return Database path of this query, for ex. {@code "/users/abc"}, not null.
+     */
+    String getPath();
+
+    /**
+     * @return Text representation of ordering and filtering of this query, empty for not filtered location. Same queries have same ids.
+     */
+    String getQueryId();
+
+    /**
+     * Orders children by value of the given child.
+     *
+     * @param childPath Path of the child, relative to each child of this location
+     * @return New query
+     */
+    DatabaseQuery orderByChild(String childPath);
+
+    /**
+     * Orders children by their keys.
+     *
+     * @return New query
+     */
+    DatabaseQuery orderByKey();
+
+    /**
+     * Orders children by their values.
+     *
+     * @return New query
+     */
+    DatabaseQuery orderByValue();
+
+    /**
+     * Limits result to the first {@code limit} children.
+     *
+     * @param limit Maximum number of children
+     * @return New query
+     */
+    DatabaseQuery limitToFirst(int limit);
+
+    /**
+     * Limits result to the last {@code limit} children.
+     *
+     * @param limit Maximum number of children
+     * @return New query
+     */
+    DatabaseQuery limitToLast(int limit);
+
+    /**
+     * Skips children before the given value of current ordering.
+     *
+     * @param value Start value, inclusive
+     * @return New query
+     */
+    DatabaseQuery startAt(String value);
+
+    /**
+     * Skips children before the given value of current ordering.
+     *
+     * @param value Start value, inclusive
+     * @return New query
+     */
+    DatabaseQuery startAt(double value);
+
+    /**
+     * Skips children before the given value of current ordering.
+     *
+     * @param value Start value, inclusive
+     * @return New query
+     */
+    DatabaseQuery startAt(boolean value);
+
+    /**
+     * Skips children after the given value of current ordering.
+     *
+     * @param value End value, inclusive
+     * @return New query
+     */
+    DatabaseQuery endAt(String value);
+
+    /**
+     * Skips children after the given value of current ordering.
+     *
+     * @param value End value, inclusive
+     * @return New query
+     */
+    DatabaseQuery endAt(double value);
+
+    /**
+     * Skips children after the given value of current ordering.
+     *
+     * @param value End value, inclusive
+     * @return New query
+     */
+    DatabaseQuery endAt(boolean value);
+
+    /**
+     * Selects only children with the given value of current ordering.
+     *
+     * @param value Wanted value
+     * @return New query
+     */
+    DatabaseQuery equalTo(String value);
+
+    /**
+     * Selects only children with the given value of current ordering.
+     *
+     * @param value Wanted value
+     * @return New query
+     */
+    DatabaseQuery equalTo(double value);
+
+    /**
+     * Selects only children with the given value of current ordering.
+     *
+     * @param value Wanted value
+     * @return New query
+     */
+    DatabaseQuery equalTo(boolean value);
+
+    /**
+     * Reads data selected by this query and gives response by {@code DataCallback}.
+     *
+     * @param dataType Class you want to retrieve
+     * @param callback Callback that handles response
+     * @param <T>      Type of data you want to retrieve, associated with {@code dataType} for ex. {@code List.class}
+     * @param <R>      More specific type of data you want to retrieve associated with {@code callback} - needed because of nested generic types for ex. {@code List<User>}
+     * @see DataCallback
+     */
+    <T, R extends T> void readValue(Class<T> dataType, DataCallback<R> callback);
+
+    /**
+     * Reads elements of list or map selected by this query and gives them one by one to {@code ElementCallback}.
+     * <p>
+     * Element is decoded just before it is given, the callback can stop reading at any time.
+     *
+     * @param dataType Class of single element you want to retrieve
+     * @param callback Callback that handles elements
+     * @param <T>      Type of element you want to retrieve, associated with {@code dataType}
+     * @param <R>      More specific type of element you want to retrieve associated with {@code callback}
+     * @see ElementCallback
+     */
+    <T, R extends T> void readValue(Class<T> dataType, ElementCallback<R> callback);
+
+    /**
+     * Handles changes of data selected by this query and gives response by {@code DataChangeListener}.
+     * <p>
+     * All listeners of the same path and query share one native observer and snapshot is decoded once for each wanted type,<p>
+     * so listeners of the same type receive the same object - do not modify it.
+     *
+     * @param dataType Class you want to retrieve
+     * @param listener Listener, may by null - if null all listeners of this query will be removed.
+     * @param <T>      Type of data you want to retrieve, associated with {@code dataType} for ex. {@code List.class}
+     * @param <R>      More specific type of data you want to retrieve associated with {@code listener} - needed because of nested generic types for ex. {@code List<User>}
+     * @return Handle which detaches only the given {@code listener}, null if {@code listener} was null
+     * @see DataChangeListener
+     */
+    <T, R extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<R> listener);
+
+    /**
+     * Handles changes of single children selected by this query and gives response by {@code ChildChangeListener}.
+     *
+     * @param dataType Class of child you want to retrieve
+     * @param listener Listener, may by null - if null all child listeners of this query will be removed.
+     * @param events   Types of events which should be delivered to the {@code listener}, all types if empty
+     * @param <T>      Type of child data you want to retrieve, associated with {@code dataType}
+     * @param <R>      More specific type of child data you want to retrieve associated with {@code listener}
+     * @return Handle which detaches only the given {@code listener}, null if {@code listener} was null
+     * @see ChildChangeListener
+     */
+    <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events);
+
+    /**
+     * Reads single number selected by this query, without wrapper object nor reflection.
+     * <p>
+     * Absent value is reported by {@code onError} with {@link mk.gdx.firebase.exceptions.AbsentValueException}, so it is not mistaken for {@code 0}.
+     *
+     * @param callback Callback that handles response
+     * @see LongCallback
+     */
+    void readLong(LongCallback callback);
+
+    /**
+     * Reads single number selected by this query, without wrapper object nor reflection.
+     *
+     * @param callback Callback that handles response
+     * @see DoubleCallback
+     */
+    void readDouble(DoubleCallback callback);
+
+    /**
+     * Reads single boolean selected by this query, without wrapper object nor reflection.
+     *
+     * @param callback Callback that handles response
+     * @see BooleanCallback
+     */
+    void readBoolean(BooleanCallback callback);
+
+    /**
+     * Reads single string selected by this query, without reflection.
+     * <p>
+     * Value which is not a string is given as its text representation, absent value as null.
+     *
+     * @param callback Callback that handles response
+     */
+    void readString(DataCallback<String> callback);
+
+    /**
+     * Handles changes of single number selected by this query, decoded without wrapper object nor reflection.
+     * <p>
+     * Meant for values observed very often, for ex. counters shown by HUD. Listener has its own native observer.<p>
+     * Absent value is reported by {@code onCanceled} with {@link mk.gdx.firebase.exceptions.AbsentValueException}, listener stays attached.
+     *
+     * @param listener Listener, not null
+     * @return Handle which detaches the {@code listener}, it is detached by {@code onDataChange(type, null)} as well
+     * @see LongChangeListener
+     */
+    ListenerRegistration onLongChange(LongChangeListener listener);
+
+    /**
+     * Handles changes of single number selected by this query, decoded without wrapper object nor reflection.
+     * <p>
+     * Listener has its own native observer.
+     *
+     * @param listener Listener, not null
+     * @return Handle which detaches the {@code listener}, it is detached by {@code onDataChange(type, null)} as well
+     * @see DoubleChangeListener
+     */
+    ListenerRegistration onDoubleChange(DoubleChangeListener listener);
+
+    /**
+     * Handles changes of single boolean selected by this query, decoded without wrapper object nor reflection.
+     * <p>
+     * Listener has its own native observer.
+     *
+     * @param listener Listener, not null
+     * @return Handle which detaches the {@code listener}, it is detached by {@code onDataChange(type, null)} as well
+     * @see BooleanChangeListener
+     */
+    ListenerRegistration onBooleanChange(BooleanChangeListener listener);
+
+    /**
+     * Handles changes of single string selected by this query, decoded without reflection.
+     * <p>
+     * Listener has its own native observer. Value which is not a string is given as its text representation, absent value as null.
+     *
+     * @param listener Listener, not null
+     * @return Handle which detaches the {@code listener}, it is detached by {@code onDataChange(type, null)} as well
+     */
+    ListenerRegistration onStringChange(DataChangeListener<String> listener);
+
+    /**
+     * Keeps data selected by this query fresh.
+     *
+     * @param synced If true sync for this query will be enabled
+     */
+    void keepSynced(boolean synced);
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import java.util.Map;
+
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.callbacks.TransactionCallback;
+import mk.gdx.firebase.callbacks.TransactionCompleteCallback;
+import mk.gdx.firebase.distributions.DatabaseDistribution;
+
+/**
+ * Immutable handle to one location inside Firebase database.
+ * <p>
+ * Unlike {@link DatabaseDistribution#inReference(String)} the handle does not keep any state between calls,<p>
+ * so it can be created once, kept as a field and used from many threads at the same time.<p>
+ * Platform database reference is resolved only once - when the handle is created.
+ * <p>
+ * Usage:
+ * {@code
+ * DatabaseRef scoreRef = GdxFIRDatabase.instance().ref("/players/" + id + "/score");
+ * scoreRef.setValue(score);
+ * }
+ * <p>
+ * Handle is also a not filtered {@link DatabaseQuery}, so it can read and listen for whole location data.
+ *
+ * @see DatabaseDistribution#ref(String)
+ */
+public interface DatabaseRef extends DatabaseQuery
+{
+
+    /**
+     * Creates handle to the location relative to this one.
+     *
+     * @param childPath Relative path, for ex. {@code "score"} or {@code "stats/score"}
+     * @return New handle, this instance stays untouched
+     */
+    DatabaseRef child(String childPath);
+
+    /**
+     * Creates new object inside database under this location.
+     *
+     * @return New handle pointing to just created object, this instance stays untouched
+     */
+    DatabaseRef push();
+
+    /**
+     * Sets value for path of this handle.
+     *
+     * @param value Any value which you want to store. Given object will be transformed to Firebase-like data type.
+     */
+    void setValue(Object value);
+
+    /**
+     * Sets value for path of this handle and gives response by {@code CompleteCallback}.
+     *
+     * @param value            Any value which you want to store. Given object will be transformed to Firebase-like data type.
+     * @param completeCallback Callback that handles response
+     * @see CompleteCallback
+     */
+    void setValue(Object value, CompleteCallback completeCallback);
+
+    /**
+     * Removes value in path of this handle.
+     */
+    void removeValue();
+
+    /**
+     * Removes value in path of this handle and gives response by {@code CompleteCallback}.
+     *
+     * @param completeCallback Complete callback
+     * @see CompleteCallback
+     */
+    void removeValue(CompleteCallback completeCallback);
+
+    /**
+     * Updates children's for path of this handle.
+     *
+     * @param data New data
+     */
+    void updateChildren(Map<String, Object> data);
+
+    /**
+     * Updates children's for path of this handle and gives response by {@code CompleteCallback}.
+     *
+     * @param data             New data
+     * @param completeCallback Callback when done
+     */
+    void updateChildren(Map<String, Object> data, CompleteCallback completeCallback);
+
+    /**
+     * Provides transaction for value of this handle and gives response by {@code CompleteCallback}
+     *
+     * @param dataType            Type of data you want to get.
+     * @param transactionCallback Callback called when transaction is complete.
+     * @param completeCallback    Can be null. If it is {@link TransactionCompleteCallback} metrics of the transaction will be given as well.
+     * @see CompleteCallback
+     * @see TransactionCallback
+     */
+    <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, CompleteCallback completeCallback);
+
+    /**
+     * Provides transaction for value of this handle, with control over retries.
+     *
+     * @param dataType            Type of data you want to get.
+     * @param transactionCallback Callback called when transaction is complete.
+     * @param transactionPolicy   Decides when transaction should be aborted, may be null
+     * @param completeCallback    Can be null. If it is {@link TransactionCompleteCallback} metrics of the transaction will be given as well.<p>
+     *                            Aborted transaction is reported by {@code onError} with {@link mk.gdx.firebase.exceptions.TransactionAbortedException}.
+     * @see TransactionPolicy
+     */
+    <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, TransactionPolicy transactionPolicy, CompleteCallback completeCallback);
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import mk.gdx.firebase.helpers.DataSizeHelper;
+
+/**
+ * Keeps objects decoded from database snapshots, so unchanged data is not mapped to POJO again.
+ * <p>
+ * Each entry is identified by key (for ex. path with query id) and type key, it remembers raw snapshot value - tree of maps, lists and primitives -<p>
+ * and object decoded from it. Cached object is reused only if the new raw value is equal to the remembered one - hash is checked first,<p>
+ * so in the most cases only hashes are compared. Callers which look up and then put the same raw value should compute its hash once<p>
+ * and pass it to {@link #get(String, Object, Object, int)} and {@link #put(String, Object, Object, int, Object)}.
+ * <p>
+ * Platforms which decode collections element by element may cache single children under child keys,<p>
+ * then only changed children are mapped again.
+ * <p>
+ * Memory is bounded by estimated size of kept values, least recently used entries are evicted first.<p>
+ * Decoded objects are shared - they should not be modified.
+ */
+public class DecodedValueCache
+{
+    private final long maxBytes;
+    private final LinkedHashMap<CacheKey, Entry> entries;
+    private long sizeBytes;
+
+    /**
+     * @param maxBytes Maximum estimated size of all kept values, in bytes
+     */
+    public DecodedValueCache(long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param key     Key of the value, for ex. path with query id
+     * @param typeKey Key of the wanted type
+     * @param raw     Current raw value of the snapshot
+     * @return Object decoded earlier from equal raw value or null if there is no such object
+     */
+    public Object get(String key, Object typeKey, Object raw)
+    {
+        return raw != null ? get(key, typeKey, raw, raw.hashCode()) : null;
+    }
+
+    /**
+     * @param key     Key of the value, for ex. path with query id
+     * @param typeKey Key of the wanted type
+     * @param raw     Current raw value of the snapshot, not null
+     * @param rawHash Hash code of the {@code raw} value
+     * @return Object decoded earlier from equal raw value or null if there is no such object
+     */
+    public synchronized Object get(String key, Object typeKey, Object raw, int rawHash)
+    {
+        Entry entry = entries.get(new CacheKey(key, typeKey));
+        if (entry == null || entry.rawHash != rawHash || !entry.raw.equals(raw))
+            return null;
+        return entry.decoded;
+    }
+
+    /**
+     * Remembers decoded object, replaces previous one with the same keys.
+     * <p>
+     * Raw value must not be modified after it was put to the cache.
+     *
+     * @param key     Key of the value, for ex. path with query id
+     * @param typeKey Key of the decoded type
+     * @param raw     Raw value of the snapshot
+     * @param decoded Object decoded from the {@code raw} value
+     */
+    public void put(String key, Object typeKey, Object raw, Object decoded)
+    {
+        if (raw != null)
+            put(key, typeKey, raw, raw.hashCode(), decoded);
+    }
+
+    /**
+     * Remembers decoded object, replaces previous one with the same keys.
+     * <p>
+     * Size of the {@code raw} value is estimated here, only when the entry is inserted.
+     *
+     * @param key     Key of the value, for ex. path with query id
+     * @param typeKey Key of the decoded type
+     * @param raw     Raw value of the snapshot, not null
+     * @param rawHash Hash code of the {@code raw} value
+     * @param decoded Object decoded from the {@code raw} value
+     */
+    public synchronized void put(String key, Object typeKey, Object raw, int rawHash, Object decoded)
+    {
+        if (decoded == null)
+            return;
+        // Raw and decoded values have similar size, decoded one is not measured - it would cost another reflection pass.
+        long bytes = 2 * DataSizeHelper.estimateBytes(raw);
+        if (bytes > maxBytes)
+            return;
+        Entry previous = entries.put(new CacheKey(key, typeKey), new Entry(raw, rawHash, decoded, bytes));
+        if (previous != null)
+            sizeBytes -= previous.bytes;
+        sizeBytes += bytes;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (sizeBytes > maxBytes && iterator.hasNext()) {
+            sizeBytes -= iterator.next().bytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    /**
+     * @return Estimated size of all kept values, in bytes
+     */
+    public synchronized long getSizeBytes()
+    {
+        return sizeBytes;
+    }
+
+    /**
+     * @return Maximum estimated size of all kept values, in bytes
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Pair of value key and type key.
+     */
+    private static class CacheKey
+    {
+        private final String key;
+        private final Object typeKey;
+
+        private CacheKey(String key, Object typeKey)
+        {
+            this.key = key;
+            this.typeKey = typeKey;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return key.equals(other.key) && typeKey.equals(other.typeKey);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * key.hashCode() + typeKey.hashCode();
+        }
+    }
+
+    /**
+     * Raw value with its decoded object.
+     */
+    private static class Entry
+    {
+        private final Object raw;
+        private final int rawHash;
+        private final Object decoded;
+        private final long bytes;
+
+        private Entry(Object raw, int rawHash, Object decoded, long bytes)
+        {
+            this.raw = raw;
+            this.rawHash = rawHash;
+            this.decoded = decoded;
+            this.bytes = bytes;
+        }
+    }
+}
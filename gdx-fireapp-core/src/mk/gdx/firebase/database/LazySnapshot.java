@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import mk.gdx.firebase.distributions.DatabaseDistribution;
+
+/**
+ * View of database data which decodes only the parts which are touched.
+ * <p>
+ * Give {@code LazySnapshot.class} as data type to get it instead of whole decoded value, it wraps platform snapshot as it is:<p>
+ * {@code
+ * GdxFIRDatabase.instance().ref("/players/" + id).readValue(LazySnapshot.class, new DataCallback<LazySnapshot>() {
+ * public void onData(LazySnapshot data) {
+ * long score = data.child("stats/score").getValue(Long.class);
+ * }
+ * ...
+ * });
+ * }
+ * <p>
+ * Children are decoded only by {@link #getValue(Class)}, so reading a few fields of a big node does not cost decoding of the whole node.<p>
+ * Iteration goes over snapshots of direct children, in order given by the query.<p>
+ * Snapshot is immutable, it does not change when data inside database changes.
+ *
+ * @see DatabaseDistribution#readValue(Class, mk.gdx.firebase.callbacks.DataCallback)
+ * @see DatabaseQuery#onDataChange(Class, mk.gdx.firebase.listeners.DataChangeListener)
+ */
+public interface LazySnapshot extends Iterable<LazySnapshot>
+{
+
+    /**
+     * @return Key of the location of this snapshot, null for the database root
+     */
+    String getKey();
+
+    /**
+     * @return True if there is any data at the location of this snapshot
+     */
+    boolean exists();
+
+    /**
+     * @param path Relative path, for ex. {@code "score"} or {@code "stats/score"}
+     * @return True if there is any data at the given path
+     */
+    boolean hasChild(String path);
+
+    /**
+     * Gets snapshot of the data at the given path, nothing is decoded yet.
+     *
+     * @param path Relative path, for ex. {@code "score"} or {@code "stats/score"}
+     * @return Snapshot of the child, not null - check {@link #exists()} if the child may be absent
+     */
+    LazySnapshot child(String path);
+
+    /**
+     * @return Number of direct children, 0 for primitive data
+     */
+    long childrenCount();
+
+    /**
+     * Decodes data of this snapshot, same as it would be decoded when given as data type to {@code readValue}.
+     *
+     * @param dataType Wanted type, for ex. {@code Long.class}, {@code Map.class} or POJO class
+     * @param <T>      Type of data you want to retrieve
+     * @return Decoded data, null if there is no data
+     */
+    <T> T getValue(Class<T> dataType);
+}
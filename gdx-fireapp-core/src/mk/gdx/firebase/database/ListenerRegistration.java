@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+/**
+ * Handle of one listener added by {@link DatabaseQuery#onDataChange(Class, mk.gdx.firebase.listeners.DataChangeListener)}
+ * or {@link DatabaseQuery#onChildChange(Class, mk.gdx.firebase.listeners.ChildChangeListener, ChildEventType...)}.
+ * <p>
+ * Usage:
+ * {@code
+ * ListenerRegistration registration = GdxFIRDatabase.instance().ref("/scores").onDataChange(Map.class, listener);
+ * ...
+ * registration.remove();
+ * }
+ * <p>
+ * Only the listener of this handle is detached, other listeners of the same path stay untouched.
+ */
+public interface ListenerRegistration
+{
+
+    /**
+     * Detaches the listener from the database.
+     * <p>
+     * Calling it more than once, or after all listeners of the path were removed, does nothing.
+     */
+    void remove();
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ObjectSet;
+
+/**
+ * Keeps listener registrations of one database distribution, grouped by the listened location.
+ * <p>
+ * Adding and removing single registration is O(1), location entry is dropped together with its last registration,<p>
+ * so listeners added and removed during long sessions do not pile up.
+ * <p>
+ * All methods are synchronized, registry may be used from many threads.
+ *
+ * @param <R> Platform type of registration
+ */
+public class ListenerRegistry<R>
+{
+    private final ObjectMap<String, ObjectSet<R>> registrations;
+    private int size;
+
+    /**
+     * Creates empty registry
+     */
+    public ListenerRegistry()
+    {
+        registrations = new ObjectMap<>();
+    }
+
+    /**
+     * @param key          Listened location, for ex. path with query id
+     * @param registration Registration to keep
+     */
+    public synchronized void add(String key, R registration)
+    {
+        ObjectSet<R> set = registrations.get(key);
+        if (set == null) {
+            set = new ObjectSet<>();
+            registrations.put(key, set);
+        }
+        if (set.add(registration))
+            size++;
+    }
+
+    /**
+     * @param key          Listened location
+     * @param registration Registration to remove
+     * @return True if registration was kept by this registry - caller should detach the native listener then
+     */
+    public synchronized boolean remove(String key, R registration)
+    {
+        ObjectSet<R> set = registrations.get(key);
+        if (set == null || !set.remove(registration))
+            return false;
+        if (set.size == 0)
+            registrations.remove(key);
+        size--;
+        return true;
+    }
+
+    /**
+     * @param key Listened location
+     * @return All registrations of the location, removed from this registry - caller should detach their native listeners. Not null
+     */
+    public synchronized Array<R> removeAll(String key)
+    {
+        ObjectSet<R> set = registrations.remove(key);
+        Array<R> removed = new Array<>();
+        if (set != null) {
+            for (R registration : set)
+                removed.add(registration);
+            size -= removed.size;
+        }
+        return removed;
+    }
+
+    /**
+     * @return Number of kept registrations
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks model class for which {@link ValueMapper} should be generated at compile time.
+ * <p>
+ * Generated mapper is placed in the package of the model and named after the model class with {@code _ValueMapper} suffix,<p>
+ * for ex. {@code User_ValueMapper} or {@code Game_Player_ValueMapper} for nested class {@code Game.Player}.
+ * <p>
+ * Mapped are all non-static, non-transient fields of the class and its superclasses. Field should be visible from the package<p>
+ * of the model or should have getter and setter. Supported field types are: primitives and their wrappers, {@code String}, enums,<p>
+ * other classes annotated by {@link MappedValue}, {@code List<E>} and {@code Map<String, E>} of them.
+ * <p>
+ * To generate mappers add {@code gdx-fireapp-core} artifact with {@code processor} classifier as annotation processor of your core project.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface MappedValue
+{
+}
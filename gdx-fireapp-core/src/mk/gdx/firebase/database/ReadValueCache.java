@@ -0,0 +1,242 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mk.gdx.firebase.helpers.DataSizeHelper;
+import mk.gdx.firebase.helpers.PathHelper;
+
+/**
+ * Keeps values read by {@code readValue}, so data which rarely changes is not downloaded again and again.
+ * <p>
+ * Only paths given by {@link #addPath(String)} and their children are cached. Each value is kept for limited time,<p>
+ * memory is bounded by estimated size of kept values - least recently used entries are evicted first.
+ * <p>
+ * Values are shared between all callers - they should not be modified.
+ *
+ * @see mk.gdx.firebase.GdxFIRDatabase#setReadValueCache(ReadValueCache)
+ */
+public class ReadValueCache
+{
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final Array<String> paths;
+    private final LinkedHashMap<CacheKey, Entry> entries;
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxBytes   Maximum estimated size of all kept values, in bytes
+     * @param ttlSeconds Time in seconds for which value is served from the cache
+     */
+    public ReadValueCache(long maxBytes, float ttlSeconds)
+    {
+        this.maxBytes = maxBytes;
+        ttlMillis = (long) (ttlSeconds * 1000);
+        paths = new Array<>();
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Enables caching of the given path and all its children.
+     *
+     * @param databasePath Database path, for ex. {@code "/shop/catalog"}
+     * @return this
+     */
+    public synchronized ReadValueCache addPath(String databasePath)
+    {
+        paths.add(PathHelper.normalize(databasePath));
+        return this;
+    }
+
+    /**
+     * @param databasePath Database path
+     * @return True if values of the path are cached
+     */
+    public synchronized boolean isCachedPath(String databasePath)
+    {
+        String path = PathHelper.normalize(databasePath);
+        for (int i = 0; i < paths.size; i++) {
+            if (paths.get(i).equals(path) || PathHelper.isAncestor(paths.get(i), path))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Counts hit or miss.
+     *
+     * @param databasePath Database path
+     * @param dataType     Type of the value
+     * @return Value which is still fresh or null if there is no such value
+     */
+    public synchronized Object get(String databasePath, Class<?> dataType)
+    {
+        CacheKey key = new CacheKey(PathHelper.normalize(databasePath), dataType);
+        Entry entry = entries.get(key);
+        if (entry != null && TimeUtils.timeSinceMillis(entry.time) > ttlMillis) {
+            entries.remove(key);
+            sizeBytes -= entry.bytes;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Remembers value, replaces previous one with the same path and type.
+     *
+     * @param databasePath Database path
+     * @param dataType     Type of the value
+     * @param value        Value, null values are not cached
+     */
+    public synchronized void put(String databasePath, Class<?> dataType, Object value)
+    {
+        if (value == null)
+            return;
+        long bytes = DataSizeHelper.estimateBytes(value);
+        if (bytes > maxBytes)
+            return;
+        Entry previous = entries.put(new CacheKey(PathHelper.normalize(databasePath), dataType), new Entry(value, bytes));
+        if (previous != null)
+            sizeBytes -= previous.bytes;
+        sizeBytes += bytes;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (sizeBytes > maxBytes && iterator.hasNext()) {
+            sizeBytes -= iterator.next().bytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Removes values of the path, its parents and its children - all of them are outdated when data of the path changes.
+     *
+     * @param databasePath Database path
+     */
+    public synchronized void invalidate(String databasePath)
+    {
+        String path = PathHelper.normalize(databasePath);
+        Iterator<Map.Entry<CacheKey, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<CacheKey, Entry> entry = iterator.next();
+            String entryPath = entry.getKey().path;
+            if (entryPath.equals(path) || PathHelper.isAncestor(entryPath, path) || PathHelper.isAncestor(path, entryPath)) {
+                sizeBytes -= entry.getValue().bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all values, counters are not reset.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        sizeBytes = 0;
+    }
+
+    /**
+     * @return Number of reads served from the cache
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return Number of reads which had to be passed to the database
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * @return Estimated size of all kept values, in bytes
+     */
+    public synchronized long getSizeBytes()
+    {
+        return sizeBytes;
+    }
+
+    /**
+     * @return Maximum estimated size of all kept values, in bytes
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Pair of normalized path and type.
+     */
+    private static class CacheKey
+    {
+        private final String path;
+        private final Class<?> dataType;
+
+        private CacheKey(String path, Class<?> dataType)
+        {
+            this.path = path;
+            this.dataType = dataType;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return path.equals(other.path) && dataType == other.dataType;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * path.hashCode() + dataType.hashCode();
+        }
+    }
+
+    /**
+     * Value with time when it was read.
+     */
+    private static class Entry
+    {
+        private final Object value;
+        private final long bytes;
+        private final long time;
+
+        private Entry(Object value, long bytes)
+        {
+            this.value = value;
+            this.bytes = bytes;
+            time = TimeUtils.millis();
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import mk.gdx.firebase.listeners.DataChangeListener;
+
+/**
+ * One native value observer shared by all {@link DataChangeListener}s of the same path and query.
+ * <p>
+ * Native observer is attached with the first listener and detached when the last one is removed.<p>
+ * The last snapshot is kept, so listener added to already attached observer gets the current value at once, as the first one does.<p>
+ * Snapshots are decoded and listeners are called outside of the pool lock, inside it only the list of listeners is changed.<p>
+ * If snapshot can not be decoded, listeners of that type get the exception by {@link DataChangeListener#onCanceled(Exception)}.<p>
+ * Every snapshot is decoded once for each distinct type key and the same decoded value is passed to all listeners of that type,<p>
+ * so listeners should not modify received objects.
+ * <p>
+ * Observers are kept by platform database in the {@code pool} map, under its key. All changes of listeners are synchronized on the pool.
+ *
+ * @param <S> Platform snapshot type
+ */
+public abstract class SharedValueObserver<S>
+{
+    private final ObjectMap<String, ? extends SharedValueObserver<S>> pool;
+    private final String key;
+    private volatile Array<Entry> entries;
+    private S lastSnapshot;
+
+    /**
+     * @param pool Map of all observers of the platform database, this observer removes itself from it when the last listener leaves
+     * @param key  Key of the observer inside {@code pool}, for ex. path with query id
+     */
+    protected SharedValueObserver(ObjectMap<String, ? extends SharedValueObserver<S>> pool, String key)
+    {
+        this.pool = pool;
+        this.key = key;
+        entries = new Array<>(0);
+    }
+
+    /**
+     * Adds listener, attaches native observer if it is the first one.
+     * <p>
+     * Only the list of listeners is changed here, snapshot received earlier is remembered for the listener but not decoded yet -<p>
+     * call {@link #deliverCurrent(ListenerRegistration)} after the pool lock is released.
+     * <p>
+     * Should be called inside block synchronized on the pool, together with getting this observer from the pool,<p>
+     * otherwise observer may be already removed from the pool by other thread.
+     *
+     * @param typeKey  Key of type which listener wants to get. Listeners with equal keys share decoded value.
+     * @param listener Listener, not null
+     * @return Handle which removes only the given {@code listener}
+     */
+    @SuppressWarnings("unchecked")
+    public ListenerRegistration add(Object typeKey, DataChangeListener<?> listener)
+    {
+        Entry entry = new Entry(typeKey, (DataChangeListener<Object>) listener);
+        synchronized (pool) {
+            entry.currentSnapshot = lastSnapshot;
+            Array<Entry> newEntries = new Array<>(entries.size + 1);
+            newEntries.addAll(entries);
+            newEntries.add(entry);
+            entries = newEntries;
+            if (newEntries.size == 1)
+                attach();
+        }
+        return entry;
+    }
+
+    /**
+     * Passes value of the snapshot received before the listener was added, so the listener gets the current value at once.
+     * <p>
+     * Snapshot is decoded and listener is called without the pool lock, so it should not be held here.<p>
+     * Nothing is passed if the observer has not received any snapshot yet or the listener has already got a newer one.
+     *
+     * @param registration Handle returned by {@link #add(Object, DataChangeListener)}
+     */
+    public void deliverCurrent(ListenerRegistration registration)
+    {
+        if (!(registration instanceof SharedValueObserver.Entry))
+            return;
+        Entry entry = (Entry) registration;
+        S snapshot = entry.currentSnapshot;
+        entry.currentSnapshot = null;
+        if (snapshot == null)
+            return;
+        Object value = tryDecode(snapshot, entry.typeKey);
+        if (entry.received.compareAndSet(false, true))
+            entry.deliver(value);
+    }
+
+    /**
+     * Removes all listeners and detaches native observer.
+     */
+    public void removeAll()
+    {
+        synchronized (pool) {
+            if (entries.size == 0) return;
+            entries = new Array<>(0);
+            lastSnapshot = null;
+            pool.remove(key);
+            detach();
+        }
+    }
+
+    /**
+     * @return Key of the observer, path with query id
+     */
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return Number of listeners sharing this observer
+     */
+    public int getListenersCount()
+    {
+        return entries.size;
+    }
+
+    /**
+     * Attaches native observer, called when the first listener is added.
+     */
+    protected abstract void attach();
+
+    /**
+     * Detaches native observer, called when the last listener is removed.
+     */
+    protected abstract void detach();
+
+    /**
+     * @param snapshot Platform snapshot
+     * @param typeKey  Type key given in {@link #add(Object, DataChangeListener)}
+     * @return Snapshot value decoded for the given type
+     * @throws RuntimeException If snapshot can not be decoded, exception is passed to listeners of the type by {@link DataChangeListener#onCanceled(Exception)}
+     */
+    protected abstract Object decode(S snapshot, Object typeKey);
+
+    /**
+     * @param snapshot Platform snapshot
+     * @param typeKey  Type key given in {@link #add(Object, DataChangeListener)}
+     * @return Snapshot value decoded for the given type or {@link DecodeFailure} if it can not be decoded
+     */
+    private Object tryDecode(S snapshot, Object typeKey)
+    {
+        try {
+            return decode(snapshot, typeKey);
+        } catch (RuntimeException e) {
+            return new DecodeFailure(e);
+        }
+    }
+
+    /**
+     * Decodes snapshot once for each distinct type key and passes values to all listeners.
+     *
+     * @param snapshot Platform snapshot
+     */
+    protected void dispatchChange(S snapshot)
+    {
+        Array<Entry> current;
+        synchronized (pool) {
+            lastSnapshot = snapshot;
+            current = entries;
+        }
+        Object firstKey = null;
+        Object firstValue = null;
+        ObjectMap<Object, Object> decoded = null;
+        for (int i = 0; i < current.size; i++) {
+            Entry entry = current.get(i);
+            Object value;
+            if (i == 0) {
+                firstKey = entry.typeKey;
+                firstValue = value = tryDecode(snapshot, entry.typeKey);
+            } else if (firstKey.equals(entry.typeKey)) {
+                value = firstValue;
+            } else {
+                if (decoded == null)
+                    decoded = new ObjectMap<>();
+                if (decoded.containsKey(entry.typeKey)) {
+                    value = decoded.get(entry.typeKey);
+                } else {
+                    value = tryDecode(snapshot, entry.typeKey);
+                    decoded.put(entry.typeKey, value);
+                }
+            }
+            entry.received.set(true);
+            entry.deliver(value);
+        }
+    }
+
+    /**
+     * Passes error to all listeners.
+     *
+     * @param e Exception
+     */
+    protected void dispatchCancel(Exception e)
+    {
+        Array<Entry> current;
+        synchronized (pool) {
+            lastSnapshot = null;
+            current = entries;
+        }
+        for (int i = 0; i < current.size; i++) {
+            Entry entry = current.get(i);
+            entry.received.set(true);
+            entry.listener.onCanceled(e);
+        }
+    }
+
+    /**
+     * @param entry Entry to remove
+     */
+    private void remove(Entry entry)
+    {
+        synchronized (pool) {
+            int index = entries.indexOf(entry, true);
+            if (index == -1) return;
+            Array<Entry> newEntries = new Array<>(entries);
+            newEntries.removeIndex(index);
+            entries = newEntries;
+            if (newEntries.size == 0) {
+                lastSnapshot = null;
+                pool.remove(key);
+                detach();
+            }
+        }
+    }
+
+    /**
+     * One listener of the observer, also its registration handle.
+     */
+    private class Entry implements ListenerRegistration
+    {
+        private final Object typeKey;
+        private final DataChangeListener<Object> listener;
+        private final AtomicBoolean received = new AtomicBoolean();
+        private S currentSnapshot;
+
+        private Entry(Object typeKey, DataChangeListener<Object> listener)
+        {
+            this.typeKey = typeKey;
+            this.listener = listener;
+        }
+
+        /**
+         * @param value Decoded value or {@link DecodeFailure}
+         */
+        private void deliver(Object value)
+        {
+            if (value instanceof DecodeFailure)
+                listener.onCanceled(((DecodeFailure) value).exception);
+            else
+                listener.onChange(value);
+        }
+
+        @Override
+        public void remove()
+        {
+            SharedValueObserver.this.remove(this);
+        }
+    }
+
+    /**
+     * Exception thrown while snapshot was decoded, shared by all listeners of the type as decoded value is.
+     */
+    private static class DecodeFailure
+    {
+        private final Exception exception;
+
+        private DecodeFailure(Exception exception)
+        {
+            this.exception = exception;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.Array;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import mk.gdx.firebase.helpers.DataConversionHelper;
+import mk.gdx.firebase.helpers.PathHelper;
+
+/**
+ * Keeps values read by {@code readValue} on the disk, so they are available immediately after the next start of the application.
+ * <p>
+ * Only paths given by {@link #addPath(String)} and their children are cached. Values are transformed to Firebase-like data<p>
+ * and written in a compact binary form to the memory-mapped file, so opening the cache costs only a scan of entry headers<p>
+ * and values are decoded only when they are asked for.
+ * <p>
+ * File layout: 16 bytes header - magic number and reserved bytes, then entries one after another. Entry is: length, path,<p>
+ * kind (value or removal) and the encoded value. Entry length is written as the last step, after the end marker of the next entry,<p>
+ * so half-written entry is never read. Newer entries hide the older ones with the same path, space of hidden entries is reclaimed<p>
+ * when the cache is opened.
+ * <p>
+ * All methods are synchronized.
+ *
+ * @see mk.gdx.firebase.GdxFIRDatabase#setSnapshotDiskCache(SnapshotDiskCache)
+ */
+public class SnapshotDiskCache
+{
+    private static final int MAGIC = 0x47465331;
+    private static final int HEADER_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int MIN_COMPACTION_BYTES = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte KIND_REMOVED = 0;
+    private static final byte KIND_VALUE = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_FALSE = 1;
+    private static final byte TAG_TRUE = 2;
+    private static final byte TAG_LONG = 3;
+    private static final byte TAG_DOUBLE = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_MAP = 6;
+    private static final byte TAG_LIST = 7;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final Array<String> paths;
+    private final HashMap<String, Integer> index;
+    private MappedByteBuffer buffer;
+    private int tail;
+    private int deadBytes;
+
+    /**
+     * Opens cache file kept in the local storage of the application, creates it if needed.
+     *
+     * @param localPath Path relative to the local storage, for ex. {@code "cache/snapshots.bin"}
+     * @throws IOException If file can not be opened or it is not a snapshot cache
+     */
+    public SnapshotDiskCache(String localPath) throws IOException
+    {
+        this(Gdx.files.local(localPath).file());
+    }
+
+    /**
+     * Opens cache file, creates it if needed.
+     *
+     * @param cacheFile File of the cache
+     * @throws IOException If file can not be opened or it is not a snapshot cache
+     */
+    public SnapshotDiskCache(File cacheFile) throws IOException
+    {
+        File directory = cacheFile.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs())
+            throw new IOException("Can not create " + directory);
+        boolean exists = cacheFile.exists() && cacheFile.length() >= HEADER_SIZE;
+        file = new RandomAccessFile(cacheFile, "rw");
+        channel = file.getChannel();
+        if (!exists)
+            file.setLength(INITIAL_CAPACITY);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        paths = new Array<>();
+        index = new HashMap<>();
+        if (exists) {
+            if (buffer.getInt(0) != MAGIC) {
+                close();
+                throw new IOException(cacheFile + " is not a snapshot cache.");
+            }
+            scan();
+            if (deadBytes > MIN_COMPACTION_BYTES && deadBytes > tail - HEADER_SIZE - deadBytes)
+                compact();
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(HEADER_SIZE, 0);
+            tail = HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Enables caching of the given path and all its children.
+     *
+     * @param databasePath Database path, for ex. {@code "/config"}
+     * @return this
+     */
+    public synchronized SnapshotDiskCache addPath(String databasePath)
+    {
+        paths.add(PathHelper.normalize(databasePath));
+        return this;
+    }
+
+    /**
+     * @param databasePath Database path
+     * @return True if values of the path are cached
+     */
+    public synchronized boolean isCachedPath(String databasePath)
+    {
+        String path = PathHelper.normalize(databasePath);
+        for (int i = 0; i < paths.size; i++) {
+            if (paths.get(i).equals(path) || PathHelper.isAncestor(paths.get(i), path))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decodes value of the path written by the last {@link #put(String, Object)}.
+     *
+     * @param databasePath Database path
+     * @param dataType     Wanted type
+     * @param <T>          Type of the value
+     * @return Value or null if there is no such value or it can not be read as {@code dataType}
+     */
+    public synchronized <T> T get(String databasePath, Class<T> dataType)
+    {
+        Integer position = index.get(PathHelper.normalize(databasePath));
+        if (position == null)
+            return null;
+        try {
+            ByteBuffer entry = buffer.duplicate();
+            entry.position(valuePosition(position));
+            return DataConversionHelper.toType(decode(entry), dataType);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes value of the path, hides previous one. Nothing is written if encoded value has not changed.
+     *
+     * @param databasePath Database path
+     * @param value        Value read from the database, null removes the path
+     * @return True if value differs from the previous one
+     */
+    public synchronized boolean put(String databasePath, Object value)
+    {
+        String path = PathHelper.normalize(databasePath);
+        if (value == null)
+            return removeEntry(path);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        encode(DataConversionHelper.toData(value), output);
+        byte[] valueBytes = output.toByteArray();
+        Integer position = index.get(path);
+        if (position != null && equalsAt(position, valueBytes))
+            return false;
+        append(path, KIND_VALUE, valueBytes);
+        return true;
+    }
+
+    /**
+     * Removes values of the path, its parents and its children - all of them are outdated when data of the path changes.
+     *
+     * @param databasePath Database path
+     */
+    public synchronized void remove(String databasePath)
+    {
+        String path = PathHelper.normalize(databasePath);
+        Array<String> outdated = new Array<>();
+        for (String entryPath : index.keySet()) {
+            if (entryPath.equals(path) || PathHelper.isAncestor(entryPath, path) || PathHelper.isAncestor(path, entryPath))
+                outdated.add(entryPath);
+        }
+        for (int i = 0; i < outdated.size; i++)
+            removeEntry(outdated.get(i));
+    }
+
+    /**
+     * Removes all values.
+     */
+    public synchronized void clear()
+    {
+        buffer.putInt(HEADER_SIZE, 0);
+        index.clear();
+        tail = HEADER_SIZE;
+        deadBytes = 0;
+    }
+
+    /**
+     * @return Number of kept values
+     */
+    public synchronized int size()
+    {
+        return index.size();
+    }
+
+    /**
+     * Writes changes to the disk and closes the file.
+     */
+    public synchronized void close()
+    {
+        try {
+            buffer.force();
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @param path Normalized path
+     * @return True if value was removed
+     */
+    private boolean removeEntry(String path)
+    {
+        if (!index.containsKey(path))
+            return false;
+        append(path, KIND_REMOVED, new byte[0]);
+        return true;
+    }
+
+    /**
+     * Adds entry at the end of the file and hides the previous one, failure of the disk is treated as a cache miss.
+     *
+     * @param path       Normalized path
+     * @param kind       {@link #KIND_VALUE} or {@link #KIND_REMOVED}
+     * @param valueBytes Encoded value
+     */
+    private void append(String path, byte kind, byte[] valueBytes)
+    {
+        byte[] pathBytes = path.getBytes(UTF_8);
+        int length = 4 + pathBytes.length + 1 + valueBytes.length;
+        Integer previous = index.remove(path);
+        if (previous != null)
+            deadBytes += 4 + buffer.getInt(previous);
+        try {
+            ensureCapacity(4 + length + 4);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(tail + 4);
+        entry.putInt(pathBytes.length);
+        entry.put(pathBytes);
+        entry.put(kind);
+        entry.put(valueBytes);
+        buffer.putInt(tail + 4 + length, 0);
+        buffer.putInt(tail, length);
+        if (kind == KIND_VALUE)
+            index.put(path, tail);
+        else
+            deadBytes += 4 + length;
+        tail += 4 + length;
+    }
+
+    /**
+     * Builds index of values after the cache file was opened.
+     */
+    private void scan()
+    {
+        int position = HEADER_SIZE;
+        while (position + 4 <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 4 || position + 4 + length > buffer.capacity())
+                break;
+            int pathLength = buffer.getInt(position + 4);
+            if (pathLength < 0 || 4 + pathLength + 1 > length)
+                break;
+            byte[] pathBytes = new byte[pathLength];
+            ByteBuffer entry = buffer.duplicate();
+            entry.position(position + 8);
+            entry.get(pathBytes);
+            String path = new String(pathBytes, UTF_8);
+            Integer previous = index.remove(path);
+            if (previous != null)
+                deadBytes += 4 + buffer.getInt(previous);
+            if (entry.get() == KIND_VALUE)
+                index.put(path, position);
+            else
+                deadBytes += 4 + length;
+            position += 4 + length;
+        }
+        tail = position;
+    }
+
+    /**
+     * Moves values to the beginning of the file, so space of hidden and removed entries is reused.
+     * <p>
+     * First entry length is written as the last step, so the cache is just empty if process dies while moving.
+     */
+    private void compact()
+    {
+        int live = tail - HEADER_SIZE - deadBytes;
+        ByteBuffer moved = ByteBuffer.allocate(live);
+        HashMap<String, Integer> movedIndex = new HashMap<>();
+        for (Map.Entry<String, Integer> value : index.entrySet()) {
+            int start = value.getValue();
+            ByteBuffer source = buffer.duplicate();
+            source.position(start).limit(start + 4 + buffer.getInt(start));
+            movedIndex.put(value.getKey(), HEADER_SIZE + moved.position());
+            moved.put(source);
+        }
+        int firstLength = live > 0 ? moved.getInt(0) : 0;
+        buffer.putInt(HEADER_SIZE, 0);
+        ByteBuffer target = buffer.duplicate();
+        target.position(HEADER_SIZE + 4);
+        moved.position(Math.min(4, live));
+        target.put(moved);
+        buffer.putInt(HEADER_SIZE + live, 0);
+        buffer.force();
+        buffer.putInt(HEADER_SIZE, firstLength);
+        index.clear();
+        index.putAll(movedIndex);
+        tail = HEADER_SIZE + live;
+        deadBytes = 0;
+    }
+
+    /**
+     * @param position Offset of the entry
+     * @return Offset of the encoded value of the entry
+     */
+    private int valuePosition(int position)
+    {
+        return position + 8 + buffer.getInt(position + 4) + 1;
+    }
+
+    /**
+     * @param position   Offset of the entry
+     * @param valueBytes Encoded value
+     * @return True if the entry holds the same bytes
+     */
+    private boolean equalsAt(int position, byte[] valueBytes)
+    {
+        int valuePosition = valuePosition(position);
+        if (position + 4 + buffer.getInt(position) - valuePosition != valueBytes.length)
+            return false;
+        for (int i = 0; i < valueBytes.length; i++) {
+            if (buffer.get(valuePosition + i) != valueBytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes room for {@code bytes} at the end of the file by extending it.
+     *
+     * @param bytes Needed space
+     * @throws IOException If cache file can not be extended
+     */
+    private void ensureCapacity(int bytes) throws IOException
+    {
+        if (tail + bytes <= buffer.capacity())
+            return;
+        long capacity = buffer.capacity();
+        while (capacity < tail + bytes)
+            capacity *= 2;
+        if (capacity > Integer.MAX_VALUE)
+            throw new IOException("Snapshot cache is full.");
+        buffer.force();
+        file.setLength(capacity);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Writes Firebase-like data in the binary form.
+     *
+     * @param data   Firebase-like data, may be null
+     * @param output Target
+     */
+    private static void encode(Object data, ByteArrayOutputStream output)
+    {
+        if (data == null) {
+            output.write(TAG_NULL);
+        } else if (data instanceof Boolean) {
+            output.write((Boolean) data ? TAG_TRUE : TAG_FALSE);
+        } else if (data instanceof Long) {
+            output.write(TAG_LONG);
+            long value = (Long) data;
+            writeVarLong((value << 1) ^ (value >> 63), output);
+        } else if (data instanceof Number) {
+            output.write(TAG_DOUBLE);
+            long bits = Double.doubleToLongBits(((Number) data).doubleValue());
+            for (int shift = 56; shift >= 0; shift -= 8)
+                output.write((int) (bits >>> shift));
+        } else if (data instanceof Map) {
+            // Keys are sorted, so equal maps are always encoded to the same bytes.
+            TreeMap<String, Object> map = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) data).entrySet())
+                map.put(String.valueOf(entry.getKey()), entry.getValue());
+            output.write(TAG_MAP);
+            writeVarLong(map.size(), output);
+            for (Map.Entry<String, Object> entry : map.entrySet()) {
+                writeString(entry.getKey(), output);
+                encode(entry.getValue(), output);
+            }
+        } else if (data instanceof List) {
+            List<?> list = (List<?>) data;
+            output.write(TAG_LIST);
+            writeVarLong(list.size(), output);
+            for (Iterator<?> iterator = list.iterator(); iterator.hasNext(); )
+                encode(iterator.next(), output);
+        } else {
+            output.write(TAG_STRING);
+            writeString(data.toString(), output);
+        }
+    }
+
+    /**
+     * Reads Firebase-like data written by {@link #encode(Object, ByteArrayOutputStream)}.
+     *
+     * @param input Source positioned at the value
+     * @return Firebase-like data, may be null
+     */
+    private static Object decode(ByteBuffer input)
+    {
+        byte tag = input.get();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_LONG:
+                long value = readVarLong(input);
+                return (value >>> 1) ^ -(value & 1);
+            case TAG_DOUBLE:
+                return input.getDouble();
+            case TAG_STRING:
+                return readString(input);
+            case TAG_MAP:
+                int size = (int) readVarLong(input);
+                Map<String, Object> map = new HashMap<>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    String key = readString(input);
+                    map.put(key, decode(input));
+                }
+                return map;
+            case TAG_LIST:
+                int length = (int) readVarLong(input);
+                List<Object> list = new ArrayList<>(length);
+                for (int i = 0; i < length; i++)
+                    list.add(decode(input));
+                return list;
+            default:
+                throw new IllegalStateException("Unknown tag: " + tag);
+        }
+    }
+
+    private static void writeVarLong(long value, ByteArrayOutputStream output)
+    {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer input)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = input.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalStateException("Malformed number.");
+    }
+
+    private static void writeString(String value, ByteArrayOutputStream output)
+    {
+        byte[] bytes = value.getBytes(UTF_8);
+        writeVarLong(bytes.length, output);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer input)
+    {
+        byte[] bytes = new byte[(int) readVarLong(input)];
+        input.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import mk.gdx.firebase.callbacks.TransactionCompleteCallback;
+
+/**
+ * Information about finished transaction, given by {@link TransactionCompleteCallback}.
+ * <p>
+ * Many attempts mean that many clients modify the same data at once - such data may be split into shards.
+ */
+public class TransactionMetrics
+{
+    private final int attempts;
+    private final long durationMillis;
+    private final boolean committed;
+    private final boolean abortedByPolicy;
+
+    /**
+     * @param attempts        Number of {@code TransactionCallback#run} calls
+     * @param durationMillis  Time from the transaction start to its end
+     * @param committed       True if data was written
+     * @param abortedByPolicy True if transaction was aborted by {@link TransactionPolicy}
+     */
+    public TransactionMetrics(int attempts, long durationMillis, boolean committed, boolean abortedByPolicy)
+    {
+        this.attempts = attempts;
+        this.durationMillis = durationMillis;
+        this.committed = committed;
+        this.abortedByPolicy = abortedByPolicy;
+    }
+
+    /**
+     * @return Number of {@code TransactionCallback#run} calls, more than 1 means that data was modified concurrently
+     */
+    public int getAttempts()
+    {
+        return attempts;
+    }
+
+    /**
+     * @return Time from the transaction start to its end, in milliseconds
+     */
+    public long getDurationMillis()
+    {
+        return durationMillis;
+    }
+
+    /**
+     * @return True if data was written
+     */
+    public boolean isCommitted()
+    {
+        return committed;
+    }
+
+    /**
+     * @return True if transaction was aborted by {@link TransactionPolicy}
+     */
+    public boolean isAbortedByPolicy()
+    {
+        return abortedByPolicy;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TransactionMetrics{attempts=" + attempts + ", durationMillis=" + durationMillis
+                + ", committed=" + committed + ", abortedByPolicy=" + abortedByPolicy + "}";
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+/**
+ * Decides when transaction should be given up instead of being retried.
+ * <p>
+ * Firebase SDK calls {@code TransactionCallback#run} again each time data was modified by someone else in the meantime.<p>
+ * Policy is checked before each call, if it returns true transaction is aborted and nothing is written.<p>
+ * Aborted transaction ends with {@code CompleteCallback#onError} given {@link mk.gdx.firebase.exceptions.TransactionAbortedException}.
+ * <p>
+ * Usage:
+ * {@code
+ * GdxFIRDatabase.instance().ref("/stats/kills")
+ * .transaction(Long.class, transactionCallback, new TransactionPolicy().setMaxAttempts(5), completeCallback);
+ * }
+ * <p>
+ * Override {@link #shouldAbort(Object, int)} to abort depending on current data.
+ * <p>
+ * Delay between attempts (backoff) can not be controlled here: retries are scheduled by Firebase SDK itself,<p>
+ * as soon as it gets fresh data, and neither Android nor iOS SDK exposes any way to change it.
+ */
+public class TransactionPolicy
+{
+    private int maxAttempts;
+
+    /**
+     * Creates policy without limit of attempts - limit of Firebase SDK applies.
+     */
+    public TransactionPolicy()
+    {
+    }
+
+    /**
+     * @param maxAttempts Maximum number of {@code TransactionCallback#run} calls, 0 means no limit
+     * @return this
+     */
+    public TransactionPolicy setMaxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * @return Maximum number of {@code TransactionCallback#run} calls, 0 means no limit
+     */
+    public int getMaxAttempts()
+    {
+        return maxAttempts;
+    }
+
+    /**
+     * Checks whether transaction should be aborted before next attempt.
+     *
+     * @param currentData Current data which would be passed to {@code TransactionCallback#run}, may be null
+     * @param attempt     Number of the attempt which would be made, starting from 1 - aborted attempt is not counted by {@link TransactionMetrics}
+     * @return True if transaction should be aborted
+     */
+    public boolean shouldAbort(Object currentData, int attempt)
+    {
+        return maxAttempts > 0 && attempt > maxAttempts;
+    }
+}
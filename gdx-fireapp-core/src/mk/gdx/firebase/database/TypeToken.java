@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * Describes type of data wanted by callback or listener, together with type of its elements.
+ * <p>
+ * Usage:
+ * {@code
+ * static final TypeToken<List<User>> USERS = new TypeToken<List<User>>() {};
+ * }
+ * or {@code TypeToken.listOf(User.class)}. Type is resolved once, when token is created - keep tokens in static fields.
+ * <p>
+ * Platforms which need generic type of the data (for ex. iOS) take it from callback class. When it can not be read from the class,<p>
+ * for ex. for lambdas, callback should implement {@link mk.gdx.firebase.callbacks.TypedCallback} and give the token.
+ *
+ * @param <T> Type of data
+ */
+public class TypeToken<T>
+{
+    private final Class<?> rawType;
+    private final Class<?> elementType;
+
+    /**
+     * Reads type given as generic argument of anonymous subclass.
+     *
+     * @throws IllegalStateException If type argument is not given
+     */
+    protected TypeToken()
+    {
+        Type superclass = getClass().getGenericSuperclass();
+        if (!(superclass instanceof ParameterizedType))
+            throw new IllegalStateException("TypeToken should be created as anonymous class with type argument, for ex. new TypeToken<List<User>>() {}");
+        Type type = ((ParameterizedType) superclass).getActualTypeArguments()[0];
+        rawType = rawType(type);
+        if (rawType == null)
+            throw new IllegalStateException("Type " + type + " can not be resolved.");
+        elementType = type instanceof ParameterizedType ? rawType(((ParameterizedType) type).getActualTypeArguments()[0]) : null;
+    }
+
+    private TypeToken(Class<?> rawType, Class<?> elementType)
+    {
+        this.rawType = rawType;
+        this.elementType = elementType;
+    }
+
+    /**
+     * @param type Type of data
+     * @param <T>  Type of data
+     * @return Token of the type without element type
+     */
+    public static <T> TypeToken<T> of(Class<T> type)
+    {
+        return new TypeToken<>(type, null);
+    }
+
+    /**
+     * @param elementType Type of list elements
+     * @param <T>         Type of list elements
+     * @return Token of list with elements of the given type
+     */
+    public static <T> TypeToken<java.util.List<T>> listOf(Class<T> elementType)
+    {
+        return new TypeToken<>(java.util.List.class, elementType);
+    }
+
+    /**
+     * @return Class of the data, for ex. {@code List.class}
+     */
+    public Class<?> getRawType()
+    {
+        return rawType;
+    }
+
+    /**
+     * @return Class of first type argument of the data, for ex. {@code User.class} for {@code List<User>}, may be null
+     */
+    public Class<?> getElementType()
+    {
+        return elementType;
+    }
+
+    /**
+     * Tokens are equal when they describe the same type and element type, so decoded values may be shared between them.
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof TypeToken)) return false;
+        TypeToken<?> other = (TypeToken<?>) o;
+        return rawType == other.rawType && elementType == other.elementType;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * rawType.hashCode() + (elementType != null ? elementType.hashCode() : 0);
+    }
+
+    /**
+     * @param type Type
+     * @return Class of the type, null if it is type variable or wildcard
+     */
+    public static Class<?> rawType(Type type)
+    {
+        if (type instanceof Class)
+            return (Class<?>) type;
+        if (type instanceof ParameterizedType)
+            return rawType(((ParameterizedType) type).getRawType());
+        return null;
+    }
+}
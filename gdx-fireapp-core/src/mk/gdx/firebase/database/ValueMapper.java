@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import java.util.Map;
+
+/**
+ * Converts instances of one model class to Firebase-like map and back, without reflection.
+ * <p>
+ * Mappers are generated at compile time for classes annotated by {@link MappedValue}, see {@link ValueMappers}.
+ *
+ * @param <T> Model class
+ */
+public interface ValueMapper<T>
+{
+
+    /**
+     * @param value Model object, not null
+     * @return Map of field names to Firebase-like values, ready to be stored in the database
+     */
+    Map<String, Object> toMap(T value);
+
+    /**
+     * @param map Map of field names to values read from the database, not null
+     * @return New model object with fields set from the {@code map}
+     */
+    T fromMap(Map<String, Object> map);
+}
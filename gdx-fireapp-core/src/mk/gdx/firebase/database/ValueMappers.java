@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import com.badlogic.gdx.utils.reflect.ClassReflection;
+import com.badlogic.gdx.utils.reflect.ReflectionException;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds {@link ValueMapper} of a model class.
+ * <p>
+ * Mappers generated for classes annotated by {@link MappedValue} are found by name when they are needed for the first time.<p>
+ * If generated classes are removed or renamed by ProGuard, mappers can be registered by {@link #register(Class, ValueMapper)}.
+ */
+public final class ValueMappers
+{
+    /**
+     * Suffix of the generated mapper class name.
+     */
+    public static final String SUFFIX = "_ValueMapper";
+
+    private static final Object NONE = new Object();
+    private static final ConcurrentHashMap<Class<?>, Object> mappers = new ConcurrentHashMap<>();
+
+    private ValueMappers()
+    {
+
+    }
+
+    /**
+     * @param type   Model class
+     * @param mapper Mapper of the model class
+     * @param <T>    Model type
+     */
+    public static <T> void register(Class<T> type, ValueMapper<T> mapper)
+    {
+        mappers.put(type, mapper);
+    }
+
+    /**
+     * @param type Model class, may be null
+     * @param <T>  Model type
+     * @return Mapper registered or generated for the class, null if there is no such mapper
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ValueMapper<T> get(Class<T> type)
+    {
+        if (type == null || type.isPrimitive() || type.isArray() || type.getName().startsWith("java."))
+            return null;
+        Object mapper = mappers.get(type);
+        if (mapper == null) {
+            mapper = load(type);
+            mappers.put(type, mapper);
+        }
+        return mapper != NONE ? (ValueMapper<T>) mapper : null;
+    }
+
+    /**
+     * @param type Model class
+     * @return Instance of the generated mapper or {@link #NONE}
+     */
+    private static Object load(Class<?> type)
+    {
+        String name = type.getName();
+        int packageEnd = name.lastIndexOf('.') + 1;
+        String mapperName = name.substring(0, packageEnd) + name.substring(packageEnd).replace('$', '_') + SUFFIX;
+        try {
+            Class<?> mapperType = ClassReflection.forName(mapperName);
+            return ClassReflection.newInstance(mapperType);
+        } catch (ReflectionException e) {
+            return NONE;
+        }
+    }
+}
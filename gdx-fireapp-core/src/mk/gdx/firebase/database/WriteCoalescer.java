@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import com.badlogic.gdx.utils.Timer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.distributions.DatabaseDistribution;
+import mk.gdx.firebase.helpers.PathHelper;
+
+/**
+ * Collects {@code setValue} calls for a short time window and sends them as one multi-path {@code updateChildren}.
+ * <p>
+ * Within the window only the last value per path is kept. Each {@link CompleteCallback} given with a write<p>
+ * gets the result of the flush which carried that write.
+ * <p>
+ * If new write path is an ancestor or a descendant of some pending path, pending writes are flushed first,<p>
+ * so the writes to the same subtree are never reordered. Writes which do not go through the coalescer, like {@code removeValue},<p>
+ * should call {@link #flushOverlapping(String)} first for the same reason.
+ * <p>
+ * Ancestors of pending paths are indexed, so overlap check costs as many lookups as the path has segments.
+ * <p>
+ * Flush is scheduled by {@link Timer}, so it runs on the libGDX rendering thread.
+ */
+public class WriteCoalescer
+{
+
+    private final DatabaseDistribution database;
+    private final float windowSeconds;
+    private final LinkedHashMap<String, PendingWrite> pendingWrites;
+    private final Set<String> pendingAncestors;
+    private final Timer.Task flushTask;
+
+    /**
+     * @param database      Database distribution used to send coalesced writes
+     * @param windowSeconds Time in seconds for which writes are collected before flush, should be greater than 0
+     */
+    public WriteCoalescer(DatabaseDistribution database, float windowSeconds)
+    {
+        this.database = database;
+        this.windowSeconds = windowSeconds;
+        pendingWrites = new LinkedHashMap<>();
+        pendingAncestors = new HashSet<>();
+        flushTask = new Timer.Task() {
+            @Override
+            public void run()
+            {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Queues value for the given path.
+     *
+     * @param databasePath     Absolute database path, for ex. {@code "/players/x/pos"}
+     * @param value            Any value which you want to store, previous pending value for the same path will be dropped
+     * @param completeCallback Callback that handles result of the flush, may be null
+     */
+    public synchronized void setValue(String databasePath, Object value, CompleteCallback completeCallback)
+    {
+        String key = PathHelper.normalize(databasePath);
+        if (overlapsPendingPath(key))
+            flush();
+        if (key.isEmpty()) {
+            // Root can not be a key of updateChildren map
+            if (completeCallback != null) {
+                database.ref("/").setValue(value, completeCallback);
+            } else {
+                database.ref("/").setValue(value);
+            }
+            return;
+        }
+        PendingWrite pendingWrite = pendingWrites.get(key);
+        if (pendingWrite == null) {
+            pendingWrite = new PendingWrite();
+            pendingWrites.put(key, pendingWrite);
+            addAncestors(key);
+        }
+        pendingWrite.value = value;
+        if (completeCallback != null)
+            pendingWrite.callbacks.add(completeCallback);
+        if (!flushTask.isScheduled())
+            Timer.schedule(flushTask, windowSeconds);
+    }
+
+    /**
+     * Sends pending writes immediately if any of them is at the given path, its ancestor or its descendant.
+     * <p>
+     * Should be called before other write to the given path is sent, so the older pending value does not overwrite it later.
+     *
+     * @param databasePath Absolute database path of the write, for ex. {@code "/players/x"}
+     */
+    public synchronized void flushOverlapping(String databasePath)
+    {
+        String key = PathHelper.normalize(databasePath);
+        if (pendingWrites.containsKey(key) || overlapsPendingPath(key))
+            flush();
+    }
+
+    /**
+     * Sends all pending writes immediately as one {@code updateChildren} call.
+     */
+    public synchronized void flush()
+    {
+        flushTask.cancel();
+        if (pendingWrites.isEmpty()) return;
+        Map<String, Object> update = new HashMap<>();
+        final List<CompleteCallback> callbacks = new ArrayList<>();
+        for (Map.Entry<String, PendingWrite> entry : pendingWrites.entrySet()) {
+            update.put(entry.getKey(), entry.getValue().value);
+            callbacks.addAll(entry.getValue().callbacks);
+        }
+        pendingWrites.clear();
+        pendingAncestors.clear();
+        database.ref("/").updateChildren(update, new CompleteCallback() {
+            @Override
+            public void onSuccess()
+            {
+                for (CompleteCallback callback : callbacks)
+                    callback.onSuccess();
+            }
+
+            @Override
+            public void onError(Exception e)
+            {
+                for (CompleteCallback callback : callbacks)
+                    callback.onError(e);
+            }
+        });
+    }
+
+    /**
+     * @return Number of paths waiting for flush
+     */
+    public synchronized int getPendingCount()
+    {
+        return pendingWrites.size();
+    }
+
+    /**
+     * Checks if the given path is an ancestor or a descendant of some pending path, same path is not treated as overlap.
+     *
+     * @param key Normalized path
+     * @return True if flush is needed before putting {@code key}
+     */
+    private boolean overlapsPendingPath(String key)
+    {
+        if (pendingAncestors.contains(key))
+            return true;
+        for (int i = key.lastIndexOf('/'); i > 0; i = key.lastIndexOf('/', i - 1)) {
+            if (pendingWrites.containsKey(key.substring(0, i)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Indexes all ancestors of the new pending path, root included.
+     *
+     * @param key Normalized path, not empty
+     */
+    private void addAncestors(String key)
+    {
+        for (int i = key.lastIndexOf('/'); i > 0; i = key.lastIndexOf('/', i - 1)) {
+            if (!pendingAncestors.add(key.substring(0, i)))
+                return;
+        }
+        pendingAncestors.add("");
+    }
+
+    /**
+     * Last value for one path and all callbacks waiting for it.
+     */
+    private static class PendingWrite
+    {
+        private Object value;
+        private final List<CompleteCallback> callbacks = new ArrayList<>();
+    }
+}
@@ -0,0 +1,642 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import com.badlogic.gdx.utils.Array;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import mk.gdx.firebase.helpers.PathHelper;
+
+/**
+ * Hierarchical data of the {@link InMemoryDatabase}.
+ * <p>
+ * Data is kept as tree of {@link Node}s, children are ordered by key in the same way as Firebase does.<p>
+ * Keys are interned, so the same key used in many places of the tree is kept once, and numbers and booleans are kept unboxed.<p>
+ * Reads are done under shared lock, writes under exclusive lock - so many threads can read at the same time<p>
+ * and every write, also multi-path one, is atomic.
+ * <p>
+ * Each write increments version of all nodes on its path, new nodes get new versions as well.<p>
+ * Thanks to that transactions can be done optimistically - value is computed without lock and saved only if the node has not changed in the meantime.
+ * <p>
+ * Events of subscriptions are created under the write lock and delivered after it is released, always in order of writes.<p>
+ * Data of a node is copied once per write and the copy is shared by all subscriptions which need it, so listeners should not modify received objects.
+ */
+class DataTree
+{
+
+    private static final int MAX_CACHED_PATHS = 1024;
+    private static final int MAX_INTERNED_KEYS = 64 * 1024;
+    private static final String PUSH_CHARS = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+
+    /**
+     * Firebase order of keys - integer keys first, numerically, then other keys lexicographically.
+     */
+    static final Comparator<String> KEY_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String o1, String o2)
+        {
+            return compareKeys(o1, o2);
+        }
+    };
+
+    private final ReentrantReadWriteLock lock;
+    private final SubscriptionNode subscriptions;
+    private final ConcurrentLinkedQueue<Runnable> events;
+    private final AtomicBoolean dispatching;
+    private final Random random;
+    private final int[] lastPushChars;
+    private final ConcurrentHashMap<String, String[]> paths;
+    private final ConcurrentHashMap<String, String> keys;
+    private IdentityHashMap<Node, Object> snapshots;
+    private Node root;
+    private long version;
+    private long lastPushTime;
+
+    DataTree()
+    {
+        lock = new ReentrantReadWriteLock();
+        subscriptions = new SubscriptionNode();
+        events = new ConcurrentLinkedQueue<>();
+        dispatching = new AtomicBoolean();
+        random = new Random();
+        lastPushChars = new int[12];
+        paths = new ConcurrentHashMap<>();
+        keys = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Splits path into interned keys. Result is cached, so the same path is parsed only once.
+     *
+     * @param databasePath Database path, for ex. {@code "/users/abc"}
+     * @return Keys of the path, empty for the root path. Returned array must not be modified.
+     */
+    String[] segments(String databasePath)
+    {
+        String[] segments = paths.get(databasePath);
+        if (segments != null)
+            return segments;
+        String path = PathHelper.normalize(databasePath);
+        segments = path.isEmpty() ? new String[0] : path.split("/+");
+        for (int i = 0; i < segments.length; i++)
+            segments[i] = intern(segments[i]);
+        if (paths.size() >= MAX_CACHED_PATHS)
+            paths.clear();
+        paths.put(databasePath, segments);
+        return segments;
+    }
+
+    /**
+     * @param key Key of the node
+     * @return The same key instance which is already used in the tree, or the given one
+     */
+    String intern(String key)
+    {
+        String interned = keys.get(key);
+        if (interned != null)
+            return interned;
+        if (keys.size() >= MAX_INTERNED_KEYS)
+            keys.clear();
+        interned = keys.putIfAbsent(key, key);
+        return interned != null ? interned : key;
+    }
+
+    /**
+     * @param segments Keys of the path
+     * @param filter   Ordering and filtering of the data
+     * @return Copy of the data as Firebase-like data types, null if there is no data
+     */
+    Object get(String[] segments, QueryFilter filter)
+    {
+        lock.readLock().lock();
+        try {
+            return filter.toData(this, find(root, segments));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param segments Keys of the path
+     * @return Copy of the data with node version, used by transactions
+     */
+    Versioned getVersioned(String[] segments)
+    {
+        lock.readLock().lock();
+        try {
+            Node node = find(root, segments);
+            return new Versioned(node, node != null ? node.version : 0, toData(node));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces data of the given paths in one atomic step.
+     *
+     * @param paths  Keys of the paths
+     * @param values Firebase-like data for each of {@code paths}, null removes data
+     */
+    void set(String[][] paths, Object[] values)
+    {
+        write(paths, values, null);
+    }
+
+    /**
+     * Replaces data of the path if it has not changed since {@code expected} was taken.
+     *
+     * @param segments Keys of the path
+     * @param expected Data taken by {@link #getVersioned(String[])}
+     * @param value    New Firebase-like data, null removes data
+     * @return True if data was replaced
+     */
+    boolean compareAndSet(String[] segments, Versioned expected, Object value)
+    {
+        return write(new String[][]{segments}, new Object[]{value}, expected);
+    }
+
+    /**
+     * Adds subscription, its first event is created immediately.
+     *
+     * @param subscription Subscription
+     */
+    void subscribe(Subscription subscription)
+    {
+        lock.writeLock().lock();
+        try {
+            SubscriptionNode node = subscriptions;
+            for (String key : subscription.segments) {
+                SubscriptionNode child = node.children.get(key);
+                if (child == null) {
+                    child = new SubscriptionNode();
+                    node.children.put(key, child);
+                }
+                node = child;
+            }
+            node.subscriptions.add(subscription);
+            Runnable event = subscription.changed(this, find(root, subscription.segments));
+            if (event != null)
+                events.add(event);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        dispatchEvents();
+    }
+
+    /**
+     * Removes subscription, events which are already created will be skipped.
+     *
+     * @param subscription Subscription
+     */
+    void unsubscribe(Subscription subscription)
+    {
+        subscription.active = false;
+        lock.writeLock().lock();
+        try {
+            SubscriptionNode[] stack = new SubscriptionNode[subscription.segments.length + 1];
+            SubscriptionNode node = subscriptions;
+            for (int i = 0; i < subscription.segments.length && node != null; i++) {
+                stack[i] = node;
+                node = node.children.get(subscription.segments[i]);
+            }
+            if (node == null || !node.subscriptions.removeValue(subscription, true))
+                return;
+            for (int i = subscription.segments.length; i > 0 && node.subscriptions.size == 0 && node.children.isEmpty(); i--) {
+                stack[i - 1].children.remove(subscription.segments[i - 1]);
+                node = stack[i - 1];
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Generates chronologically ordered unique key in the same format as Firebase {@code push()} does.
+     *
+     * @return New key
+     */
+    synchronized String generatePushKey()
+    {
+        long now = System.currentTimeMillis();
+        boolean duplicateTime = now == lastPushTime;
+        lastPushTime = now;
+        char[] key = new char[20];
+        for (int i = 7; i >= 0; i--) {
+            key[i] = PUSH_CHARS.charAt((int) (now % 64));
+            now /= 64;
+        }
+        if (!duplicateTime) {
+            for (int i = 0; i < 12; i++)
+                lastPushChars[i] = random.nextInt(64);
+        } else {
+            int i = 11;
+            for (; i >= 0 && lastPushChars[i] == 63; i--)
+                lastPushChars[i] = 0;
+            if (i >= 0)
+                lastPushChars[i]++;
+        }
+        for (int i = 0; i < 12; i++)
+            key[8 + i] = PUSH_CHARS.charAt(lastPushChars[i]);
+        return new String(key);
+    }
+
+    /**
+     * Should be called under the lock of the tree.
+     *
+     * @param node Node, may be null
+     * @return Copy of the node data, while events of a write are created the same copy is returned for the same node
+     */
+    Object snapshot(Node node)
+    {
+        if (node == null || node.children == null || snapshots == null)
+            return toData(node);
+        Object data = snapshots.get(node);
+        if (data == null) {
+            data = toData(node);
+            snapshots.put(node, data);
+        }
+        return data;
+    }
+
+    /**
+     * @param node     Node, may be null
+     * @param segments Keys of the path relative to the {@code node}
+     * @return Node at the given path, null if there is no data
+     */
+    static Node find(Node node, String[] segments)
+    {
+        for (int i = 0; i < segments.length && node != null; i++)
+            node = node.children != null ? node.children.get(segments[i]) : null;
+        return node;
+    }
+
+    /**
+     * @param node Node, may be null
+     * @return Copy of the node data as Firebase-like data types, null if {@code node} was null
+     */
+    static Object toData(Node node)
+    {
+        if (node == null) return null;
+        if (node.children == null) return node.getValue();
+        int size = node.children.size();
+        // Keys are sorted with integer keys first, so it is enough to check the last one.
+        if (arrayIndex(node.children.lastKey()) == size - 1) {
+            List<Object> list = new ArrayList<>(size);
+            for (Node child : node.children.values())
+                list.add(toData(child));
+            return list;
+        }
+        Map<String, Object> map = new HashMap<>(size * 4 / 3 + 1);
+        for (Map.Entry<String, Node> entry : node.children.entrySet())
+            map.put(entry.getKey(), toData(entry.getValue()));
+        return map;
+    }
+
+    /**
+     * Firebase order of keys - integer keys first, numerically, then other keys lexicographically.
+     *
+     * @param key1 Key
+     * @param key2 Key
+     * @return Comparison result
+     */
+    static int compareKeys(String key1, String key2)
+    {
+        if (key1 == key2) return 0;
+        int index1 = arrayIndex(key1);
+        int index2 = arrayIndex(key2);
+        if (index1 >= 0 && index2 >= 0) return index1 < index2 ? -1 : (index1 == index2 ? 0 : 1);
+        if (index1 >= 0) return -1;
+        if (index2 >= 0) return 1;
+        return key1.compareTo(key2);
+    }
+
+    /**
+     * @param key Key
+     * @return Integer value of the key, -1 if key is not a non-negative integer
+     */
+    private static int arrayIndex(String key)
+    {
+        int length = key.length();
+        if (length == 0 || length > 9 || (length > 1 && key.charAt(0) == '0')) return -1;
+        int index = 0;
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+
+    /**
+     * @param segments Keys of the paths
+     * @param values   Firebase-like data for each of {@code segments}
+     * @param expected If not null, write is done only if node of the first path has not changed
+     * @return True if data was written
+     */
+    private boolean write(String[][] segments, Object[] values, Versioned expected)
+    {
+        lock.writeLock().lock();
+        try {
+            if (expected != null) {
+                Node current = find(root, segments[0]);
+                if (current != expected.node || (current != null && current.version != expected.version))
+                    return false;
+            }
+            LinkedHashSet<Subscription> affected = new LinkedHashSet<>();
+            for (String[] path : segments)
+                collectSubscriptions(path, affected);
+            for (int i = 0; i < segments.length; i++)
+                replace(segments[i], build(values[i]));
+            if (!affected.isEmpty()) {
+                snapshots = new IdentityHashMap<>();
+                for (Subscription subscription : affected) {
+                    Runnable event = subscription.changed(this, find(root, subscription.segments));
+                    if (event != null)
+                        events.add(event);
+                }
+            }
+        } finally {
+            snapshots = null;
+            lock.writeLock().unlock();
+        }
+        dispatchEvents();
+        return true;
+    }
+
+    /**
+     * Puts node at the given path, creates missing parents and removes parents left empty.
+     *
+     * @param segments Keys of the path
+     * @param newNode  New node, null removes data
+     */
+    private void replace(String[] segments, Node newNode)
+    {
+        if (segments.length == 0) {
+            root = newNode;
+            return;
+        }
+        if (newNode == null && find(root, segments) == null)
+            return;
+        if (root == null || root.children == null)
+            root = branch();
+        Node[] stack = new Node[segments.length];
+        Node node = root;
+        int last = segments.length - 1;
+        for (int i = 0; i < last; i++) {
+            stack[i] = node;
+            node.version = ++version;
+            Node child = node.children.get(segments[i]);
+            if (child == null || child.children == null) {
+                child = branch();
+                node.children.put(segments[i], child);
+            }
+            node = child;
+        }
+        stack[last] = node;
+        node.version = ++version;
+        if (newNode != null) {
+            node.children.put(segments[last], newNode);
+            return;
+        }
+        node.children.remove(segments[last]);
+        for (int i = last; i >= 0 && stack[i].children.isEmpty(); i--) {
+            if (i == 0)
+                root = null;
+            else
+                stack[i - 1].children.remove(segments[i - 1]);
+        }
+    }
+
+    /**
+     * @param data Firebase-like data
+     * @return New node with the data, null if {@code data} is null or empty
+     */
+    private Node build(Object data)
+    {
+        if (data == null) return null;
+        Node node = new Node();
+        node.version = ++version;
+        if (data instanceof Map) {
+            node.children = new TreeMap<>(KEY_ORDER);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) data).entrySet()) {
+                Node child = build(entry.getValue());
+                if (child != null)
+                    node.children.put(intern(String.valueOf(entry.getKey())), child);
+            }
+        } else if (data instanceof List) {
+            node.children = new TreeMap<>(KEY_ORDER);
+            List<?> list = (List<?>) data;
+            for (int i = 0; i < list.size(); i++) {
+                Node child = build(list.get(i));
+                if (child != null)
+                    node.children.put(intern(Integer.toString(i)), child);
+            }
+        } else {
+            node.setValue(data);
+            return node;
+        }
+        return node.children.isEmpty() ? null : node;
+    }
+
+    /**
+     * @return New node without children
+     */
+    private Node branch()
+    {
+        Node node = new Node();
+        node.children = new TreeMap<>(KEY_ORDER);
+        node.version = ++version;
+        return node;
+    }
+
+    /**
+     * Finds subscriptions of the path, its parents and its children.
+     *
+     * @param segments Keys of the written path
+     * @param result   Set to which subscriptions are added
+     */
+    private void collectSubscriptions(String[] segments, LinkedHashSet<Subscription> result)
+    {
+        SubscriptionNode node = subscriptions;
+        addAll(node.subscriptions, result);
+        for (String key : segments) {
+            node = node.children.get(key);
+            if (node == null) return;
+            addAll(node.subscriptions, result);
+        }
+        collectChildSubscriptions(node, result);
+    }
+
+    /**
+     * @param node   Subscriptions of some path
+     * @param result Set to which subscriptions of all children of the path are added
+     */
+    private void collectChildSubscriptions(SubscriptionNode node, LinkedHashSet<Subscription> result)
+    {
+        for (SubscriptionNode child : node.children.values()) {
+            addAll(child.subscriptions, result);
+            collectChildSubscriptions(child, result);
+        }
+    }
+
+    /**
+     * @param subscriptions Subscriptions to add
+     * @param result        Set to which subscriptions are added
+     */
+    private static void addAll(Array<Subscription> subscriptions, LinkedHashSet<Subscription> result)
+    {
+        for (int i = 0; i < subscriptions.size; i++)
+            result.add(subscriptions.get(i));
+    }
+
+    /**
+     * Runs created events unless other thread is already doing it.
+     */
+    private void dispatchEvents()
+    {
+        while (!events.isEmpty() && dispatching.compareAndSet(false, true)) {
+            try {
+                Runnable event;
+                while ((event = events.poll()) != null)
+                    event.run();
+            } finally {
+                dispatching.set(false);
+            }
+        }
+    }
+
+    /**
+     * One location of the data - leaf with value or branch with children.
+     * <p>
+     * Numbers and booleans are kept unboxed in {@code bits}, only strings are kept as objects.<p>
+     * Nodes are read and modified only under the lock of the tree.
+     */
+    static class Node
+    {
+        private static final byte STRING = 1;
+        private static final byte LONG = 2;
+        private static final byte DOUBLE = 3;
+        private static final byte BOOLEAN = 4;
+
+        TreeMap<String, Node> children;
+        long version;
+        private byte type;
+        private long bits;
+        private String string;
+
+        /**
+         * @return Value of the leaf, boxed, null for branch
+         */
+        Object getValue()
+        {
+            switch (type) {
+                case STRING:
+                    return string;
+                case LONG:
+                    return bits;
+                case DOUBLE:
+                    return Double.longBitsToDouble(bits);
+                case BOOLEAN:
+                    return bits != 0;
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @param value Firebase-like leaf value: {@code String}, {@code Long}, {@code Double} or {@code Boolean}
+         */
+        void setValue(Object value)
+        {
+            if (value instanceof Long) {
+                type = LONG;
+                bits = (Long) value;
+            } else if (value instanceof Double) {
+                type = DOUBLE;
+                bits = Double.doubleToRawLongBits((Double) value);
+            } else if (value instanceof Boolean) {
+                type = BOOLEAN;
+                bits = (Boolean) value ? 1 : 0;
+            } else {
+                type = STRING;
+                string = String.valueOf(value);
+            }
+        }
+    }
+
+    /**
+     * Data of the path taken together with its version.
+     */
+    static class Versioned
+    {
+        final Node node;
+        final long version;
+        final Object data;
+
+        private Versioned(Node node, long version, Object data)
+        {
+            this.node = node;
+            this.version = version;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Observer of one path, notified when data of the path, its parents or its children is written.
+     */
+    abstract static class Subscription
+    {
+        final String[] segments;
+        volatile boolean active;
+
+        Subscription(String[] segments)
+        {
+            this.segments = segments;
+            active = true;
+        }
+
+        /**
+         * Called under the write lock after subscribing and after each write which may touch the path.
+         *
+         * @param tree Tree, its {@link #snapshot(Node)} should be used to copy data
+         * @param node Current node of the path, may be null
+         * @return Event which will be run after the lock is released, may be null
+         */
+        abstract Runnable changed(DataTree tree, Node node);
+    }
+
+    /**
+     * Subscriptions of one path, in tree matching the data tree.
+     */
+    private static class SubscriptionNode
+    {
+        final HashMap<String, SubscriptionNode> children = new HashMap<>();
+        final Array<Subscription> subscriptions = new Array<>(false, 2);
+    }
+}
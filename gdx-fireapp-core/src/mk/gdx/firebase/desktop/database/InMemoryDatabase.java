@@ -0,0 +1,383 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import java.util.List;
+import java.util.Map;
+
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
+import mk.gdx.firebase.callbacks.TransactionCallback;
+import mk.gdx.firebase.database.CallbackDispatcher;
+import mk.gdx.firebase.database.ChildEventType;
+import mk.gdx.firebase.database.DatabaseRef;
+import mk.gdx.firebase.database.DecodedValueCache;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.ListenerRegistry;
+import mk.gdx.firebase.database.TransactionPolicy;
+import mk.gdx.firebase.distributions.DatabaseDistribution;
+import mk.gdx.firebase.exceptions.DatabaseReferenceNotSetException;
+import mk.gdx.firebase.helpers.DataConversionHelper;
+import mk.gdx.firebase.listeners.ChildChangeListener;
+import mk.gdx.firebase.listeners.ConnectedListener;
+import mk.gdx.firebase.listeners.DataChangeListener;
+
+/**
+ * Pure java database distribution which keeps all data in memory, for desktop builds, tests and load testing.
+ * <p>
+ * Supports the whole {@link DatabaseDistribution} API: queries, value and child listeners, {@code push()} keys,<p>
+ * atomic multi-path {@code updateChildren} and transactions with optimistic compare-and-set.<p>
+ * All operations are done on the calling thread, callbacks and listeners are called through {@link CallbackDispatcher}.
+ * <p>
+ * Usage:
+ * {@code
+ * GdxFIRDatabase.instance().setMockObject(new InMemoryDatabase());
+ * }
+ * <p>
+ * To simulate many clients of the same database in one JVM give each of them its own {@link #newClient()}.
+ *
+ * @see DatabaseDistribution
+ */
+public class InMemoryDatabase implements DatabaseDistribution
+{
+
+    private final DataTree tree;
+    private final ListenerRegistry<DataTree.Subscription> valueListeners;
+    private final ListenerRegistry<DataTree.Subscription> childListeners;
+    private volatile DecodedValueCache decodedValueCache;
+    private volatile CallbackDispatcher callbackDispatcher;
+    private InMemoryRef ref;
+
+    /**
+     * Creates empty database.
+     */
+    public InMemoryDatabase()
+    {
+        this(new DataTree());
+    }
+
+    /**
+     * @param tree Data shared with other clients
+     */
+    private InMemoryDatabase(DataTree tree)
+    {
+        this.tree = tree;
+        valueListeners = new ListenerRegistry<>();
+        childListeners = new ListenerRegistry<>();
+        callbackDispatcher = new CallbackDispatcher(CallbackDispatcher.Mode.IMMEDIATE);
+    }
+
+    /**
+     * Creates database distribution which shares data with this one.
+     * <p>
+     * New client has its own {@link #inReference(String)} state, listeners and settings, so it can be used by other thread.
+     *
+     * @return New client of the same data
+     */
+    public InMemoryDatabase newClient()
+    {
+        return new InMemoryDatabase(tree);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Database is always connected.
+     */
+    @Override
+    public void onConnect(final ConnectedListener connectedListener)
+    {
+        if (connectedListener == null) return;
+        callbackDispatcher.dispatch(new Runnable() {
+            @Override
+            public void run()
+            {
+                connectedListener.onConnect();
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseDistribution inReference(String databasePath)
+    {
+        ref = (InMemoryRef) ref(databasePath);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseRef ref(String databasePath)
+    {
+        return new InMemoryRef(this, databasePath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value)
+    {
+        ref().setValue(value);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value, CompleteCallback completeCallback)
+    {
+        ref().setValue(value, completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void readValue(Class<T> dataType, DataCallback<R> callback)
+    {
+        ref().readValue(dataType, callback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void readValue(Class<T> dataType, ElementCallback<R> callback)
+    {
+        ref().readValue(dataType, callback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<R> listener)
+    {
+        ListenerRegistration registration = ref().onDataChange(dataType, listener);
+        terminateOperation();
+        return registration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events)
+    {
+        ListenerRegistration registration = ref().onChildChange(dataType, listener, events);
+        terminateOperation();
+        return registration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseDistribution push()
+    {
+        ref = ref().push();
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue()
+    {
+        ref().removeValue();
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue(CompleteCallback completeCallback)
+    {
+        ref().removeValue(completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data)
+    {
+        ref().updateChildren(data);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data, CompleteCallback completeCallback)
+    {
+        ref().updateChildren(data, completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, CompleteCallback completeCallback)
+    {
+        ref().transaction(dataType, transactionCallback, completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, TransactionPolicy transactionPolicy, CompleteCallback completeCallback)
+    {
+        ref().transaction(dataType, transactionCallback, transactionPolicy, completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Data is kept only in memory so this method does nothing.
+     */
+    @Override
+    public void setPersistenceEnabled(boolean enabled)
+    {
+
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDecodedValueCacheSize(long maxBytes)
+    {
+        decodedValueCache = maxBytes > 0 ? new DecodedValueCache(maxBytes) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCallbackDispatcher(CallbackDispatcher callbackDispatcher)
+    {
+        this.callbackDispatcher = callbackDispatcher;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void keepSynced(boolean synced)
+    {
+        ref().keepSynced(synced);
+        terminateOperation();
+    }
+
+    /**
+     * @return Data of the database
+     */
+    DataTree getTree()
+    {
+        return tree;
+    }
+
+    /**
+     * @return Dispatcher which wraps callbacks and listeners given by user
+     */
+    CallbackDispatcher getCallbackDispatcher()
+    {
+        return callbackDispatcher;
+    }
+
+    /**
+     * @return Registry of subscriptions added by {@link InMemoryQuery#onDataChange(Class, DataChangeListener)}
+     */
+    ListenerRegistry<DataTree.Subscription> getValueListeners()
+    {
+        return valueListeners;
+    }
+
+    /**
+     * @return Registry of subscriptions added by {@link InMemoryQuery#onChildChange(Class, ChildChangeListener, ChildEventType...)}
+     */
+    ListenerRegistry<DataTree.Subscription> getChildListeners()
+    {
+        return childListeners;
+    }
+
+    /**
+     * Gets data as instance of {@code dataType}, reuses object decoded earlier if the data has not changed.
+     * <p>
+     * Only POJO types are cached, {@link List} and {@link Map} are returned as they are.
+     *
+     * @param key      Path with query id
+     * @param data     Firebase-like data, may be null
+     * @param dataType Wanted type
+     * @return Decoded data, may be null
+     */
+    Object getValue(String key, Object data, Class<?> dataType)
+    {
+        DecodedValueCache cache = decodedValueCache;
+        if (cache == null || dataType == List.class || dataType == Map.class || !(data instanceof Map || data instanceof List))
+            return DataConversionHelper.toType(data, dataType);
+        int dataHash = data.hashCode();
+        Object value = cache.get(key, dataType, data, dataHash);
+        if (value == null) {
+            value = DataConversionHelper.toType(data, dataType);
+            cache.put(key, dataType, data, dataHash, value);
+        }
+        return value;
+    }
+
+    /**
+     * Simple getter of {@link InMemoryRef} which this {@link InMemoryDatabase} instance will be deal with.
+     *
+     * @return Database reference handle. Every action will be deal with it.
+     * @throws DatabaseReferenceNotSetException It is thrown when user forgot to call {@link #inReference(String)}
+     */
+    private InMemoryRef ref()
+    {
+        if (ref == null)
+            throw new DatabaseReferenceNotSetException("Please call GdxFIRDatabase#inReference() first.");
+        return ref;
+    }
+
+    /**
+     * Reset {@link #ref} to initial state.
+     * After each flow-terminate operation {@link #ref} should be reset the initial value,
+     * it forces the users to call {@link #inReference(String)} before each flow-terminate operation.
+     */
+    private void terminateOperation()
+    {
+        ref = null;
+    }
+}
@@ -0,0 +1,641 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import com.badlogic.gdx.utils.Array;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mk.gdx.firebase.callbacks.BooleanCallback;
+import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.DoubleCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
+import mk.gdx.firebase.callbacks.ElementDataCallback;
+import mk.gdx.firebase.callbacks.LongCallback;
+import mk.gdx.firebase.callbacks.PrimitiveValueHandler;
+import mk.gdx.firebase.database.ChildEventType;
+import mk.gdx.firebase.database.DatabaseQuery;
+import mk.gdx.firebase.database.LazySnapshot;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.ListenerRegistry;
+import mk.gdx.firebase.helpers.DataConversionHelper;
+import mk.gdx.firebase.listeners.BooleanChangeListener;
+import mk.gdx.firebase.listeners.ChildChangeListener;
+import mk.gdx.firebase.listeners.DataChangeListener;
+import mk.gdx.firebase.listeners.DoubleChangeListener;
+import mk.gdx.firebase.listeners.LongChangeListener;
+
+/**
+ * {@link DatabaseQuery} of the {@link InMemoryDatabase}.
+ * <p>
+ * All fields are final so instance can be shared between threads.
+ *
+ * @see DatabaseQuery
+ */
+class InMemoryQuery implements DatabaseQuery
+{
+
+    protected final InMemoryDatabase database;
+    protected final String databasePath;
+    protected final String[] segments;
+    private final String queryId;
+    private final QueryFilter filter;
+
+    /**
+     * @param database     Database distribution which holds data and listeners
+     * @param databasePath Database path
+     * @param segments     Keys of the {@code databasePath}
+     * @param queryId      Ordering and filtering of the query, empty if not filtered
+     * @param filter       Ordering and filtering of the query
+     */
+    InMemoryQuery(InMemoryDatabase database, String databasePath, String[] segments, String queryId, QueryFilter filter)
+    {
+        this.database = database;
+        this.databasePath = databasePath;
+        this.segments = segments;
+        this.queryId = queryId;
+        this.filter = filter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getPath()
+    {
+        return databasePath;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getQueryId()
+    {
+        return queryId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByChild(String childPath)
+    {
+        return query(filter.orderBy(QueryFilter.OrderBy.CHILD, database.getTree().segments(childPath)), "orderByChild=" + childPath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByKey()
+    {
+        return query(filter.orderBy(QueryFilter.OrderBy.KEY, null), "orderByKey");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByValue()
+    {
+        return query(filter.orderBy(QueryFilter.OrderBy.VALUE, null), "orderByValue");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery limitToFirst(int limit)
+    {
+        return query(filter.limitToFirst(limit), "limitToFirst=" + limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery limitToLast(int limit)
+    {
+        return query(filter.limitToLast(limit), "limitToLast=" + limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(String value)
+    {
+        return query(filter.startAt(value), "startAt=\"" + value + "\"");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(double value)
+    {
+        return query(filter.startAt(value), "startAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(boolean value)
+    {
+        return query(filter.startAt(value), "startAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(String value)
+    {
+        return query(filter.endAt(value), "endAt=\"" + value + "\"");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(double value)
+    {
+        return query(filter.endAt(value), "endAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(boolean value)
+    {
+        return query(filter.endAt(value), "endAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(String value)
+    {
+        return query(filter.startAt(value).endAt(value), "equalTo=\"" + value + "\"");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(double value)
+    {
+        return query(filter.startAt(value).endAt(value), "equalTo=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(boolean value)
+    {
+        return query(filter.startAt(value).endAt(value), "equalTo=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Callback is called before this method returns, unless {@link mk.gdx.firebase.database.CallbackDispatcher} says otherwise.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R extends T> void readValue(Class<T> dataType, DataCallback<R> callback)
+    {
+        DataCallback<R> dispatchedCallback = database.getCallbackDispatcher().wrap(callback);
+        R value;
+        try {
+            value = (R) getValue(database.getTree().get(segments, filter), dataType);
+        } catch (RuntimeException e) {
+            dispatchedCallback.onError(e);
+            return;
+        }
+        dispatchedCallback.onData(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are children of {@link LazySnapshot} decoded by {@link ElementDataCallback}.
+     */
+    @Override
+    public <T, R extends T> void readValue(Class<T> dataType, ElementCallback<R> callback)
+    {
+        readValue(LazySnapshot.class, new ElementDataCallback<>(dataType, callback));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<R> listener)
+    {
+        if (listener == null) {
+            removeAll(database.getValueListeners());
+            return null;
+        }
+        return subscribe(dataType, (DataChangeListener<Object>) database.getCallbackDispatcher().wrap(listener));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events)
+    {
+        if (listener == null) {
+            removeAll(database.getChildListeners());
+            return null;
+        }
+        ChildSubscription subscription = new ChildSubscription(dataType, (ChildChangeListener<Object>) database.getCallbackDispatcher().wrap(listener),
+                events.length == 0 ? ChildEventType.values() : events);
+        database.getChildListeners().add(listenersKey(), subscription);
+        database.getTree().subscribe(subscription);
+        return subscription;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readLong(LongCallback callback)
+    {
+        PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback)).handle(database.getTree().get(segments, filter));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readDouble(DoubleCallback callback)
+    {
+        PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback)).handle(database.getTree().get(segments, filter));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readBoolean(BooleanCallback callback)
+    {
+        PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback)).handle(database.getTree().get(segments, filter));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readString(DataCallback<String> callback)
+    {
+        PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback)).handle(database.getTree().get(segments, filter));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onLongChange(LongChangeListener listener)
+    {
+        return subscribe(Object.class, new PrimitiveChangeListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onDoubleChange(DoubleChangeListener listener)
+    {
+        return subscribe(Object.class, new PrimitiveChangeListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onBooleanChange(BooleanChangeListener listener)
+    {
+        return subscribe(Object.class, new PrimitiveChangeListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onStringChange(DataChangeListener<String> listener)
+    {
+        return subscribe(Object.class, new PrimitiveChangeListener(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All data is kept in memory so this method does nothing.
+     */
+    @Override
+    public void keepSynced(boolean synced)
+    {
+
+    }
+
+    /**
+     * @param dataType Wanted type
+     * @param listener Listener already wrapped by the dispatcher
+     * @return Registration of the new value subscription
+     */
+    private ListenerRegistration subscribe(Class<?> dataType, DataChangeListener<Object> listener)
+    {
+        ValueSubscription subscription = new ValueSubscription(dataType, listener);
+        database.getValueListeners().add(listenersKey(), subscription);
+        database.getTree().subscribe(subscription);
+        return subscription;
+    }
+
+    /**
+     * @param registry Registry of value or child listeners
+     */
+    private void removeAll(ListenerRegistry<DataTree.Subscription> registry)
+    {
+        Array<DataTree.Subscription> subscriptions = registry.removeAll(listenersKey());
+        for (int i = 0; i < subscriptions.size; i++)
+            database.getTree().unsubscribe(subscriptions.get(i));
+    }
+
+    /**
+     * @param data     Firebase-like data of this query, may be null
+     * @param dataType Wanted type
+     * @return Data decoded by {@link InMemoryDatabase}, or wrapped by {@link InMemorySnapshot} if {@link LazySnapshot} is wanted
+     */
+    private Object getValue(Object data, Class<?> dataType)
+    {
+        if (dataType == LazySnapshot.class)
+            return InMemorySnapshot.of(segments, data);
+        return database.getValue(listenersKey(), data, dataType);
+    }
+
+    /**
+     * @return Key under which listeners of this query are kept by {@link InMemoryDatabase}
+     */
+    private String listenersKey()
+    {
+        return queryId.isEmpty() ? databasePath : databasePath + "?" + queryId;
+    }
+
+    /**
+     * @param newFilter Filter with one more ordering or filtering rule
+     * @param param     Text representation of the new rule
+     * @return New query
+     */
+    private DatabaseQuery query(QueryFilter newFilter, String param)
+    {
+        return new InMemoryQuery(database, databasePath, segments, queryId.isEmpty() ? param : queryId + "&" + param, newFilter);
+    }
+
+    /**
+     * Subscription of one {@link DataChangeListener}, also its registration handle.
+     */
+    private class ValueSubscription extends DataTree.Subscription implements ListenerRegistration
+    {
+        private final Class<?> dataType;
+        private final DataChangeListener<Object> listener;
+        private DataTree.Node lastNode;
+        private long lastVersion;
+        private boolean notified;
+
+        ValueSubscription(Class<?> dataType, DataChangeListener<Object> listener)
+        {
+            super(InMemoryQuery.this.segments);
+            this.dataType = dataType;
+            this.listener = listener;
+        }
+
+        @Override
+        Runnable changed(DataTree tree, DataTree.Node node)
+        {
+            if (notified && node == lastNode && (node == null || node.version == lastVersion))
+                return null;
+            notified = true;
+            lastNode = node;
+            lastVersion = node != null ? node.version : 0;
+            final Object data = filter.toData(tree, node);
+            return new Runnable() {
+                @Override
+                public void run()
+                {
+                    if (!active) return;
+                    Object value;
+                    try {
+                        value = getValue(data, dataType);
+                    } catch (RuntimeException e) {
+                        listener.onCanceled(e);
+                        return;
+                    }
+                    listener.onChange(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove()
+        {
+            if (database.getValueListeners().remove(listenersKey(), this))
+                database.getTree().unsubscribe(this);
+        }
+    }
+
+    /**
+     * Subscription of one {@link ChildChangeListener}, also its registration handle.
+     * <p>
+     * Keeps children delivered by the last event and compares them with the current ones.
+     */
+    private class ChildSubscription extends DataTree.Subscription implements ListenerRegistration
+    {
+        private final Class<?> dataType;
+        private final ChildChangeListener<Object> listener;
+        private final boolean[] eventTypes;
+        private LinkedHashMap<String, DataTree.Node> children;
+        private HashMap<String, Long> versions;
+
+        ChildSubscription(Class<?> dataType, ChildChangeListener<Object> listener, ChildEventType[] events)
+        {
+            super(InMemoryQuery.this.segments);
+            this.dataType = dataType;
+            this.listener = listener;
+            eventTypes = new boolean[ChildEventType.values().length];
+            for (ChildEventType event : events)
+                eventTypes[event.ordinal()] = true;
+            children = new LinkedHashMap<>();
+            versions = new HashMap<>();
+        }
+
+        @Override
+        Runnable changed(DataTree tree, DataTree.Node node)
+        {
+            LinkedHashMap<String, DataTree.Node> newChildren = filter.children(node);
+            HashMap<String, Long> newVersions = new HashMap<>(newChildren.size() * 4 / 3 + 1);
+            final Array<ChildEvent> events = new Array<>();
+            if (eventTypes[ChildEventType.REMOVED.ordinal()]) {
+                for (Map.Entry<String, DataTree.Node> entry : children.entrySet()) {
+                    if (!newChildren.containsKey(entry.getKey()))
+                        events.add(new ChildEvent(ChildEventType.REMOVED, entry.getKey(), tree.snapshot(entry.getValue()), null));
+                }
+            }
+            HashMap<String, String> oldPreviousKeys = null;
+            if (filter.getOrderBy() != QueryFilter.OrderBy.KEY && eventTypes[ChildEventType.MOVED.ordinal()])
+                oldPreviousKeys = previousKeys(children);
+            String previousKey = null;
+            for (Map.Entry<String, DataTree.Node> entry : newChildren.entrySet()) {
+                String key = entry.getKey();
+                DataTree.Node child = entry.getValue();
+                newVersions.put(key, child.version);
+                DataTree.Node oldChild = children.get(key);
+                if (oldChild == null) {
+                    if (eventTypes[ChildEventType.ADDED.ordinal()])
+                        events.add(new ChildEvent(ChildEventType.ADDED, key, tree.snapshot(child), previousKey));
+                } else if (oldChild != child || versions.get(key) != child.version) {
+                    if (eventTypes[ChildEventType.CHANGED.ordinal()])
+                        events.add(new ChildEvent(ChildEventType.CHANGED, key, tree.snapshot(child), previousKey));
+                    if (oldPreviousKeys != null && !equal(oldPreviousKeys.get(key), previousKey))
+                        events.add(new ChildEvent(ChildEventType.MOVED, key, tree.snapshot(child), previousKey));
+                }
+                previousKey = key;
+            }
+            children = newChildren;
+            versions = newVersions;
+            if (events.size == 0)
+                return null;
+            return new Runnable() {
+                @Override
+                public void run()
+                {
+                    for (int i = 0; i < events.size && active; i++)
+                        deliver(events.get(i));
+                }
+            };
+        }
+
+        @Override
+        public void remove()
+        {
+            if (database.getChildListeners().remove(listenersKey(), this))
+                database.getTree().unsubscribe(this);
+        }
+
+        /**
+         * @param event Event to pass to the listener
+         */
+        private void deliver(ChildEvent event)
+        {
+            Object value;
+            try {
+                value = dataType == LazySnapshot.class ? new InMemorySnapshot(event.key, event.data) : DataConversionHelper.toType(event.data, dataType);
+            } catch (RuntimeException e) {
+                listener.onCanceled(e);
+                return;
+            }
+            switch (event.type) {
+                case ADDED:
+                    listener.onChildAdded(event.key, value, event.previousKey);
+                    break;
+                case CHANGED:
+                    listener.onChildChanged(event.key, value, event.previousKey);
+                    break;
+                case REMOVED:
+                    listener.onChildRemoved(event.key, value);
+                    break;
+                case MOVED:
+                    listener.onChildMoved(event.key, value, event.previousKey);
+                    break;
+            }
+        }
+
+        /**
+         * @param ordered Ordered children
+         * @return Key of the previous child for each child
+         */
+        private HashMap<String, String> previousKeys(LinkedHashMap<String, DataTree.Node> ordered)
+        {
+            HashMap<String, String> result = new HashMap<>(ordered.size() * 4 / 3 + 1);
+            String previous = null;
+            for (String key : ordered.keySet()) {
+                result.put(key, previous);
+                previous = key;
+            }
+            return result;
+        }
+
+        private boolean equal(String key1, String key2)
+        {
+            return key1 == null ? key2 == null : key1.equals(key2);
+        }
+    }
+
+    /**
+     * One change of a child, data is copied under the lock and decoded when delivered.
+     */
+    private static class ChildEvent
+    {
+        private final ChildEventType type;
+        private final String key;
+        private final Object data;
+        private final String previousKey;
+
+        private ChildEvent(ChildEventType type, String key, Object data, String previousKey)
+        {
+            this.type = type;
+            this.key = key;
+            this.data = data;
+            this.previousKey = previousKey;
+        }
+    }
+
+    /**
+     * Passes data of the {@link ValueSubscription} to the handler of primitive value, data is already kept as wrapper object.
+     */
+    private static class PrimitiveChangeListener implements DataChangeListener<Object>
+    {
+        private final PrimitiveValueHandler handler;
+
+        private PrimitiveChangeListener(PrimitiveValueHandler handler)
+        {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onChange(Object newValue)
+        {
+            handler.handle(newValue);
+        }
+
+        @Override
+        public void onCanceled(Exception e)
+        {
+            handler.fail(e);
+        }
+    }
+}
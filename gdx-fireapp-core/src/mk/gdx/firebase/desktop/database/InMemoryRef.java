@@ -0,0 +1,241 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import com.badlogic.gdx.utils.TimeUtils;
+
+import java.util.Map;
+
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.callbacks.TransactionCallback;
+import mk.gdx.firebase.callbacks.TransactionCompleteCallback;
+import mk.gdx.firebase.database.DatabaseRef;
+import mk.gdx.firebase.database.TransactionMetrics;
+import mk.gdx.firebase.database.TransactionPolicy;
+import mk.gdx.firebase.exceptions.TransactionAbortedException;
+import mk.gdx.firebase.helpers.DataConversionHelper;
+
+/**
+ * {@link DatabaseRef} of the {@link InMemoryDatabase}.
+ * <p>
+ * Writes are done immediately, on the calling thread. Reading and listening is inherited from {@link InMemoryQuery} - reference is a not filtered query.
+ *
+ * @see DatabaseRef
+ */
+class InMemoryRef extends InMemoryQuery implements DatabaseRef
+{
+
+    /**
+     * Same limit as Firebase SDK has.
+     */
+    private static final int MAX_TRANSACTION_ATTEMPTS = 25;
+
+    /**
+     * @param database     Database distribution which holds data and listeners
+     * @param databasePath Database path
+     */
+    InMemoryRef(InMemoryDatabase database, String databasePath)
+    {
+        this(database, databasePath, database.getTree().segments(databasePath));
+    }
+
+    /**
+     * @param database     Database distribution which holds data and listeners
+     * @param databasePath Database path
+     * @param segments     Keys of the {@code databasePath}
+     */
+    private InMemoryRef(InMemoryDatabase database, String databasePath, String[] segments)
+    {
+        super(database, databasePath, segments, "", QueryFilter.NONE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InMemoryRef child(String childPath)
+    {
+        return new InMemoryRef(database, databasePath + "/" + childPath, concat(segments, database.getTree().segments(childPath)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public InMemoryRef push()
+    {
+        return child(database.getTree().generatePushKey());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value)
+    {
+        database.getTree().set(new String[][]{segments}, new Object[]{DataConversionHelper.toData(value)});
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value, CompleteCallback completeCallback)
+    {
+        CompleteCallback dispatchedCallback = database.getCallbackDispatcher().wrap(completeCallback);
+        try {
+            setValue(value);
+        } catch (RuntimeException e) {
+            if (dispatchedCallback == null) throw e;
+            dispatchedCallback.onError(e);
+            return;
+        }
+        if (dispatchedCallback != null)
+            dispatchedCallback.onSuccess();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue()
+    {
+        database.getTree().set(new String[][]{segments}, new Object[]{null});
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue(CompleteCallback completeCallback)
+    {
+        removeValue();
+        if (completeCallback != null)
+            database.getCallbackDispatcher().wrap(completeCallback).onSuccess();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All children are written in one atomic step.
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data)
+    {
+        String[][] paths = new String[data.size()][];
+        Object[] values = new Object[data.size()];
+        int i = 0;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            paths[i] = concat(segments, database.getTree().segments(entry.getKey()));
+            values[i] = DataConversionHelper.toData(entry.getValue());
+            i++;
+        }
+        database.getTree().set(paths, values);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * All children are written in one atomic step.
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data, CompleteCallback completeCallback)
+    {
+        CompleteCallback dispatchedCallback = database.getCallbackDispatcher().wrap(completeCallback);
+        try {
+            updateChildren(data);
+        } catch (RuntimeException e) {
+            if (dispatchedCallback == null) throw e;
+            dispatchedCallback.onError(e);
+            return;
+        }
+        if (dispatchedCallback != null)
+            dispatchedCallback.onSuccess();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, CompleteCallback completeCallback)
+    {
+        transaction(dataType, transactionCallback, null, completeCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Transaction runs on the calling thread. New value is saved only if data has not changed since it was read,<p>
+     * otherwise {@code transactionCallback} is called again with the fresh data.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, TransactionPolicy transactionPolicy,
+                                             CompleteCallback completeCallback)
+    {
+        CompleteCallback dispatchedCallback = database.getCallbackDispatcher().wrap(completeCallback);
+        long startTime = TimeUtils.millis();
+        int attempt = 0;
+        boolean committed = false;
+        boolean abortedByPolicy = false;
+        Exception error = null;
+        try {
+            while (!committed) {
+                if (attempt == MAX_TRANSACTION_ATTEMPTS) {
+                    error = new Exception("Transaction aborted after " + MAX_TRANSACTION_ATTEMPTS + " attempts.");
+                    break;
+                }
+                DataTree.Versioned current = database.getTree().getVersioned(segments);
+                R transactionData = (R) DataConversionHelper.toType(current.data, dataType);
+                if (transactionPolicy != null && transactionPolicy.shouldAbort(transactionData, attempt + 1)) {
+                    abortedByPolicy = true;
+                    break;
+                }
+                // Only attempts which call the transaction callback are counted, aborted one is not.
+                attempt++;
+                committed = database.getTree().compareAndSet(segments, current, DataConversionHelper.toData(transactionCallback.run(transactionData)));
+            }
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        if (dispatchedCallback == null) return;
+        if (dispatchedCallback instanceof TransactionCompleteCallback) {
+            ((TransactionCompleteCallback) dispatchedCallback).onMetrics(
+                    new TransactionMetrics(attempt, TimeUtils.timeSinceMillis(startTime), committed, abortedByPolicy));
+        }
+        if (error != null) {
+            dispatchedCallback.onError(error);
+        } else if (!committed) {
+            dispatchedCallback.onError(new TransactionAbortedException(abortedByPolicy));
+        } else {
+            dispatchedCallback.onSuccess();
+        }
+    }
+
+    /**
+     * @param segments      Keys of the path
+     * @param childSegments Keys of the child path
+     * @return Keys of the child path relative to the root
+     */
+    private static String[] concat(String[] segments, String[] childSegments)
+    {
+        String[] result = new String[segments.length + childSegments.length];
+        System.arraycopy(segments, 0, result, 0, segments.length);
+        System.arraycopy(childSegments, 0, result, segments.length, childSegments.length);
+        return result;
+    }
+}
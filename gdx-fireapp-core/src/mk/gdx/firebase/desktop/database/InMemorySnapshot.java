@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import mk.gdx.firebase.database.LazySnapshot;
+import mk.gdx.firebase.helpers.DataConversionHelper;
+import mk.gdx.firebase.helpers.PathHelper;
+
+/**
+ * {@link LazySnapshot} of the {@link InMemoryDatabase} - wraps Firebase-like data copied from the tree.
+ * <p>
+ * Data is converted to the wanted type only by {@link #getValue(Class)}, children are reached without any conversion.
+ */
+class InMemorySnapshot implements LazySnapshot
+{
+
+    private final String key;
+    private final Object data;
+
+    /**
+     * @param key  Key of the location, null for the root
+     * @param data Firebase-like data, may be null
+     */
+    InMemorySnapshot(String key, Object data)
+    {
+        this.key = key;
+        this.data = data;
+    }
+
+    /**
+     * @param segments Keys of the location, empty for the root
+     * @param data     Firebase-like data, may be null
+     * @return Snapshot of the location
+     */
+    static InMemorySnapshot of(String[] segments, Object data)
+    {
+        return new InMemorySnapshot(segments.length > 0 ? segments[segments.length - 1] : null, data);
+    }
+
+    @Override
+    public String getKey()
+    {
+        return key;
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return data != null;
+    }
+
+    @Override
+    public boolean hasChild(String path)
+    {
+        return child(path).exists();
+    }
+
+    @Override
+    public LazySnapshot child(String path)
+    {
+        String normalized = PathHelper.normalize(path);
+        if (normalized.isEmpty())
+            return this;
+        String[] keys = normalized.split("/+");
+        Object child = data;
+        for (int i = 0; i < keys.length && child != null; i++)
+            child = childData(child, keys[i]);
+        return new InMemorySnapshot(keys[keys.length - 1], child);
+    }
+
+    @Override
+    public long childrenCount()
+    {
+        if (data instanceof Map)
+            return ((Map<?, ?>) data).size();
+        if (data instanceof List)
+            return ((List<?>) data).size();
+        return 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getValue(Class<T> dataType)
+    {
+        if (dataType == LazySnapshot.class)
+            return (T) this;
+        return DataConversionHelper.toType(data, dataType);
+    }
+
+    @Override
+    public Iterator<LazySnapshot> iterator()
+    {
+        if (data instanceof Map) {
+            final Iterator<? extends Map.Entry<?, ?>> entries = ((Map<?, ?>) data).entrySet().iterator();
+            return new ChildIterator() {
+                @Override
+                public boolean hasNext()
+                {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public LazySnapshot next()
+                {
+                    Map.Entry<?, ?> entry = entries.next();
+                    return new InMemorySnapshot(String.valueOf(entry.getKey()), entry.getValue());
+                }
+            };
+        }
+        final List<?> list = data instanceof List ? (List<?>) data : null;
+        return new ChildIterator() {
+            private int index;
+
+            @Override
+            public boolean hasNext()
+            {
+                return list != null && index < list.size();
+            }
+
+            @Override
+            public LazySnapshot next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                int i = index++;
+                return new InMemorySnapshot(String.valueOf(i), list.get(i));
+            }
+        };
+    }
+
+    /**
+     * @param parent Firebase-like data
+     * @param key    Key of the child, index for list
+     * @return Data of the child, null if there is no such child
+     */
+    private static Object childData(Object parent, String key)
+    {
+        if (parent instanceof Map)
+            return ((Map<?, ?>) parent).get(key);
+        if (parent instanceof List) {
+            List<?> list = (List<?>) parent;
+            try {
+                int index = Integer.parseInt(key);
+                return index >= 0 && index < list.size() ? list.get(index) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Iterator of children, snapshots can not be removed.
+     */
+    private abstract static class ChildIterator implements Iterator<LazySnapshot>
+    {
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
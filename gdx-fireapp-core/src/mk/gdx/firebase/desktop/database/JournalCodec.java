@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonWriter;
+
+import mk.gdx.firebase.helpers.DataConversionHelper;
+
+/**
+ * Transforms values given to the database into JSON kept by {@link WriteJournal} and back.
+ * <p>
+ * Values are read back as Firebase-like data types: see {@link DataConversionHelper}.
+ */
+class JournalCodec
+{
+
+    private final Json json;
+    private final JsonReader jsonReader;
+
+    JournalCodec()
+    {
+        json = new Json(JsonWriter.OutputType.json);
+        json.setTypeName(null);
+        json.setUsePrototypes(false);
+        jsonReader = new JsonReader();
+    }
+
+    /**
+     * @param value Any value which can be stored in the database, may be null
+     * @return JSON representation of the {@code value}, null if {@code value} was null
+     */
+    synchronized String toJson(Object value)
+    {
+        return value != null ? json.toJson(value) : null;
+    }
+
+    /**
+     * @param text JSON created by {@link #toJson(Object)}, may be null
+     * @return Firebase-like representation of the JSON, null if {@code text} was null
+     */
+    synchronized Object fromJson(String text)
+    {
+        return text != null ? DataConversionHelper.fromJsonValue(jsonReader.parse(text)) : null;
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
+import mk.gdx.firebase.callbacks.TransactionCallback;
+import mk.gdx.firebase.database.CallbackDispatcher;
+import mk.gdx.firebase.database.ChildEventType;
+import mk.gdx.firebase.database.DatabaseRef;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.TransactionPolicy;
+import mk.gdx.firebase.distributions.DatabaseDistribution;
+import mk.gdx.firebase.exceptions.DatabaseReferenceNotSetException;
+import mk.gdx.firebase.listeners.ChildChangeListener;
+import mk.gdx.firebase.listeners.ConnectedListener;
+import mk.gdx.firebase.listeners.DataChangeListener;
+
+/**
+ * Database distribution for desktop and headless applications which keeps pending writes in the {@link WriteJournal}.
+ * <p>
+ * Every {@code setValue}, {@code updateChildren} and {@code removeValue} is added to the journal file first<p>
+ * and then sent to the transport - one write at a time, in order of adding. Write is removed from the journal<p>
+ * when transport confirms it, failed write is sent again after a growing delay. Writes not confirmed before the application exits<p>
+ * are sent again after the next start, but their {@link CompleteCallback} are lost.
+ * <p>
+ * Transport is any other {@link DatabaseDistribution} which talks to the real database. Reading, listening and transactions<p>
+ * are delegated to it, so they may not see writes which are still in the journal.
+ * <p>
+ * Usage:
+ * {@code
+ * GdxFIRDatabase.instance().setMockObject(new JournaledDatabase(new File("writes.journal"), transport));
+ * }
+ *
+ * @see DatabaseDistribution
+ */
+public class JournaledDatabase implements DatabaseDistribution
+{
+
+    private static final float MIN_RETRY_DELAY = 0.5f;
+    private static final float MAX_RETRY_DELAY = 30f;
+
+    private final DatabaseDistribution transport;
+    private final WriteJournal journal;
+    private final JournalCodec codec;
+    private final LongMap<CompleteCallback> callbacks;
+    private final Timer.Task retryTask;
+    private JournaledRef ref;
+    private int maxAttempts;
+    private int attempts;
+    private boolean inFlight;
+    private boolean sending;
+
+    /**
+     * Opens the journal and starts sending writes left there by the previous run. Each write is forced to the storage device before it is sent.
+     *
+     * @param journalFile File of the journal, will be created if not exists
+     * @param transport   Database distribution to which writes are sent
+     * @throws IOException If journal file can not be opened
+     */
+    public JournaledDatabase(File journalFile, DatabaseDistribution transport) throws IOException
+    {
+        this(journalFile, transport, true);
+    }
+
+    /**
+     * Opens the journal and starts sending writes left there by the previous run.
+     *
+     * @param journalFile File of the journal, will be created if not exists
+     * @param transport   Database distribution to which writes are sent
+     * @param forceWrites True if each write should be forced to the storage device, false to leave flushing to the operating system.<p>
+     *                    Without forcing writing is faster, but writes made just before system crash may be lost.
+     * @throws IOException If journal file can not be opened
+     * @see WriteJournal
+     */
+    public JournaledDatabase(File journalFile, DatabaseDistribution transport, boolean forceWrites) throws IOException
+    {
+        this.transport = transport;
+        journal = new WriteJournal(journalFile, forceWrites);
+        codec = new JournalCodec();
+        callbacks = new LongMap<>();
+        retryTask = new Timer.Task() {
+            @Override
+            public void run()
+            {
+                replay();
+            }
+        };
+        replay();
+    }
+
+    /**
+     * Sets how many times the same write may fail before it is dropped from the journal.
+     *
+     * @param maxAttempts Maximum number of attempts, 0 means that write is sent until it succeeds (default)
+     */
+    public synchronized void setMaxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return Number of writes which are not confirmed by the transport yet
+     */
+    public int getPendingWritesCount()
+    {
+        return journal.size();
+    }
+
+    /**
+     * Sends pending writes now, without waiting for the next retry.
+     */
+    public void flush()
+    {
+        retryTask.cancel();
+        replay();
+    }
+
+    /**
+     * Closes the journal file. Writes which are still there will be sent after the journal is opened again.
+     */
+    public void close()
+    {
+        retryTask.cancel();
+        journal.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Pending writes are sent immediately after the connection is established.
+     */
+    @Override
+    public void onConnect(final ConnectedListener connectedListener)
+    {
+        if (connectedListener == null) {
+            transport.onConnect(null);
+            return;
+        }
+        transport.onConnect(new ConnectedListener() {
+            @Override
+            public void onConnect()
+            {
+                flush();
+                connectedListener.onConnect();
+            }
+
+            @Override
+            public void onDisconnect()
+            {
+                connectedListener.onDisconnect();
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseDistribution inReference(String databasePath)
+    {
+        ref = (JournaledRef) ref(databasePath);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseRef ref(String databasePath)
+    {
+        return new JournaledRef(this, transport.ref(databasePath));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value)
+    {
+        ref().setValue(value);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value, CompleteCallback completeCallback)
+    {
+        ref().setValue(value, completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void readValue(Class<T> dataType, DataCallback<R> callback)
+    {
+        ref().readValue(dataType, callback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void readValue(Class<T> dataType, ElementCallback<R> callback)
+    {
+        ref().readValue(dataType, callback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<R> listener)
+    {
+        ListenerRegistration registration = ref().onDataChange(dataType, listener);
+        terminateOperation();
+        return registration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events)
+    {
+        ListenerRegistration registration = ref().onChildChange(dataType, listener, events);
+        terminateOperation();
+        return registration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseDistribution push()
+    {
+        ref = ref().push();
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue()
+    {
+        ref().removeValue();
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue(CompleteCallback completeCallback)
+    {
+        ref().removeValue(completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data)
+    {
+        ref().updateChildren(data);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data, CompleteCallback completeCallback)
+    {
+        ref().updateChildren(data, completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, CompleteCallback completeCallback)
+    {
+        ref().transaction(dataType, transactionCallback, completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, TransactionPolicy transactionPolicy, CompleteCallback completeCallback)
+    {
+        ref().transaction(dataType, transactionCallback, transactionPolicy, completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setPersistenceEnabled(boolean enabled)
+    {
+        transport.setPersistenceEnabled(enabled);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDecodedValueCacheSize(long maxBytes)
+    {
+        transport.setDecodedValueCacheSize(maxBytes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCallbackDispatcher(CallbackDispatcher callbackDispatcher)
+    {
+        transport.setCallbackDispatcher(callbackDispatcher);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void keepSynced(boolean synced)
+    {
+        ref().keepSynced(synced);
+        terminateOperation();
+    }
+
+    /**
+     * Adds write to the journal and starts sending it if no other write is pending.
+     * <p>
+     * If journal can not be extended write is sent to the transport directly.
+     *
+     * @param operation        One of {@link WriteJournal#SET}, {@link WriteJournal#UPDATE}, {@link WriteJournal#REMOVE}
+     * @param databasePath     Database path
+     * @param value            Value of the write, may be null
+     * @param completeCallback Callback, may be null
+     */
+    void write(byte operation, String databasePath, Object value, CompleteCallback completeCallback)
+    {
+        String json = codec.toJson(value);
+        synchronized (this) {
+            try {
+                long sequence = journal.append(operation, databasePath, json);
+                if (completeCallback != null)
+                    callbacks.put(sequence, completeCallback);
+            } catch (IOException e) {
+                e.printStackTrace();
+                send(operation, databasePath, value, completeCallback);
+                return;
+            }
+        }
+        replay();
+    }
+
+    /**
+     * Sends the oldest write from the journal, and the next ones if transport confirms them immediately.
+     */
+    private void replay()
+    {
+        while (true) {
+            WriteJournal.Record record;
+            synchronized (this) {
+                if (inFlight || retryTask.isScheduled()) return;
+                record = journal.peek();
+                if (record == null) return;
+                inFlight = true;
+                sending = true;
+            }
+            send(record.getOperation(), record.getPath(), codec.fromJson(record.getValue()), new RecordCallback(record.getSequence()));
+            synchronized (this) {
+                sending = false;
+                if (inFlight) return;
+            }
+        }
+    }
+
+    /**
+     * @param operation        One of {@link WriteJournal#SET}, {@link WriteJournal#UPDATE}, {@link WriteJournal#REMOVE}
+     * @param databasePath     Database path
+     * @param value            Value of the write, may be null
+     * @param completeCallback Callback, may be null
+     */
+    @SuppressWarnings("unchecked")
+    private void send(byte operation, String databasePath, Object value, CompleteCallback completeCallback)
+    {
+        DatabaseRef transportRef = transport.ref(databasePath);
+        if (operation == WriteJournal.UPDATE) {
+            if (completeCallback != null)
+                transportRef.updateChildren((Map<String, Object>) value, completeCallback);
+            else
+                transportRef.updateChildren((Map<String, Object>) value);
+        } else if (operation == WriteJournal.REMOVE || value == null) {
+            if (completeCallback != null)
+                transportRef.removeValue(completeCallback);
+            else
+                transportRef.removeValue();
+        } else {
+            if (completeCallback != null)
+                transportRef.setValue(value, completeCallback);
+            else
+                transportRef.setValue(value);
+        }
+    }
+
+    /**
+     * Simple getter of {@link JournaledRef} which this {@link JournaledDatabase} instance will be deal with.
+     *
+     * @return Database reference handle. Every action will be deal with it.
+     * @throws DatabaseReferenceNotSetException It is thrown when user forgot to call {@link #inReference(String)}
+     */
+    private JournaledRef ref()
+    {
+        if (ref == null)
+            throw new DatabaseReferenceNotSetException("Please call GdxFIRDatabase#inReference() first.");
+        return ref;
+    }
+
+    /**
+     * Reset {@link #ref} to initial state.
+     * After each flow-terminate operation {@link #ref} should be reset the initial value,
+     * it forces the users to call {@link #inReference(String)} before each flow-terminate operation.
+     */
+    private void terminateOperation()
+    {
+        ref = null;
+    }
+
+    /**
+     * Receives result of the write sent by {@link #replay()}.
+     */
+    private class RecordCallback implements CompleteCallback
+    {
+
+        private final long sequence;
+
+        RecordCallback(long sequence)
+        {
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void onSuccess()
+        {
+            CompleteCallback completeCallback;
+            boolean resume;
+            synchronized (JournaledDatabase.this) {
+                journal.acknowledge(sequence);
+                completeCallback = callbacks.remove(sequence);
+                attempts = 0;
+                inFlight = false;
+                resume = !sending;
+            }
+            if (completeCallback != null)
+                completeCallback.onSuccess();
+            if (resume)
+                replay();
+        }
+
+        @Override
+        public void onError(Exception e)
+        {
+            CompleteCallback completeCallback = null;
+            boolean resume;
+            synchronized (JournaledDatabase.this) {
+                attempts++;
+                inFlight = false;
+                if (maxAttempts > 0 && attempts >= maxAttempts) {
+                    journal.acknowledge(sequence);
+                    completeCallback = callbacks.remove(sequence);
+                    attempts = 0;
+                    resume = !sending;
+                } else {
+                    float delay = Math.min(MIN_RETRY_DELAY * (1 << Math.min(attempts - 1, 16)), MAX_RETRY_DELAY);
+                    Timer.schedule(retryTask, delay);
+                    resume = false;
+                }
+            }
+            if (completeCallback != null)
+                completeCallback.onError(e);
+            if (resume)
+                replay();
+        }
+    }
+}
@@ -0,0 +1,414 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import java.util.Map;
+
+import mk.gdx.firebase.callbacks.BooleanCallback;
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.DoubleCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
+import mk.gdx.firebase.callbacks.LongCallback;
+import mk.gdx.firebase.callbacks.TransactionCallback;
+import mk.gdx.firebase.database.ChildEventType;
+import mk.gdx.firebase.database.DatabaseQuery;
+import mk.gdx.firebase.database.DatabaseRef;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.TransactionPolicy;
+import mk.gdx.firebase.listeners.BooleanChangeListener;
+import mk.gdx.firebase.listeners.ChildChangeListener;
+import mk.gdx.firebase.listeners.DataChangeListener;
+import mk.gdx.firebase.listeners.DoubleChangeListener;
+import mk.gdx.firebase.listeners.LongChangeListener;
+
+/**
+ * {@link DatabaseRef} of the {@link JournaledDatabase}.
+ * <p>
+ * Writes are added to the journal, everything else is delegated to the reference of the transport.
+ */
+class JournaledRef implements DatabaseRef
+{
+
+    private final JournaledDatabase database;
+    private final DatabaseRef transportRef;
+
+    /**
+     * @param database     Database which keeps the journal
+     * @param transportRef Reference of the transport with the same path
+     */
+    JournaledRef(JournaledDatabase database, DatabaseRef transportRef)
+    {
+        this.database = database;
+        this.transportRef = transportRef;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseRef child(String childPath)
+    {
+        return new JournaledRef(database, transportRef.child(childPath));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JournaledRef push()
+    {
+        return new JournaledRef(database, transportRef.push());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value)
+    {
+        setValue(value, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value, CompleteCallback completeCallback)
+    {
+        database.write(WriteJournal.SET, getPath(), value, completeCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue()
+    {
+        removeValue(null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue(CompleteCallback completeCallback)
+    {
+        database.write(WriteJournal.REMOVE, getPath(), null, completeCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data)
+    {
+        updateChildren(data, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data, CompleteCallback completeCallback)
+    {
+        database.write(WriteJournal.UPDATE, getPath(), data, completeCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Transactions need the current server value so they are not journaled.
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, CompleteCallback completeCallback)
+    {
+        transportRef.transaction(dataType, transactionCallback, completeCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Transactions need the current server value so they are not journaled.
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, TransactionPolicy transactionPolicy, CompleteCallback completeCallback)
+    {
+        transportRef.transaction(dataType, transactionCallback, transactionPolicy, completeCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getPath()
+    {
+        return transportRef.getPath();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getQueryId()
+    {
+        return transportRef.getQueryId();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByChild(String childPath)
+    {
+        return transportRef.orderByChild(childPath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByKey()
+    {
+        return transportRef.orderByKey();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByValue()
+    {
+        return transportRef.orderByValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery limitToFirst(int limit)
+    {
+        return transportRef.limitToFirst(limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery limitToLast(int limit)
+    {
+        return transportRef.limitToLast(limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(String value)
+    {
+        return transportRef.startAt(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(double value)
+    {
+        return transportRef.startAt(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(boolean value)
+    {
+        return transportRef.startAt(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(String value)
+    {
+        return transportRef.endAt(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(double value)
+    {
+        return transportRef.endAt(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(boolean value)
+    {
+        return transportRef.endAt(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(String value)
+    {
+        return transportRef.equalTo(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(double value)
+    {
+        return transportRef.equalTo(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(boolean value)
+    {
+        return transportRef.equalTo(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void readValue(Class<T> dataType, DataCallback<R> callback)
+    {
+        transportRef.readValue(dataType, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void readValue(Class<T> dataType, ElementCallback<R> callback)
+    {
+        transportRef.readValue(dataType, callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<R> listener)
+    {
+        return transportRef.onDataChange(dataType, listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events)
+    {
+        return transportRef.onChildChange(dataType, listener, events);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readLong(LongCallback callback)
+    {
+        transportRef.readLong(callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readDouble(DoubleCallback callback)
+    {
+        transportRef.readDouble(callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readBoolean(BooleanCallback callback)
+    {
+        transportRef.readBoolean(callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readString(DataCallback<String> callback)
+    {
+        transportRef.readString(callback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onLongChange(LongChangeListener listener)
+    {
+        return transportRef.onLongChange(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onDoubleChange(DoubleChangeListener listener)
+    {
+        return transportRef.onDoubleChange(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onBooleanChange(BooleanChangeListener listener)
+    {
+        return transportRef.onBooleanChange(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onStringChange(DataChangeListener<String> listener)
+    {
+        return transportRef.onStringChange(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void keepSynced(boolean synced)
+    {
+        transportRef.keepSynced(synced);
+    }
+}
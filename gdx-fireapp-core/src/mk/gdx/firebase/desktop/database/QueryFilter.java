@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ordering and filtering of the {@link InMemoryQuery}, immutable.
+ * <p>
+ * Values are ordered like in Firebase: null, false, true, numbers, strings and objects. Equal values are ordered by key.
+ */
+class QueryFilter
+{
+
+    /**
+     * Filter which keeps data untouched.
+     */
+    static final QueryFilter NONE = new QueryFilter(OrderBy.KEY, null, null, null, 0, 0);
+
+    private static final Object OBJECT = new Object();
+
+    private final OrderBy orderBy;
+    private final String[] childSegments;
+    private final Object start;
+    private final Object end;
+    private final int limitFirst;
+    private final int limitLast;
+
+    private QueryFilter(OrderBy orderBy, String[] childSegments, Object start, Object end, int limitFirst, int limitLast)
+    {
+        this.orderBy = orderBy;
+        this.childSegments = childSegments;
+        this.start = start;
+        this.end = end;
+        this.limitFirst = limitFirst;
+        this.limitLast = limitLast;
+    }
+
+    /**
+     * @param orderBy       Ordering
+     * @param childSegments Keys of the child path, only for {@link OrderBy#CHILD}
+     * @return New filter
+     */
+    QueryFilter orderBy(OrderBy orderBy, String[] childSegments)
+    {
+        return new QueryFilter(orderBy, childSegments, start, end, limitFirst, limitLast);
+    }
+
+    /**
+     * @param value Lower bound, inclusive
+     * @return New filter
+     */
+    QueryFilter startAt(Object value)
+    {
+        return new QueryFilter(orderBy, childSegments, value, end, limitFirst, limitLast);
+    }
+
+    /**
+     * @param value Upper bound, inclusive
+     * @return New filter
+     */
+    QueryFilter endAt(Object value)
+    {
+        return new QueryFilter(orderBy, childSegments, start, value, limitFirst, limitLast);
+    }
+
+    /**
+     * @param limit Maximum number of the first children
+     * @return New filter
+     */
+    QueryFilter limitToFirst(int limit)
+    {
+        return new QueryFilter(orderBy, childSegments, start, end, limit, limitLast);
+    }
+
+    /**
+     * @param limit Maximum number of the last children
+     * @return New filter
+     */
+    QueryFilter limitToLast(int limit)
+    {
+        return new QueryFilter(orderBy, childSegments, start, end, limitFirst, limit);
+    }
+
+    /**
+     * @return Ordering of this filter
+     */
+    OrderBy getOrderBy()
+    {
+        return orderBy;
+    }
+
+    /**
+     * @return True if filter keeps data untouched
+     */
+    boolean isEmpty()
+    {
+        return this == NONE;
+    }
+
+    /**
+     * Should be called under the lock of the {@link DataTree}.
+     *
+     * @param tree Tree of the node
+     * @param node Node, may be null
+     * @return Copy of the node data, if node has children only the matching ones are kept, in order of this filter
+     */
+    Object toData(DataTree tree, DataTree.Node node)
+    {
+        if (isEmpty() || node == null || node.children == null)
+            return tree.snapshot(node);
+        LinkedHashMap<String, DataTree.Node> children = children(node);
+        if (children.isEmpty())
+            return null;
+        Map<String, Object> data = new LinkedHashMap<>(children.size() * 4 / 3 + 1);
+        for (Map.Entry<String, DataTree.Node> entry : children.entrySet())
+            data.put(entry.getKey(), tree.snapshot(entry.getValue()));
+        return data;
+    }
+
+    /**
+     * Should be called under the lock of the {@link DataTree}.
+     *
+     * @param node Node, may be null
+     * @return Matching children of the node, in order of this filter
+     */
+    LinkedHashMap<String, DataTree.Node> children(DataTree.Node node)
+    {
+        LinkedHashMap<String, DataTree.Node> result = new LinkedHashMap<>();
+        if (node == null || node.children == null)
+            return result;
+        List<Map.Entry<String, DataTree.Node>> entries = new ArrayList<>(node.children.size());
+        for (Map.Entry<String, DataTree.Node> entry : node.children.entrySet()) {
+            if (inRange(entry))
+                entries.add(entry);
+        }
+        if (orderBy != OrderBy.KEY)
+            Collections.sort(entries, new EntryComparator());
+        int from = 0;
+        int to = entries.size();
+        if (limitFirst > 0)
+            to = Math.min(to, limitFirst);
+        if (limitLast > 0)
+            from = Math.max(from, to - limitLast);
+        for (int i = from; i < to; i++)
+            result.put(entries.get(i).getKey(), entries.get(i).getValue());
+        return result;
+    }
+
+    /**
+     * @param entry Child entry
+     * @return True if child is between {@link #start} and {@link #end}
+     */
+    private boolean inRange(Map.Entry<String, DataTree.Node> entry)
+    {
+        if (start == null && end == null)
+            return true;
+        if (orderBy == OrderBy.KEY) {
+            return (start == null || DataTree.compareKeys(entry.getKey(), start.toString()) >= 0)
+                    && (end == null || DataTree.compareKeys(entry.getKey(), end.toString()) <= 0);
+        }
+        Object value = sortValue(entry.getValue());
+        return (start == null || compareValues(value, start) >= 0) && (end == null || compareValues(value, end) <= 0);
+    }
+
+    /**
+     * @param child Child node
+     * @return Value by which child is ordered
+     */
+    private Object sortValue(DataTree.Node child)
+    {
+        DataTree.Node node = orderBy == OrderBy.CHILD ? DataTree.find(child, childSegments) : child;
+        if (node == null) return null;
+        return node.children != null ? OBJECT : node.getValue();
+    }
+
+    /**
+     * @param value Value, may be null
+     * @return Position of the value type in Firebase order
+     */
+    private static int rank(Object value)
+    {
+        if (value == null) return 0;
+        if (value instanceof Boolean) return 1;
+        if (value instanceof Number) return 2;
+        if (value instanceof String) return 3;
+        return 4;
+    }
+
+    /**
+     * @param value1 Value
+     * @param value2 Value
+     * @return Comparison result in Firebase order
+     */
+    private static int compareValues(Object value1, Object value2)
+    {
+        int rank1 = rank(value1);
+        int rank2 = rank(value2);
+        if (rank1 != rank2) return rank1 < rank2 ? -1 : 1;
+        switch (rank1) {
+            case 1:
+                return ((Boolean) value1).compareTo((Boolean) value2);
+            case 2:
+                if (value1 instanceof Long && value2 instanceof Long)
+                    return ((Long) value1).compareTo((Long) value2);
+                return Double.compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+            case 3:
+                return ((String) value1).compareTo((String) value2);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Orders children by value, then by key.
+     */
+    private class EntryComparator implements Comparator<Map.Entry<String, DataTree.Node>>
+    {
+        @Override
+        public int compare(Map.Entry<String, DataTree.Node> o1, Map.Entry<String, DataTree.Node> o2)
+        {
+            int result = compareValues(sortValue(o1.getValue()), sortValue(o2.getValue()));
+            return result != 0 ? result : DataTree.compareKeys(o1.getKey(), o2.getKey());
+        }
+    }
+
+    /**
+     * Ordering of children.
+     */
+    enum OrderBy
+    {
+        KEY, VALUE, CHILD
+    }
+}
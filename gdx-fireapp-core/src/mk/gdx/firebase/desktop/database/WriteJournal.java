@@ -0,0 +1,343 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Append-only journal of database writes kept in a memory-mapped file.
+ * <p>
+ * File layout: 24 bytes header - magic number, reserved int, offset of the first not acknowledged record<p>
+ * and the next sequence number, then records one after another. The next sequence number survives acknowledging all records,<p>
+ * so sequence numbers are never reused, also after reopening the journal. Record is: length, sequence number, operation, path and optional JSON value.<p>
+ * Record length is written as the last step, after the end marker of the next record, so half-written record is never read.
+ * <p>
+ * Records are acknowledged in order of adding. Space of acknowledged records is reused when the journal becomes empty<p>
+ * or when not acknowledged records fit in the acknowledged part - they are moved to the beginning of the file then.
+ * <p>
+ * By default each appended record is forced to the storage device before {@link #append(byte, String, String)} returns.<p>
+ * Journal opened without forcing leaves flushing to the operating system - it is faster, but records appended just before<p>
+ * system crash or power loss may be lost. Acknowledgements are not forced, so acknowledged record may be replayed after crash.
+ * <p>
+ * All methods are synchronized.
+ */
+public class WriteJournal
+{
+    /**
+     * Operation of the record - {@code setValue}.
+     */
+    public static final byte SET = 1;
+    /**
+     * Operation of the record - {@code updateChildren}.
+     */
+    public static final byte UPDATE = 2;
+    /**
+     * Operation of the record - {@code removeValue}.
+     */
+    public static final byte REMOVE = 3;
+
+    private static final int MAGIC = 0x47465732;
+    private static final int HEADER_SIZE = 24;
+    private static final int HEAD_POSITION = 8;
+    private static final int SEQUENCE_POSITION = 16;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final boolean forceWrites;
+    private MappedByteBuffer buffer;
+    private int head;
+    private int tail;
+    private int count;
+    private long nextSequence;
+
+    /**
+     * Opens existing journal or creates the new one. Each appended record is forced to the storage device.
+     *
+     * @param journalFile File of the journal
+     * @throws IOException If file can not be opened or it is not a journal
+     */
+    public WriteJournal(File journalFile) throws IOException
+    {
+        this(journalFile, true);
+    }
+
+    /**
+     * Opens existing journal or creates the new one.
+     *
+     * @param journalFile File of the journal
+     * @param forceWrites True if each appended record should be forced to the storage device, false to leave flushing to the operating system
+     * @throws IOException If file can not be opened or it is not a journal
+     */
+    public WriteJournal(File journalFile, boolean forceWrites) throws IOException
+    {
+        this.forceWrites = forceWrites;
+        boolean exists = journalFile.exists() && journalFile.length() >= HEADER_SIZE;
+        file = new RandomAccessFile(journalFile, "rw");
+        channel = file.getChannel();
+        if (!exists)
+            file.setLength(INITIAL_CAPACITY);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+        if (exists) {
+            if (buffer.getInt(0) != MAGIC) {
+                close();
+                throw new IOException(journalFile + " is not a write journal.");
+            }
+            head = (int) buffer.getLong(HEAD_POSITION);
+            nextSequence = buffer.getLong(SEQUENCE_POSITION);
+            scan();
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.putLong(SEQUENCE_POSITION, 0);
+            setHead(HEADER_SIZE);
+            tail = HEADER_SIZE;
+            buffer.force();
+        }
+    }
+
+    /**
+     * Adds record at the end of the journal.
+     *
+     * @param operation One of {@link #SET}, {@link #UPDATE}, {@link #REMOVE}
+     * @param path      Database path
+     * @param value     JSON value, may be null
+     * @return Sequence number of the record
+     * @throws IOException If journal file can not be extended or forced
+     */
+    public synchronized long append(byte operation, String path, String value) throws IOException
+    {
+        byte[] pathBytes = path.getBytes(UTF_8);
+        byte[] valueBytes = value != null ? value.getBytes(UTF_8) : null;
+        int length = 8 + 1 + 4 + pathBytes.length + 4 + (valueBytes != null ? valueBytes.length : 0);
+        ensureCapacity(4 + length + 4);
+        long sequence = nextSequence++;
+        buffer.putLong(SEQUENCE_POSITION, nextSequence);
+        ByteBuffer record = buffer.duplicate();
+        record.position(tail + 4);
+        record.putLong(sequence);
+        record.put(operation);
+        record.putInt(pathBytes.length);
+        record.put(pathBytes);
+        record.putInt(valueBytes != null ? valueBytes.length : -1);
+        if (valueBytes != null)
+            record.put(valueBytes);
+        buffer.putInt(tail + 4 + length, 0);
+        buffer.putInt(tail, length);
+        tail += 4 + length;
+        count++;
+        if (forceWrites)
+            buffer.force();
+        return sequence;
+    }
+
+    /**
+     * @return The oldest not acknowledged record or null if journal is empty
+     */
+    public synchronized Record peek()
+    {
+        if (count == 0) return null;
+        return read(head);
+    }
+
+    /**
+     * Removes the oldest record if it has the given sequence number.
+     *
+     * @param sequence Sequence number of the oldest record
+     * @return True if record was removed
+     */
+    public synchronized boolean acknowledge(long sequence)
+    {
+        if (count == 0 || buffer.getLong(head + 4) != sequence)
+            return false;
+        int next = head + 4 + buffer.getInt(head);
+        count--;
+        if (count == 0) {
+            buffer.putInt(HEADER_SIZE, 0);
+            setHead(HEADER_SIZE);
+            tail = HEADER_SIZE;
+        } else {
+            setHead(next);
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of not acknowledged records
+     */
+    public synchronized int size()
+    {
+        return count;
+    }
+
+    /**
+     * Writes changes to the disk and closes the file.
+     */
+    public synchronized void close()
+    {
+        try {
+            buffer.force();
+            channel.close();
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Finds the end of the journal and the next sequence number, after the journal file was opened.
+     * <p>
+     * Sequence number stored in the header is kept unless records show the higher one.
+     */
+    private void scan()
+    {
+        int position = head;
+        long lastSequence = -1;
+        while (position + 4 <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + 4 + length > buffer.capacity())
+                break;
+            lastSequence = buffer.getLong(position + 4);
+            position += 4 + length;
+            count++;
+        }
+        tail = position;
+        nextSequence = Math.max(nextSequence, lastSequence + 1);
+    }
+
+    /**
+     * @param position Offset of the record
+     * @return Record
+     */
+    private Record read(int position)
+    {
+        ByteBuffer record = buffer.duplicate();
+        record.position(position + 4);
+        long sequence = record.getLong();
+        byte operation = record.get();
+        byte[] pathBytes = new byte[record.getInt()];
+        record.get(pathBytes);
+        int valueLength = record.getInt();
+        String value = null;
+        if (valueLength >= 0) {
+            byte[] valueBytes = new byte[valueLength];
+            record.get(valueBytes);
+            value = new String(valueBytes, UTF_8);
+        }
+        return new Record(sequence, operation, new String(pathBytes, UTF_8), value);
+    }
+
+    /**
+     * Makes room for {@code bytes} at the end of the journal - by moving records to the beginning or by extending the file.
+     *
+     * @param bytes Needed space
+     * @throws IOException If journal file can not be extended
+     */
+    private void ensureCapacity(int bytes) throws IOException
+    {
+        if (tail + bytes <= buffer.capacity())
+            return;
+        int live = tail - head;
+        // Records may be moved only over acknowledged space, so they are still valid if process dies while moving.
+        if (live + 4 <= head - HEADER_SIZE && HEADER_SIZE + live + bytes <= buffer.capacity()) {
+            ByteBuffer source = buffer.duplicate();
+            source.position(head).limit(tail);
+            ByteBuffer target = buffer.duplicate();
+            target.position(HEADER_SIZE);
+            target.put(source);
+            buffer.putInt(HEADER_SIZE + live, 0);
+            setHead(HEADER_SIZE);
+            tail = HEADER_SIZE + live;
+            return;
+        }
+        long capacity = buffer.capacity();
+        while (capacity < tail + bytes)
+            capacity *= 2;
+        if (capacity > Integer.MAX_VALUE)
+            throw new IOException("Write journal is full.");
+        buffer.force();
+        file.setLength(capacity);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * @param position Offset of the first not acknowledged record
+     */
+    private void setHead(int position)
+    {
+        head = position;
+        buffer.putLong(HEAD_POSITION, position);
+    }
+
+    /**
+     * One write kept by the journal.
+     */
+    public static class Record
+    {
+        private final long sequence;
+        private final byte operation;
+        private final String path;
+        private final String value;
+
+        private Record(long sequence, byte operation, String path, String value)
+        {
+            this.sequence = sequence;
+            this.operation = operation;
+            this.path = path;
+            this.value = value;
+        }
+
+        /**
+         * @return Sequence number of the record
+         */
+        public long getSequence()
+        {
+            return sequence;
+        }
+
+        /**
+         * @return One of {@link #SET}, {@link #UPDATE}, {@link #REMOVE}
+         */
+        public byte getOperation()
+        {
+            return operation;
+        }
+
+        /**
+         * @return Database path
+         */
+        public String getPath()
+        {
+            return path;
+        }
+
+        /**
+         * @return JSON value, may be null
+         */
+        public String getValue()
+        {
+            return value;
+        }
+    }
+}
@@ -20,7 +20,15 @@ import java.util.Map;
 
 import mk.gdx.firebase.callbacks.CompleteCallback;
 import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
 import mk.gdx.firebase.callbacks.TransactionCallback;
+import mk.gdx.firebase.callbacks.TransactionCompleteCallback;
+import mk.gdx.firebase.database.CallbackDispatcher;
+import mk.gdx.firebase.database.ChildEventType;
+import mk.gdx.firebase.database.DatabaseRef;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.TransactionPolicy;
+import mk.gdx.firebase.listeners.ChildChangeListener;
 import mk.gdx.firebase.listeners.ConnectedListener;
 import mk.gdx.firebase.listeners.DataChangeListener;
 
@@ -35,11 +43,17 @@ import mk.gdx.firebase.listeners.DataChangeListener;
  * <li>{@link #updateChildren(Map)}
  * <li>{@link #updateChildren(Map, CompleteCallback)}
  * <li>{@link #onDataChange(Class, DataChangeListener)}
+ * <li>{@link #onChildChange(Class, ChildChangeListener, ChildEventType...)}
  * <li>{@link #readValue(Class, DataCallback)}
+ * <li>{@link #readValue(Class, ElementCallback)}
  * <li>{@link #push()}
  * <li>{@link #transaction(Class, TransactionCallback, CompleteCallback)}
+ * <li>{@link #transaction(Class, TransactionCallback, TransactionPolicy, CompleteCallback)}
  * </ul><p>
  * If you do not do this {@code RuntimeException} will be thrown.
+ * <p>
+ * Path set by {@link #inReference(String)} is shared, so the flow above should be used only from one thread.<p>
+ * If you want to deal with database from many threads or you need to repeat same operation very often use {@link #ref(String)} instead.
  */
 public interface DatabaseDistribution
 {
@@ -61,6 +75,17 @@ public interface DatabaseDistribution
      */
     DatabaseDistribution inReference(String databasePath);
 
+    /**
+     * Creates immutable handle to the given database path.
+     * <p>
+     * Returned handle is thread-safe and can be reused as many times as you want, there is no need to call {@link #inReference(String)} before.
+     *
+     * @param databasePath Reference inside your database for ex. {@code "/users"}
+     * @return New handle for the given path, not null
+     * @see DatabaseRef
+     */
+    DatabaseRef ref(String databasePath);
+
     /**
      * Sets value for path given by {@code inReference(String)}.
      *
@@ -92,6 +117,20 @@ public interface DatabaseDistribution
      */
     <T, R extends T> void readValue(Class<T> dataType, DataCallback<R> callback);
 
+    /**
+     * Reads elements of list or map from path given by {@code inReference(String)} and gives them one by one to {@code ElementCallback}.
+     * <p>
+     * Element is decoded just before it is given, the callback can stop reading at any time.
+     *
+     * @param dataType Class of single element you want to retrieve
+     * @param callback Callback that handles elements
+     * @param <T>      Type of element you want to retrieve, associated with {@code dataType}
+     * @param <R>      More specific type of element you want to retrieve associated with {@code callback}
+     * @throws RuntimeException if {@link #inReference(String)} was not call before.
+     * @see ElementCallback
+     */
+    <T, R extends T> void readValue(Class<T> dataType, ElementCallback<R> callback);
+
     /**
      * Handles value changes for path given by {@code inReference(String)} and gives response by {@code DataChangeListener}.
      * <p>
@@ -101,10 +140,30 @@ public interface DatabaseDistribution
      * @param listener Listener, may by null - if null all listeners for specified database reference will be removed.
      * @param <T>      Type of data you want to retrieve, associated with {@code dataType} for ex. {@code List.class}
      * @param <R>      More specific type of data you want to retrieve associated with {@code listener} - needed because of nested generic types for ex. {@code List<User>}
+     * @return Handle which detaches only the given {@code listener}, null if {@code listener} was null
      * @throws RuntimeException if {@link #inReference(String)} was not call before.
      * @see DataChangeListener
+     * @see ListenerRegistration
+     */
+    <T, R extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<R> listener);
+
+    /**
+     * Handles changes of single children for path given by {@code inReference(String)} and gives response by {@code ChildChangeListener}.
+     * <p>
+     * Use it instead of {@link #onDataChange(Class, DataChangeListener)} for big lists - only changed child is delivered.<p>
+     * Remember to set database reference earlier by calling the {@link #inReference(String)} method.
+     *
+     * @param dataType Class of child you want to retrieve
+     * @param listener Listener, may by null - if null all child listeners for specified database reference will be removed.
+     * @param events   Types of events which should be delivered to the {@code listener}, all types if empty
+     * @param <T>      Type of child data you want to retrieve, associated with {@code dataType}
+     * @param <R>      More specific type of child data you want to retrieve associated with {@code listener}
+     * @return Handle which detaches only the given {@code listener}, null if {@code listener} was null
+     * @throws RuntimeException if {@link #inReference(String)} was not call before.
+     * @see ChildChangeListener
+     * @see ListenerRegistration
      */
-    <T, R extends T> void onDataChange(Class<T> dataType, DataChangeListener<R> listener);
+    <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events);
 
     /**
      * Creates new object inside database and return {@code this instance} with reference to it set by {@code DatabaseDistribution#inReference()}
@@ -167,13 +226,28 @@ public interface DatabaseDistribution
      *
      * @param dataType            Type of data you want to get.
      * @param transactionCallback Callback called when transaction is complete.
-     * @param completeCallback    Can be null
+     * @param completeCallback    Can be null. If it is {@link TransactionCompleteCallback} metrics of the transaction will be given as well.
      * @throws RuntimeException if {@link #inReference(String)} was not call before call this method.
      * @see CompleteCallback
      * @see TransactionCallback
      */
     <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, CompleteCallback completeCallback);
 
+    /**
+     * Same as {@link #transaction(Class, TransactionCallback, CompleteCallback)} but with control over retries.
+     * <p>
+     * Remember to set database reference earlier by calling the {@link #inReference(String)} method.
+     *
+     * @param dataType            Type of data you want to get.
+     * @param transactionCallback Callback called when transaction is complete.
+     * @param transactionPolicy   Decides when transaction should be aborted, may be null
+     * @param completeCallback    Can be null. If it is {@link TransactionCompleteCallback} metrics of the transaction will be given as well.<p>
+     *                            Aborted transaction is reported by {@code onError} with {@link mk.gdx.firebase.exceptions.TransactionAbortedException}.
+     * @throws RuntimeException if {@link #inReference(String)} was not call before call this method.
+     * @see TransactionPolicy
+     */
+    <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, TransactionPolicy transactionPolicy, CompleteCallback completeCallback);
+
     /**
      * Keeps your data for offline usage.
      * <p>
@@ -183,6 +257,27 @@ public interface DatabaseDistribution
      */
     void setPersistenceEnabled(boolean enabled);
 
+    /**
+     * Enables cache of objects decoded by {@code readValue} and {@code onDataChange}.
+     * <p>
+     * When data of a path has not changed since the last delivery, previously decoded object is passed again instead of mapping the snapshot one more time.<p>
+     * Decoded objects are shared then - they should not be modified. Cache is disabled by default.
+     *
+     * @param maxBytes Maximum estimated size of cached data in bytes, 0 disables the cache and releases its memory
+     * @see mk.gdx.firebase.database.DecodedValueCache
+     */
+    void setDecodedValueCacheSize(long maxBytes);
+
+    /**
+     * Sets dispatcher which decides on which thread callbacks and listeners are called.
+     * <p>
+     * Applies to callbacks and listeners given after this call. By default they are called immediately on the Firebase SDK thread.
+     *
+     * @param callbackDispatcher Dispatcher, not null
+     * @see CallbackDispatcher
+     */
+    void setCallbackDispatcher(CallbackDispatcher callbackDispatcher);
+
     /**
      * Keeps data fresh.
      * <p>
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.exceptions;
+
+/**
+ * Passes to error handler of primitive value callback or listener when there is no value at the read path.
+ * <p>
+ * Allows to tell missing value from {@code 0} or {@code false} stored in the database.
+ */
+public class AbsentValueException extends Exception
+{
+    public AbsentValueException(String msg)
+    {
+        super(msg);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.exceptions;
+
+/**
+ * Passes to {@code CompleteCallback#onError} when transaction has finished without commit.
+ */
+public class TransactionAbortedException extends Exception
+{
+    private final boolean abortedByPolicy;
+
+    /**
+     * @param abortedByPolicy True if transaction was aborted by {@code TransactionPolicy}
+     */
+    public TransactionAbortedException(boolean abortedByPolicy)
+    {
+        super(abortedByPolicy ? "Transaction aborted by TransactionPolicy." : "Transaction aborted, nothing was committed.");
+        this.abortedByPolicy = abortedByPolicy;
+    }
+
+    /**
+     * @return True if transaction was aborted by {@code TransactionPolicy}
+     */
+    public boolean isAbortedByPolicy()
+    {
+        return abortedByPolicy;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.helpers;
+
+import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.JsonWriter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mk.gdx.firebase.database.ValueMapper;
+import mk.gdx.firebase.database.ValueMappers;
+
+/**
+ * Transforms values given by user into Firebase-like data types and back.
+ * <p>
+ * Firebase-like data types are: {@code Map<String, Object>}, {@code List<Object>}, {@code String}, {@code Long}, {@code Double} and {@code Boolean}.<p>
+ * Objects which have {@link ValueMapper} are transformed by it, other objects are transformed by libGDX {@link Json}, so their public fields are stored.
+ */
+public class DataConversionHelper
+{
+
+    private static final ThreadLocal<Json> JSON = new ThreadLocal<Json>() {
+        @Override
+        protected Json initialValue()
+        {
+            Json json = new Json(JsonWriter.OutputType.json);
+            json.setTypeName(null);
+            json.setUsePrototypes(false);
+            json.setIgnoreUnknownFields(true);
+            return json;
+        }
+    };
+
+    private DataConversionHelper()
+    {
+
+    }
+
+    /**
+     * @param value Any value which can be stored in the database, may be null
+     * @return Firebase-like representation of the {@code value}
+     */
+    @SuppressWarnings("unchecked")
+    public static Object toData(Object value)
+    {
+        if (value == null || value instanceof String || value instanceof Boolean || value instanceof Long || value instanceof Double) {
+            return value;
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value instanceof Character || value instanceof Enum) {
+            return value.toString();
+        } else if (value instanceof Map) {
+            Map<String, Object> map = new HashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object data = toData(entry.getValue());
+                if (data != null)
+                    map.put(String.valueOf(entry.getKey()), data);
+            }
+            return map;
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object element : (List<?>) value)
+                list.add(toData(element));
+            return list;
+        } else if (value instanceof Object[]) {
+            List<Object> list = new ArrayList<>();
+            for (Object element : (Object[]) value)
+                list.add(toData(element));
+            return list;
+        }
+        ValueMapper<Object> mapper = (ValueMapper<Object>) ValueMappers.get(value.getClass());
+        if (mapper != null)
+            return toData(mapper.toMap(value));
+        return fromJsonValue(new JsonReader().parse(JSON.get().toJson(value)));
+    }
+
+    /**
+     * @param data     Firebase-like data, may be null
+     * @param dataType Wanted type
+     * @return {@code data} as instance of {@code dataType}, null if {@code data} was null
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T toType(Object data, Class<T> dataType)
+    {
+        if (data == null) {
+            return null;
+        } else if (dataType.isInstance(data)) {
+            return (T) data;
+        } else if (dataType == List.class && data instanceof Map) {
+            return (T) new ArrayList<>(((Map<?, ?>) data).values());
+        } else if (data instanceof Number) {
+            Number number = (Number) data;
+            if (dataType == Long.class || dataType == long.class) return (T) Long.valueOf(number.longValue());
+            if (dataType == Integer.class || dataType == int.class) return (T) Integer.valueOf(number.intValue());
+            if (dataType == Double.class || dataType == double.class) return (T) Double.valueOf(number.doubleValue());
+            if (dataType == Float.class || dataType == float.class) return (T) Float.valueOf(number.floatValue());
+        }
+        if (dataType == String.class)
+            return (T) data.toString();
+        ValueMapper<T> mapper = ValueMappers.get(dataType);
+        if (mapper != null && data instanceof Map)
+            return mapper.fromMap((Map<String, Object>) data);
+        return JSON.get().readValue(dataType, null, toJsonValue(data));
+    }
+
+    /**
+     * @param jsonValue Parsed JSON
+     * @return Firebase-like representation of the {@code jsonValue}
+     */
+    public static Object fromJsonValue(JsonValue jsonValue)
+    {
+        switch (jsonValue.type()) {
+            case object:
+                Map<String, Object> map = new HashMap<>();
+                for (JsonValue child = jsonValue.child; child != null; child = child.next) {
+                    Object data = fromJsonValue(child);
+                    if (data != null)
+                        map.put(child.name, data);
+                }
+                return map;
+            case array:
+                List<Object> list = new ArrayList<>();
+                for (JsonValue child = jsonValue.child; child != null; child = child.next)
+                    list.add(fromJsonValue(child));
+                return list;
+            case stringValue:
+                return jsonValue.asString();
+            case doubleValue:
+                return jsonValue.asDouble();
+            case longValue:
+                return jsonValue.asLong();
+            case booleanValue:
+                return jsonValue.asBoolean();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param data Firebase-like data
+     * @return JSON tree of the {@code data}, ready to be read by {@link Json}
+     */
+    private static JsonValue toJsonValue(Object data)
+    {
+        if (data instanceof Map) {
+            JsonValue object = new JsonValue(JsonValue.ValueType.object);
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) data).entrySet())
+                object.addChild(String.valueOf(entry.getKey()), toJsonValue(entry.getValue()));
+            return object;
+        } else if (data instanceof List) {
+            JsonValue array = new JsonValue(JsonValue.ValueType.array);
+            for (Object element : (List<?>) data)
+                array.addChild(toJsonValue(element));
+            return array;
+        } else if (data instanceof String) {
+            return new JsonValue((String) data);
+        } else if (data instanceof Boolean) {
+            return new JsonValue((Boolean) data);
+        } else if (data instanceof Long) {
+            return new JsonValue((Long) data);
+        } else if (data instanceof Number) {
+            return new JsonValue(((Number) data).doubleValue());
+        }
+        return new JsonValue(JsonValue.ValueType.nullValue);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.helpers;
+
+import com.badlogic.gdx.utils.reflect.ClassReflection;
+import com.badlogic.gdx.utils.reflect.Field;
+import com.badlogic.gdx.utils.reflect.ReflectionException;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Helper for estimating how much space database value takes when it is serialized to JSON.
+ * <p>
+ * Estimation is rough - it is good enough for payload limits and cache weights, but it should not be treated as exact value.
+ */
+public class DataSizeHelper
+{
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * Estimates JSON size of the given value.
+     * <p>
+     * Maps, collections, strings, numbers and booleans are measured directly, other objects are measured by their non-static fields.
+     *
+     * @param value Any database value, may be null
+     * @return Estimated size in bytes
+     */
+    public static long estimateBytes(Object value)
+    {
+        return estimateBytes(value, 0);
+    }
+
+    private static long estimateBytes(Object value, int depth)
+    {
+        if (value == null) {
+            return 4;
+        } else if (value instanceof String) {
+            return ((String) value).length() + 2;
+        } else if (value instanceof Number || value instanceof Boolean) {
+            return 8;
+        } else if (depth >= MAX_DEPTH) {
+            return 0;
+        } else if (value instanceof Map) {
+            long size = 2;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + 4 + estimateBytes(entry.getValue(), depth + 1);
+            }
+            return size;
+        } else if (value instanceof Collection) {
+            long size = 2;
+            for (Object element : (Collection<?>) value) {
+                size += estimateBytes(element, depth + 1) + 1;
+            }
+            return size;
+        }
+        long size = 2;
+        Class<?> type = value.getClass();
+        while (type != null && type != Object.class) {
+            for (Field field : ClassReflection.getDeclaredFields(type)) {
+                if (field.isStatic() || field.isTransient() || field.isSynthetic()) continue;
+                try {
+                    field.setAccessible(true);
+                    size += field.getName().length() + 4 + estimateBytes(field.get(value), depth + 1);
+                } catch (ReflectionException e) {
+                    // Field is skipped
+                }
+            }
+            type = type.getSuperclass();
+        }
+        return size;
+    }
+}
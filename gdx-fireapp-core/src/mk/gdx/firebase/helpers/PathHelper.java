@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.helpers;
+
+/**
+ * Helper for dealing with database path strings.
+ */
+public class PathHelper
+{
+    /**
+     * Removes leading and trailing slashes.
+     *
+     * @param databasePath Database path, for ex. {@code "/users/abc/"}
+     * @return Path without leading and trailing slashes, for ex. {@code "users/abc"}. Root path is returned as empty string.
+     */
+    public static String normalize(String databasePath)
+    {
+        int start = 0;
+        int end = databasePath.length();
+        while (start < end && databasePath.charAt(start) == '/') start++;
+        while (end > start && databasePath.charAt(end - 1) == '/') end--;
+        return databasePath.substring(start, end);
+    }
+
+    /**
+     * Checks if one normalized path lies inside the other.
+     *
+     * @param ancestor   Normalized path, see {@link #normalize(String)}
+     * @param descendant Normalized path, see {@link #normalize(String)}
+     * @return True if {@code descendant} is a strict child location of {@code ancestor}
+     */
+    public static boolean isAncestor(String ancestor, String descendant)
+    {
+        if (ancestor.length() >= descendant.length()) return false;
+        if (ancestor.isEmpty()) return true;
+        return descendant.startsWith(ancestor) && descendant.charAt(ancestor.length()) == '/';
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mk.gdx.firebase.database.ValueMapper;
+import mk.gdx.firebase.database.ValueMappers;
+
+/**
+ * Converts values for {@link ValueMapper} implementations - mostly those generated for {@link mk.gdx.firebase.database.MappedValue} classes.
+ * <p>
+ * Numbers read from the database may come as any {@link Number} type depending on platform, they are narrowed here to the field type.
+ */
+public class ValueMapperHelper
+{
+
+    private ValueMapperHelper()
+    {
+
+    }
+
+    /**
+     * @param data Number read from the database, may be null
+     * @return {@code data} as {@code int}, 0 if it is not a number
+     */
+    public static int toInt(Object data)
+    {
+        return data instanceof Number ? ((Number) data).intValue() : 0;
+    }
+
+    /**
+     * @param data Number read from the database, may be null
+     * @return {@code data} as {@code long}, 0 if it is not a number
+     */
+    public static long toLong(Object data)
+    {
+        return data instanceof Number ? ((Number) data).longValue() : 0L;
+    }
+
+    /**
+     * @param data Number read from the database, may be null
+     * @return {@code data} as {@code short}, 0 if it is not a number
+     */
+    public static short toShort(Object data)
+    {
+        return data instanceof Number ? ((Number) data).shortValue() : 0;
+    }
+
+    /**
+     * @param data Number read from the database, may be null
+     * @return {@code data} as {@code byte}, 0 if it is not a number
+     */
+    public static byte toByte(Object data)
+    {
+        return data instanceof Number ? ((Number) data).byteValue() : 0;
+    }
+
+    /**
+     * @param data Number read from the database, may be null
+     * @return {@code data} as {@code float}, 0 if it is not a number
+     */
+    public static float toFloat(Object data)
+    {
+        return data instanceof Number ? ((Number) data).floatValue() : 0f;
+    }
+
+    /**
+     * @param data Number read from the database, may be null
+     * @return {@code data} as {@code double}, 0 if it is not a number
+     */
+    public static double toDouble(Object data)
+    {
+        return data instanceof Number ? ((Number) data).doubleValue() : 0.0;
+    }
+
+    /**
+     * @param data Boolean or number read from the database, may be null
+     * @return {@code data} as {@code boolean}, false if it is neither boolean nor number
+     */
+    public static boolean toBoolean(Object data)
+    {
+        if (data instanceof Boolean) return (Boolean) data;
+        return data instanceof Number && ((Number) data).intValue() != 0;
+    }
+
+    /**
+     * @param data String read from the database, may be null
+     * @return First character of the {@code data}, 0 if it is null or empty
+     */
+    public static char toChar(Object data)
+    {
+        return data != null && data.toString().length() > 0 ? data.toString().charAt(0) : 0;
+    }
+
+    /**
+     * @param data Value read from the database, may be null
+     * @param type Wanted type: wrapper of primitive, {@code String}, enum, class with {@link ValueMapper} or any type which {@code data} already has
+     * @param <T>  Wanted type
+     * @return {@code data} as instance of {@code type}, null if {@code data} was null
+     * @throws IllegalArgumentException If {@code data} can not be transformed to {@code type}
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T toType(Object data, Class<T> type)
+    {
+        if (data == null) return null;
+        if (type.isInstance(data)) return (T) data;
+        if (data instanceof Number) {
+            if (type == Integer.class) return (T) Integer.valueOf(toInt(data));
+            if (type == Long.class) return (T) Long.valueOf(toLong(data));
+            if (type == Double.class) return (T) Double.valueOf(toDouble(data));
+            if (type == Float.class) return (T) Float.valueOf(toFloat(data));
+            if (type == Short.class) return (T) Short.valueOf(toShort(data));
+            if (type == Byte.class) return (T) Byte.valueOf(toByte(data));
+            if (type == Boolean.class) return (T) Boolean.valueOf(toBoolean(data));
+        }
+        if (type == String.class) return (T) data.toString();
+        if (type == Character.class) return (T) Character.valueOf(toChar(data));
+        if (type.isEnum()) return (T) toEnum(data, type);
+        if (data instanceof Map) {
+            ValueMapper<T> mapper = ValueMappers.get(type);
+            if (mapper != null)
+                return mapper.fromMap((Map<String, Object>) data);
+        }
+        throw new IllegalArgumentException(data.getClass().getName() + " can not be transformed to " + type.getName());
+    }
+
+    /**
+     * @param data        Value read from the database, list or map with index keys - may be null
+     * @param elementType Type of elements, see {@link #toType(Object, Class)}
+     * @param <T>         Type of elements
+     * @return New list, null if {@code data} was null
+     */
+    public static <T> ArrayList<T> toList(Object data, Class<T> elementType)
+    {
+        if (data == null) return null;
+        Iterable<?> elements = data instanceof Map ? ((Map<?, ?>) data).values() : (List<?>) data;
+        ArrayList<T> list = new ArrayList<>();
+        for (Object element : elements)
+            list.add(toType(element, elementType));
+        return list;
+    }
+
+    /**
+     * @param data      Value read from the database, may be null
+     * @param valueType Type of map values, see {@link #toType(Object, Class)}
+     * @param <T>       Type of map values
+     * @return New map, null if {@code data} was null
+     */
+    public static <T> HashMap<String, T> toMap(Object data, Class<T> valueType)
+    {
+        if (data == null) return null;
+        HashMap<String, T> map = new HashMap<>();
+        if (data instanceof List) {
+            List<?> list = (List<?>) data;
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) != null)
+                    map.put(String.valueOf(i), toType(list.get(i), valueType));
+            }
+            return map;
+        }
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) data).entrySet())
+            map.put(String.valueOf(entry.getKey()), toType(entry.getValue(), valueType));
+        return map;
+    }
+
+    /**
+     * Transforms objects which have {@link ValueMapper} to maps, also inside lists and maps.
+     * <p>
+     * Enums are transformed to their names. Lists and maps are copied only if some of their elements were transformed.
+     *
+     * @param value Value to store in the database, may be null
+     * @return Value which can be passed to the platform database SDK
+     */
+    @SuppressWarnings("unchecked")
+    public static Object toData(Object value)
+    {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean)
+            return value;
+        if (value instanceof Enum)
+            return ((Enum<?>) value).name();
+        if (value instanceof Character)
+            return value.toString();
+        if (value instanceof List) {
+            List<Object> list = (List<Object>) value;
+            List<Object> result = null;
+            for (int i = 0; i < list.size(); i++) {
+                Object element = list.get(i);
+                Object data = toData(element);
+                if (data != element && result == null)
+                    result = new ArrayList<>(list.subList(0, i));
+                if (result != null)
+                    result.add(data);
+            }
+            return result != null ? result : list;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            Map<Object, Object> result = null;
+            for (Map.Entry<Object, Object> entry : map.entrySet()) {
+                Object data = toData(entry.getValue());
+                if (data != entry.getValue() && result == null)
+                    result = new HashMap<>(map);
+                if (result != null)
+                    result.put(entry.getKey(), data);
+            }
+            return result != null ? result : map;
+        }
+        ValueMapper<Object> mapper = (ValueMapper<Object>) ValueMappers.get(value.getClass());
+        return mapper != null ? mapper.toMap(value) : value;
+    }
+
+    /**
+     * Same as {@link #toData(Object)}, for {@code updateChildren} data.
+     *
+     * @param data Paths with values to store in the database, may be null
+     * @return Map which can be passed to the platform database SDK
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> toData(Map<String, Object> data)
+    {
+        return (Map<String, Object>) toData((Object) data);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Enum<E>> E toEnum(Object data, Class<?> type)
+    {
+        return Enum.valueOf((Class<E>) type, data.toString());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.listeners;
+
+/**
+ * Listens for changes of single children inside Firebase database list.
+ * <p>
+ * Unlike {@link DataChangeListener} only the child which was changed is delivered and deserialized,<p>
+ * so the work done per update does not depend on list size.
+ *
+ * @param <T> Type of child data you expecting to get
+ */
+public interface ChildChangeListener<T>
+{
+    /**
+     * Calls when new child was added.
+     *
+     * @param key              Key of the child
+     * @param value            Value of the child
+     * @param previousChildKey Key of the previous child in current ordering, null if it is the first child
+     */
+    void onChildAdded(String key, T value, String previousChildKey);
+
+    /**
+     * Calls when data of existing child was changed.
+     *
+     * @param key              Key of the child
+     * @param value            New value of the child
+     * @param previousChildKey Key of the previous child in current ordering, null if it is the first child
+     */
+    void onChildChanged(String key, T value, String previousChildKey);
+
+    /**
+     * Calls when child was removed.
+     *
+     * @param key   Key of the child
+     * @param value Value of the child before removal
+     */
+    void onChildRemoved(String key, T value);
+
+    /**
+     * Calls when child changed its position in current ordering.
+     *
+     * @param key              Key of the child
+     * @param value            Value of the child
+     * @param previousChildKey Key of the new previous child in current ordering, null if it is the first child now
+     */
+    void onChildMoved(String key, T value, String previousChildKey);
+
+    /**
+     * Calls when something goes wrong.
+     *
+     * @param e Exception with description what was wrong.
+     */
+    void onCanceled(Exception e);
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotDiskCacheTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void get_returnsValueWrittenBeforeReopen() throws IOException
+    {
+        File file = new File(folder.getRoot(), "snapshots");
+        SnapshotDiskCache cache = new SnapshotDiskCache(file);
+        Map<String, Object> config = new HashMap<>();
+        config.put("name", "test");
+        config.put("level", 3L);
+        config.put("ratio", 0.5);
+        config.put("enabled", true);
+        config.put("tags", Arrays.asList("a", "b"));
+        cache.put("/config", config);
+        cache.close();
+
+        cache = new SnapshotDiskCache(file);
+        Map<?, ?> value = cache.get("/config", Map.class);
+        assertEquals("test", value.get("name"));
+        assertEquals(3L, ((Number) value.get("level")).longValue());
+        assertEquals(0.5, ((Number) value.get("ratio")).doubleValue(), 0);
+        assertEquals(true, value.get("enabled"));
+        assertEquals(Arrays.asList("a", "b"), value.get("tags"));
+        cache.close();
+    }
+
+    @Test
+    public void put_returnsFalseIfValueHasNotChanged() throws IOException
+    {
+        SnapshotDiskCache cache = new SnapshotDiskCache(new File(folder.getRoot(), "snapshots"));
+
+        assertTrue(cache.put("/score", 10L));
+        assertFalse(cache.put("/score", 10L));
+        assertTrue(cache.put("/score", 11L));
+        assertEquals(Long.valueOf(11L), cache.get("/score", Long.class));
+        cache.close();
+    }
+
+    @Test
+    public void put_withNullRemovesValue() throws IOException
+    {
+        SnapshotDiskCache cache = new SnapshotDiskCache(new File(folder.getRoot(), "snapshots"));
+        cache.put("/score", 10L);
+
+        cache.put("/score", null);
+
+        assertNull(cache.get("/score", Long.class));
+        assertEquals(0, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void remove_removesAncestorsAndDescendants() throws IOException
+    {
+        SnapshotDiskCache cache = new SnapshotDiskCache(new File(folder.getRoot(), "snapshots"));
+        cache.put("/a", "parent");
+        cache.put("/a/b", "path");
+        cache.put("/a/b/c", "child");
+        cache.put("/a/d", "sibling");
+
+        cache.remove("/a/b");
+
+        assertNull(cache.get("/a", String.class));
+        assertNull(cache.get("/a/b", String.class));
+        assertNull(cache.get("/a/b/c", String.class));
+        assertEquals("sibling", cache.get("/a/d", String.class));
+        cache.close();
+    }
+
+    @Test
+    public void isCachedPath_matchesAddedPathsAndTheirChildren() throws IOException
+    {
+        SnapshotDiskCache cache = new SnapshotDiskCache(new File(folder.getRoot(), "snapshots"));
+
+        cache.addPath("/config");
+
+        assertTrue(cache.isCachedPath("/config"));
+        assertTrue(cache.isCachedPath("/config/levels"));
+        assertFalse(cache.isCachedPath("/configs"));
+        assertFalse(cache.isCachedPath("/"));
+        cache.close();
+    }
+
+    @Test
+    public void open_keepsOnlyTheNewestValueOfPath() throws IOException
+    {
+        File file = new File(folder.getRoot(), "snapshots");
+        SnapshotDiskCache cache = new SnapshotDiskCache(file);
+        for (long i = 0; i < 1000; i++)
+            cache.put("/counter", i);
+        cache.close();
+
+        cache = new SnapshotDiskCache(file);
+        assertEquals(1, cache.size());
+        assertEquals(Long.valueOf(999L), cache.get("/counter", Long.class));
+        List<?> empty = cache.get("/missing", List.class);
+        assertNull(empty);
+        cache.close();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.database;
+
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Gdx;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.desktop.database.InMemoryDatabase;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WriteCoalescerTest
+{
+    private InMemoryDatabase database;
+    private WriteCoalescer coalescer;
+
+    @BeforeClass
+    public static void setUpApplication()
+    {
+        // Timer needs application, runnables are run at once.
+        Gdx.app = (Application) Proxy.newProxyInstance(WriteCoalescerTest.class.getClassLoader(), new Class[]{Application.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+            {
+                if (method.getName().equals("postRunnable"))
+                    ((Runnable) args[0]).run();
+                return null;
+            }
+        });
+    }
+
+    @Before
+    public void setUp()
+    {
+        database = new InMemoryDatabase();
+        // Long window, so only explicit flushes are tested.
+        coalescer = new WriteCoalescer(database, 1000f);
+    }
+
+    @Test
+    public void setValue_keepsOnlyTheLastValueOfPath()
+    {
+        CountingCallback callback = new CountingCallback();
+
+        coalescer.setValue("/players/a/x", 1L, callback);
+        coalescer.setValue("/players/a/x", 2L, callback);
+
+        assertEquals(1, coalescer.getPendingCount());
+        assertNull(read("/players/a/x"));
+        coalescer.flush();
+        assertEquals(0, coalescer.getPendingCount());
+        assertEquals(2L, read("/players/a/x"));
+        assertEquals(2, callback.successes.get());
+    }
+
+    @Test
+    public void setValue_keepsSiblingPathsPending()
+    {
+        coalescer.setValue("/players/a/x", 1L, null);
+        coalescer.setValue("/players/a/y", 2L, null);
+
+        assertEquals(2, coalescer.getPendingCount());
+    }
+
+    @Test
+    public void setValue_flushesPendingWritesOfDescendants()
+    {
+        coalescer.setValue("/players/a/x", 1L, null);
+
+        coalescer.setValue("/players/a", 5L, null);
+
+        assertEquals(1, coalescer.getPendingCount());
+        assertEquals(1L, read("/players/a/x"));
+        coalescer.flush();
+        assertEquals(5L, read("/players/a"));
+    }
+
+    @Test
+    public void flushOverlapping_flushesAncestorsDescendantsAndSamePath()
+    {
+        coalescer.setValue("/players/a/x", 1L, null);
+        coalescer.flushOverlapping("/players/b");
+        assertEquals(1, coalescer.getPendingCount());
+
+        coalescer.flushOverlapping("/players");
+        assertEquals(0, coalescer.getPendingCount());
+
+        coalescer.setValue("/players/a/x", 1L, null);
+        coalescer.flushOverlapping("/players/a/x/z");
+        assertEquals(0, coalescer.getPendingCount());
+
+        coalescer.setValue("/players/a/x", 1L, null);
+        coalescer.flushOverlapping("/players/a/x");
+        assertEquals(0, coalescer.getPendingCount());
+    }
+
+    @Test
+    public void flushOverlapping_doesNotTreatPathPrefixAsAncestor()
+    {
+        coalescer.setValue("/players/ab", 1L, null);
+
+        coalescer.flushOverlapping("/players/a");
+
+        assertEquals(1, coalescer.getPendingCount());
+    }
+
+    private Object read(String path)
+    {
+        final AtomicReference<Object> result = new AtomicReference<>();
+        database.ref(path).readValue(Long.class, new DataCallback<Long>() {
+            @Override
+            public void onData(Long data)
+            {
+                result.set(data);
+            }
+
+            @Override
+            public void onError(Exception e)
+            {
+                result.set(null);
+            }
+        });
+        return result.get();
+    }
+
+    private static class CountingCallback implements CompleteCallback
+    {
+        private final AtomicInteger successes = new AtomicInteger();
+
+        @Override
+        public void onSuccess()
+        {
+            successes.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Exception e)
+        {
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DataTreeTest
+{
+
+    @Test
+    public void set_createsMissingParents()
+    {
+        DataTree tree = new DataTree();
+
+        set(tree, "/users/abc/name", "John");
+
+        Map<?, ?> users = (Map<?, ?>) tree.get(tree.segments("/users"), QueryFilter.NONE);
+        assertEquals("John", ((Map<?, ?>) users.get("abc")).get("name"));
+    }
+
+    @Test
+    public void set_removesParentsLeftEmpty()
+    {
+        DataTree tree = new DataTree();
+        set(tree, "/users/abc/name", "John");
+
+        set(tree, "/users/abc/name", null);
+
+        assertNull(tree.get(tree.segments("/users"), QueryFilter.NONE));
+    }
+
+    @Test
+    public void set_writesAllPathsAtOnce()
+    {
+        DataTree tree = new DataTree();
+
+        tree.set(new String[][]{tree.segments("/a"), tree.segments("/b/c")}, new Object[]{1L, true});
+
+        assertEquals(1L, tree.get(tree.segments("/a"), QueryFilter.NONE));
+        assertEquals(true, tree.get(tree.segments("/b/c"), QueryFilter.NONE));
+    }
+
+    @Test
+    public void get_returnsListForSequentialIntegerKeys()
+    {
+        DataTree tree = new DataTree();
+        Map<String, Object> data = new HashMap<>();
+        data.put("1", "b");
+        data.put("0", "a");
+
+        set(tree, "/letters", data);
+
+        assertEquals(Arrays.asList("a", "b"), tree.get(tree.segments("/letters"), QueryFilter.NONE));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void get_returnsCopyOfData()
+    {
+        DataTree tree = new DataTree();
+        set(tree, "/letters", Arrays.asList("a", "b"));
+
+        ((List<Object>) tree.get(tree.segments("/letters"), QueryFilter.NONE)).clear();
+
+        assertEquals(Arrays.asList("a", "b"), tree.get(tree.segments("/letters"), QueryFilter.NONE));
+    }
+
+    @Test
+    public void compareAndSet_failsIfDataChangedSinceRead()
+    {
+        DataTree tree = new DataTree();
+        String[] segments = tree.segments("/counter");
+        set(tree, "/counter", 1L);
+        DataTree.Versioned read = tree.getVersioned(segments);
+
+        set(tree, "/counter", 2L);
+
+        assertFalse(tree.compareAndSet(segments, read, 3L));
+        assertEquals(2L, tree.get(segments, QueryFilter.NONE));
+        assertTrue(tree.compareAndSet(segments, tree.getVersioned(segments), 3L));
+        assertEquals(3L, tree.get(segments, QueryFilter.NONE));
+    }
+
+    @Test
+    public void compareAndSet_failsIfChildChangedSinceRead()
+    {
+        DataTree tree = new DataTree();
+        String[] segments = tree.segments("/user");
+        set(tree, "/user/name", "John");
+        DataTree.Versioned read = tree.getVersioned(segments);
+
+        set(tree, "/user/name", "Jane");
+
+        assertFalse(tree.compareAndSet(segments, read, null));
+    }
+
+    @Test
+    public void segments_internsKeys()
+    {
+        DataTree tree = new DataTree();
+
+        String[] first = tree.segments("/users/abc");
+        String[] second = tree.segments(new String("users/abc/name"));
+
+        assertEquals(2, first.length);
+        assertSame(first[0], second[0]);
+        assertSame(first[1], second[1]);
+        assertEquals(0, tree.segments("/").length);
+    }
+
+    @Test
+    public void compareKeys_ordersIntegerKeysFirstNumerically()
+    {
+        String[] keys = {"b", "10", "a", "2"};
+
+        Arrays.sort(keys, DataTree.KEY_ORDER);
+
+        assertEquals(Arrays.asList("2", "10", "a", "b"), Arrays.asList(keys));
+    }
+
+    @Test
+    public void generatePushKey_givesUniqueChronologicalKeys()
+    {
+        DataTree tree = new DataTree();
+        String previous = tree.generatePushKey();
+        for (int i = 0; i < 100; i++) {
+            String key = tree.generatePushKey();
+            assertEquals(20, key.length());
+            assertNotEquals(previous, key);
+            assertTrue(previous.compareTo(key) < 0);
+            previous = key;
+        }
+    }
+
+    private static void set(DataTree tree, String path, Object value)
+    {
+        tree.set(new String[][]{tree.segments(path)}, new Object[]{value});
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.desktop.database;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WriteJournalTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void peek_returnsRecordsInOrderOfAppending() throws IOException
+    {
+        WriteJournal journal = new WriteJournal(folder.newFile("journal"), false);
+        long first = journal.append(WriteJournal.SET, "/a", "1");
+        long second = journal.append(WriteJournal.REMOVE, "/b", null);
+
+        assertEquals(2, journal.size());
+        WriteJournal.Record record = journal.peek();
+        assertEquals(first, record.getSequence());
+        assertEquals(WriteJournal.SET, record.getOperation());
+        assertEquals("/a", record.getPath());
+        assertEquals("1", record.getValue());
+        assertTrue(journal.acknowledge(first));
+        record = journal.peek();
+        assertEquals(second, record.getSequence());
+        assertEquals(WriteJournal.REMOVE, record.getOperation());
+        assertNull(record.getValue());
+        journal.close();
+    }
+
+    @Test
+    public void acknowledge_ignoresRecordWhichIsNotTheOldest() throws IOException
+    {
+        WriteJournal journal = new WriteJournal(folder.newFile("journal"), false);
+        journal.append(WriteJournal.SET, "/a", "1");
+        long second = journal.append(WriteJournal.SET, "/b", "2");
+
+        assertFalse(journal.acknowledge(second));
+        assertEquals(2, journal.size());
+        journal.close();
+    }
+
+    @Test
+    public void open_readsRecordsNotAcknowledgedBeforeClose() throws IOException
+    {
+        File file = folder.newFile("journal");
+        WriteJournal journal = new WriteJournal(file);
+        long first = journal.append(WriteJournal.SET, "/a", "\"x\"");
+        journal.append(WriteJournal.UPDATE, "/b", "{\"c\":1}");
+        journal.acknowledge(first);
+        journal.close();
+
+        journal = new WriteJournal(file);
+        assertEquals(1, journal.size());
+        assertEquals("/b", journal.peek().getPath());
+        assertEquals("{\"c\":1}", journal.peek().getValue());
+        journal.close();
+    }
+
+    @Test
+    public void append_doesNotReuseSequenceNumbersAfterReopen() throws IOException
+    {
+        File file = folder.newFile("journal");
+        WriteJournal journal = new WriteJournal(file, false);
+        long first = journal.append(WriteJournal.SET, "/a", "1");
+        journal.acknowledge(first);
+        journal.close();
+
+        journal = new WriteJournal(file, false);
+        long next = journal.append(WriteJournal.SET, "/a", "2");
+        assertTrue(next > first);
+        journal.close();
+    }
+
+    @Test
+    public void append_growsFileWhenRecordsDoNotFit() throws IOException
+    {
+        File file = folder.newFile("journal");
+        WriteJournal journal = new WriteJournal(file, false);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1024; i++)
+            value.append("0123456789");
+        for (int i = 0; i < 20; i++)
+            journal.append(WriteJournal.SET, "/items/" + i, value.toString());
+        journal.close();
+
+        journal = new WriteJournal(file, false);
+        assertEquals(20, journal.size());
+        assertEquals("/items/0", journal.peek().getPath());
+        assertEquals(value.toString(), journal.peek().getValue());
+        journal.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void open_rejectsFileWhichIsNotJournal() throws IOException
+    {
+        File file = folder.newFile("journal");
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[64]);
+        output.close();
+
+        new WriteJournal(file);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import mk.gdx.firebase.database.ValueMapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ValueMapperProcessorTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void process_generatesMapperOfFieldsAndProperties() throws Exception
+    {
+        File output = compile("model/Player.java",
+                "package model;\n"
+                        + "@mk.gdx.firebase.database.MappedValue\n"
+                        + "public class Player {\n"
+                        + "    public String name;\n"
+                        + "    public int level;\n"
+                        + "    public java.util.List<String> items;\n"
+                        + "    public transient int ignored;\n"
+                        + "    private double score;\n"
+                        + "    public double getScore() { return score; }\n"
+                        + "    public void setScore(double score) { this.score = score; }\n"
+                        + "}\n");
+
+        ClassLoader classLoader = new URLClassLoader(new URL[]{output.toURI().toURL()}, getClass().getClassLoader());
+        ValueMapper<Object> mapper = (ValueMapper<Object>) classLoader.loadClass("model.Player_ValueMapper").newInstance();
+        Map<String, Object> data = new HashMap<>();
+        data.put("name", "John");
+        data.put("level", 3L);
+        data.put("items", Arrays.<Object>asList("sword", "shield"));
+        data.put("score", 1.5);
+        data.put("ignored", 7L);
+        Object player = mapper.fromMap(data);
+        Map<String, Object> map = mapper.toMap(player);
+
+        assertEquals("John", map.get("name"));
+        assertEquals(3, ((Number) map.get("level")).intValue());
+        assertEquals(Arrays.asList("sword", "shield"), map.get("items"));
+        assertEquals(1.5, ((Number) map.get("score")).doubleValue(), 0);
+        assertFalse(map.containsKey("ignored"));
+    }
+
+    @Test
+    public void process_generatesMapperOfNestedClass() throws Exception
+    {
+        File output = compile("model/Game.java",
+                "package model;\n"
+                        + "public class Game {\n"
+                        + "    @mk.gdx.firebase.database.MappedValue\n"
+                        + "    public static class Player {\n"
+                        + "        public String name;\n"
+                        + "    }\n"
+                        + "}\n");
+
+        assertTrue(new File(output, "model/Game_Player_ValueMapper.class").exists());
+    }
+
+    @Test
+    public void process_reportsFinalField() throws Exception
+    {
+        compile("model/Player.java",
+                "package model;\n"
+                        + "@mk.gdx.firebase.database.MappedValue\n"
+                        + "public class Player {\n"
+                        + "    public final String name = \"\";\n"
+                        + "}\n");
+
+        assertError("should not have final fields");
+    }
+
+    @Test
+    public void process_reportsMissingNoArgConstructor() throws Exception
+    {
+        compile("model/Player.java",
+                "package model;\n"
+                        + "@mk.gdx.firebase.database.MappedValue\n"
+                        + "public class Player {\n"
+                        + "    public String name;\n"
+                        + "    public Player(String name) { this.name = name; }\n"
+                        + "}\n");
+
+        assertError("no-arg constructor");
+    }
+
+    @Test
+    public void process_reportsPrivateFieldWithoutAccessors() throws Exception
+    {
+        compile("model/Player.java",
+                "package model;\n"
+                        + "@mk.gdx.firebase.database.MappedValue\n"
+                        + "public class Player {\n"
+                        + "    private String name;\n"
+                        + "}\n");
+
+        assertError("has no getter and setter");
+    }
+
+    /**
+     * Compiles the source with {@link ValueMapperProcessor}.
+     *
+     * @param path   Path of the source file
+     * @param source Source code
+     * @return Directory with compiled classes
+     */
+    private File compile(String path, String source) throws IOException
+    {
+        File sources = folder.newFolder("sources");
+        File output = folder.newFolder("classes");
+        File file = new File(sources, path);
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(source);
+        } finally {
+            writer.close();
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            List<String> options = Arrays.asList("-d", output.getPath(), "-s", output.getPath(), "-classpath", System.getProperty("java.class.path"));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(Collections.singletonList(file)));
+            task.setProcessors(Collections.singletonList(new ValueMapperProcessor()));
+            task.call();
+        } finally {
+            fileManager.close();
+        }
+        return output;
+    }
+
+    private void assertError(String message)
+    {
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR && diagnostic.getMessage(null).contains(message))
+                return;
+        }
+        throw new AssertionError("Error containing \"" + message + "\" was not reported, diagnostics: " + diagnostics.getDiagnostics());
+    }
+}
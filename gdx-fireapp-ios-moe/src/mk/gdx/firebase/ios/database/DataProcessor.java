@@ -16,22 +16,29 @@
 
 package mk.gdx.firebase.ios.database;
 
+import com.google.firebasedatabase.FIRDataSnapshot;
+
 import org.moe.natj.objc.ObjCRuntime;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import apple.NSObject;
 import apple.foundation.NSArray;
 import apple.foundation.NSDictionary;
+import apple.foundation.NSEnumerator;
 import apple.foundation.NSNull;
 import apple.foundation.NSNumber;
 import apple.foundation.NSString;
+import mk.gdx.firebase.database.DecodedValueCache;
 import mk.gdx.firebase.ios.helpers.GenericPlaceholder;
 import mk.gdx.firebase.ios.helpers.MapDeserializator;
 import mk.gdx.firebase.ios.helpers.NSArrayHelper;
 import mk.gdx.firebase.ios.helpers.NSDictionaryHelper;
 import mk.gdx.firebase.ios.helpers.NSNumberHelper;
+import mk.gdx.firebase.ios.helpers.NSObjectDeserializator;
+import mk.gdx.firebase.ios.helpers.NSStringPool;
 
 /**
  * Is responsible for transform ios objects to normal Java objects.
@@ -44,14 +51,14 @@ import mk.gdx.firebase.ios.helpers.NSNumberHelper;
  * <li>{@link NSDictionary} to {@link Map} or to POJO object
  * </ul>
  * <p>
- * In case of transform from {@link NSDictionary} to POJO object,
- * {@link NSDictionary} is transformed to Json string then it is transformed by {@link com.badlogic.gdx.utils.Json#fromJson(Class, String)}
+ * When wanted type is known, {@link NSArray} and {@link NSDictionary} are transformed straight to it by {@link NSObjectDeserializator},<p>
+ * if {@link NSDictionary} does not fit the POJO it is transformed to {@link Map} then fields of the POJO are set from it by {@link MapDeserializator}
  */
 public class DataProcessor {
 
     /**
      * @param iosObject          iOS object, in most cases instance of {@link NSObject}
-     * @param genericPlaceholder {@link GenericPlaceholder}
+     * @param genericPlaceholder {@link GenericPlaceholder}, if its type is not resolved data is transformed as by {@link #iosDataToJava(Object)}
      * @param <T>                Type of object which you want to get - needed by transforming types flow.
      * @return {@code iosObject} java representation. For ex. {@link NSString} was transformed to {@link String}
      */
@@ -60,6 +67,8 @@ public class DataProcessor {
     {
         Class resultType = iosObject.getClass();
         Class<T> wantedType = (Class<T>) genericPlaceholder.getGenericType();
+        if (wantedType == null)
+            return (T) iosDataToJava(iosObject);
         T result = null;
         try {
             if (resultType == NSString.class && wantedType == String.class) {
@@ -67,32 +76,14 @@ public class DataProcessor {
             } else if (resultType == NSNumber.class && (Number.class.isAssignableFrom(wantedType) || wantedType == Boolean.class)) { // TODO - check isInstance
                 result = processPrimitiveData(iosObject, wantedType);
             } else if (NSArray.class.isAssignableFrom(resultType) && List.class.isAssignableFrom(wantedType)) {
-                result = (T) NSArrayHelper.toList((NSArray) iosObject);
-                Class listGenericType = genericPlaceholder.getGenericGenericType();
-//                (ParameterizedType) wantedType.getGe
-                if (listGenericType != null && !Map.class.isAssignableFrom(listGenericType))
-                    for (int i = 0; i < ((List) result).size(); i++) {
-                        Object o = ((List) result).get(i);
-                        if (Map.class.isAssignableFrom(o.getClass())) {
-                            T deserialized = (T) MapDeserializator.deserialize((Map) o, listGenericType);
-                            // If deserialized was succeed - change HashMap to deserialized object
-                            if (deserialized != null) {
-                                ((List) result).set(i, deserialized);
-                            }
-                        }
-                    }
-
+                result = (T) NSObjectDeserializator.toList((NSArray) iosObject, genericPlaceholder.getGenericGenericType());
+            } else if (NSDictionary.class.isAssignableFrom(resultType) && List.class.isAssignableFrom(wantedType)) {
+                result = (T) NSObjectDeserializator.toList((NSDictionary) iosObject, genericPlaceholder.getGenericGenericType());
             } else if (NSDictionary.class.isAssignableFrom(resultType)) {
                 // Few scenarios
                 // 1. Create Map<String, Object>
                 // 2. Create class
-                Map map = NSDictionaryHelper.toMap((NSDictionary<NSString, NSObject>) iosObject);
-                if (!Map.class.isAssignableFrom(wantedType)) {
-                    T deserialized = (T) MapDeserializator.deserialize(map, wantedType);
-                    if (deserialized != null)
-                        return deserialized;
-                }
-                result = (T) map;
+                result = (T) NSObjectDeserializator.toObject((NSDictionary) iosObject, wantedType);
             } else {
                 throw new RuntimeException("Result data type mismatch. Wanted type: " + wantedType + ":" + List.class.isAssignableFrom(wantedType)
                         + ", result data type: " + resultType + ":" + NSArray.class.isAssignableFrom(resultType));
@@ -103,6 +94,107 @@ public class DataProcessor {
         return result;
     }
 
+    /**
+     * Same as {@link #iosDataToJava(Object, GenericPlaceholder)} but reuses objects decoded earlier from equal data.
+     * <p>
+     * Only POJO objects are cached, elements of list under {@code cacheKey} with their index - when list has changed only changed elements<p>
+     * are deserialized again. Generic representation of the dictionary is built only to compare it with the cached one,<p>
+     * on cache miss the object is deserialized straight from the {@code iosObject} by {@link NSObjectDeserializator}.
+     *
+     * @param iosObject          iOS object, instance of {@link NSDictionary} or {@link NSArray}
+     * @param genericPlaceholder {@link GenericPlaceholder}
+     * @param cache              Cache of decoded objects
+     * @param cacheKey           Key of the value, for ex. path with query id
+     * @param <T>                Type of object which you want to get - needed by transforming types flow.
+     * @return {@code iosObject} java representation, POJO objects may be shared with other callers so they should not be modified.
+     * @throws IllegalArgumentException If dictionary can not be deserialized to the wanted POJO type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T iosDataToJava(Object iosObject, GenericPlaceholder genericPlaceholder, DecodedValueCache cache, String cacheKey)
+    {
+        Class<?> wantedType = genericPlaceholder.getGenericType();
+        if (iosObject instanceof NSArray && wantedType != null && List.class.isAssignableFrom(wantedType)) {
+            NSArray<?> nsArray = (NSArray<?>) iosObject;
+            Class<?> elementType = genericPlaceholder.getGenericGenericType();
+            int count = (int) nsArray.count();
+            List list = new ArrayList(count);
+            for (int i = 0; i < count; i++)
+                list.add(toElement(nsArray.objectAtIndex(i), elementType, cache, cacheKey + "/" + i));
+            return (T) list;
+        }
+        if (iosObject instanceof NSDictionary && isPojo(wantedType))
+            return (T) toObject((NSDictionary<?, ?>) iosObject, wantedType, cache, cacheKey);
+        return iosDataToJava(iosObject, genericPlaceholder);
+    }
+
+    /**
+     * Transforms children of the snapshot to list, in order given by Firebase SDK - order of the query.
+     *
+     * @param dataSnapshot Snapshot which value is dictionary, for ex. children with push id keys
+     * @param elementType  Type of list elements, may be null
+     * @param cache        Cache of decoded objects, may be null
+     * @param cacheKey     Key of the snapshot value, children are cached under it with their keys
+     * @return New list of children values, not null
+     * @throws IllegalArgumentException If child can not be deserialized to the {@code elementType}
+     */
+    @SuppressWarnings("unchecked")
+    static List childrenToList(FIRDataSnapshot dataSnapshot, Class<?> elementType, DecodedValueCache cache, String cacheKey)
+    {
+        List list = new ArrayList((int) dataSnapshot.childrenCount());
+        NSEnumerator<?> children = dataSnapshot.children();
+        for (Object child = children.nextObject(); child != null; child = children.nextObject()) {
+            FIRDataSnapshot childSnapshot = (FIRDataSnapshot) child;
+            list.add(cache != null ? toElement(childSnapshot.value(), elementType, cache, cacheKey + "/" + childSnapshot.key())
+                    : NSObjectDeserializator.toElement(childSnapshot.value(), elementType));
+        }
+        return list;
+    }
+
+    /**
+     * @param iosObject   Native value of list element
+     * @param elementType Type of list elements, may be null
+     * @param cache       Cache of decoded objects
+     * @param cacheKey    Key of the element
+     * @return Element transformed to {@code elementType} if possible
+     */
+    private static Object toElement(Object iosObject, Class<?> elementType, DecodedValueCache cache, String cacheKey)
+    {
+        if (iosObject instanceof NSDictionary && isPojo(elementType))
+            return toObject((NSDictionary<?, ?>) iosObject, elementType, cache, cacheKey);
+        return NSObjectDeserializator.toElement(iosObject, elementType);
+    }
+
+    /**
+     * @param nsDictionary Native dictionary
+     * @param wantedType   POJO type
+     * @param cache        Cache of decoded objects
+     * @param cacheKey     Key of the value
+     * @return Instance of {@code wantedType}, decoded earlier if the dictionary has not changed
+     * @throws IllegalArgumentException If dictionary can not be deserialized to the {@code wantedType}
+     */
+    private static Object toObject(NSDictionary<?, ?> nsDictionary, Class<?> wantedType, DecodedValueCache cache, String cacheKey)
+    {
+        Object raw = iosDataToJava(nsDictionary);
+        int rawHash = raw.hashCode();
+        Object decoded = cache.get(cacheKey, wantedType, raw, rawHash);
+        if (decoded == null) {
+            decoded = NSObjectDeserializator.toObject(nsDictionary, wantedType);
+            if (!wantedType.isInstance(decoded))
+                throw new IllegalArgumentException("Data of " + cacheKey + " can not be deserialized to " + wantedType.getName());
+            cache.put(cacheKey, wantedType, raw, rawHash, decoded);
+        }
+        return decoded;
+    }
+
+    /**
+     * @param type Wanted type, may be null
+     * @return True if dictionary should be deserialized to object of the type
+     */
+    private static boolean isPojo(Class<?> type)
+    {
+        return type != null && type != Object.class && !Map.class.isAssignableFrom(type) && !List.class.isAssignableFrom(type);
+    }
+
     /**
      * TODO - better docs.
      *
@@ -158,26 +250,37 @@ public class DataProcessor {
     }
 
     /**
-     * @param javaObject Any java object instance.
-     * @return {@link NSObject} instance equals to {@code javaObject}.
+     * Transforms Java value to iOS object in one pass, without intermediate Json string.
+     * <p>
+     * Lists and maps are written to pre-sized mutable collections, dictionary keys are taken from {@link NSStringPool}.<p>
+     * Objects which are neither primitive data, list nor map are transformed by {@link NSDictionaryHelper#toNSDictionary(Object)}.
+     *
+     * @param javaObject Any java object instance, may be null
+     * @return {@link NSObject} instance equals to {@code javaObject}, {@link NSNull} if {@code javaObject} is null or can not be transformed.
      */
     @SuppressWarnings("unchecked")
     public static NSObject javaDataToIos(Object javaObject)
     {
-        if (javaObject instanceof String) {
+        if (javaObject == null) {
+            return NSNull.alloc().init();
+        } else if (javaObject instanceof String) {
             return NSString.alloc().initWithString((String) javaObject);
         } else if (javaObject instanceof Boolean) {
             return NSNumber.numberWithBool((Boolean) javaObject);
-        } else if (javaObject instanceof Integer) {
-            return NSNumber.numberWithInt((Integer) javaObject);
+        } else if (javaObject instanceof Integer || javaObject instanceof Short || javaObject instanceof Byte) {
+            return NSNumber.numberWithInt(((Number) javaObject).intValue());
         } else if (javaObject instanceof Long) {
             return NSNumber.numberWithLong((Long) javaObject);
         } else if (javaObject instanceof Float) {
             return NSNumber.numberWithFloat((Float) javaObject);
         } else if (javaObject instanceof Double) {
             return NSNumber.numberWithDouble((Double) javaObject);
+        } else if (javaObject instanceof Character || javaObject instanceof Enum) {
+            return NSString.alloc().initWithString(javaObject.toString());
         } else if (javaObject instanceof java.util.List) {
             return NSArrayHelper.toArray((java.util.List) javaObject);
+        } else if (javaObject instanceof Map) {
+            return NSDictionaryHelper.toNSDictionary((Map<String, Object>) javaObject);
         } else {
             // Every other value try to serialize to Map.
             try {
@@ -16,39 +16,64 @@
 
 package mk.gdx.firebase.ios.database;
 
+import com.badlogic.gdx.utils.ObjectMap;
 import com.google.firebasedatabase.FIRDataSnapshot;
 import com.google.firebasedatabase.FIRDatabase;
+import com.google.firebasedatabase.FIRDatabaseQuery;
 import com.google.firebasedatabase.FIRDatabaseReference;
-import com.google.firebasedatabase.FIRMutableData;
-import com.google.firebasedatabase.FIRTransactionResult;
 import com.google.firebasedatabase.enums.FIRDataEventType;
 
-import java.io.FileNotFoundException;
+import java.util.List;
 import java.util.Map;
 
-import apple.foundation.NSError;
+import apple.foundation.NSArray;
+import apple.foundation.NSDictionary;
 import apple.foundation.NSNumber;
 import mk.gdx.firebase.callbacks.CompleteCallback;
 import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
 import mk.gdx.firebase.callbacks.TransactionCallback;
-import mk.gdx.firebase.distributions.AnalyticsDistribution;
+import mk.gdx.firebase.database.CallbackDispatcher;
+import mk.gdx.firebase.database.ChildEventType;
+import mk.gdx.firebase.database.DatabaseRef;
+import mk.gdx.firebase.database.DecodedValueCache;
+import mk.gdx.firebase.database.LazySnapshot;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.ListenerRegistry;
+import mk.gdx.firebase.database.TransactionPolicy;
 import mk.gdx.firebase.distributions.DatabaseDistribution;
 import mk.gdx.firebase.exceptions.DatabaseReferenceNotSetException;
 import mk.gdx.firebase.ios.helpers.GenericPlaceholder;
-import mk.gdx.firebase.ios.helpers.NSDictionaryHelper;
+import mk.gdx.firebase.listeners.ChildChangeListener;
 import mk.gdx.firebase.listeners.ConnectedListener;
 import mk.gdx.firebase.listeners.DataChangeListener;
 
 /**
  * iOS Firebase database API implementation.
  * <p>
+ * Every operation is delegated to the {@link Ref} created by {@link #inReference(String)}.
  *
  * @see DatabaseDistribution
  */
 public class Database implements DatabaseDistribution {
 
-    FIRDatabaseReference dbReference;
-    private String databasePath;
+    private Ref ref;
+    private final ObjectMap<String, ValueObserver> valueObservers;
+    private final ListenerRegistry<QueryListenerRegistration> childListeners;
+    private final ListenerRegistry<QueryListenerRegistration> primitiveListeners;
+    private volatile DecodedValueCache decodedValueCache;
+    private volatile CallbackDispatcher callbackDispatcher;
+
+    /**
+     * Constructor of iOS database distribution
+     */
+    public Database()
+    {
+        valueObservers = new ObjectMap<>();
+        childListeners = new ListenerRegistry<>();
+        primitiveListeners = new ListenerRegistry<>();
+        callbackDispatcher = new CallbackDispatcher(CallbackDispatcher.Mode.IMMEDIATE);
+    }
 
     /**
      * {@inheritDoc}
@@ -75,18 +100,26 @@ public class Database implements DatabaseDistribution {
     @Override
     public DatabaseDistribution inReference(String databasePath)
     {
-        dbReference = FIRDatabase.database().referenceWithPath(databasePath);
-        this.databasePath = databasePath;
+        ref = (Ref) ref(databasePath);
         return this;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseRef ref(String databasePath)
+    {
+        return new Ref(this, FIRDatabase.database().referenceWithPath(databasePath), databasePath);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void setValue(Object value)
     {
-        dbReference().setValue(DataProcessor.javaDataToIos(value));
+        ref().setValue(value);
         terminateOperation();
     }
 
@@ -96,17 +129,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public void setValue(Object value, CompleteCallback completeCallback)
     {
-        dbReference().setValueWithCompletionBlock(DataProcessor.javaDataToIos(value), new FIRDatabaseReference.Block_setValueWithCompletionBlock() {
-            @Override
-            public void call_setValueWithCompletionBlock(NSError arg0, FIRDatabaseReference arg1)
-            {
-                if (arg0 != null) {
-                    completeCallback.onError(new Exception(arg0.localizedDescription()));
-                } else {
-                    completeCallback.onSuccess();
-                }
-            }
-        });
+        ref().setValue(value, completeCallback);
         terminateOperation();
     }
 
@@ -114,34 +137,9 @@ public class Database implements DatabaseDistribution {
      * {@inheritDoc}
      */
     @Override
-    @SuppressWarnings("unchecked")
     public <T, R extends T> void readValue(Class<T> dataType, DataCallback<R> callback)
     {
-        final GenericPlaceholder genericPlaceholder = new GenericPlaceholder(callback.getClass());
-        dbReference().observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock(FIRDataEventType.Value, new FIRDatabaseReference.Block_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_1() {
-            @Override
-            public void call_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_1(FIRDataSnapshot arg0, String arg1)
-            {
-                if (arg0.value() == null) {
-                    // TODO - onFileNotFound
-                    callback.onError(new FileNotFoundException());
-                } else {
-                    T data = null;
-                    try {
-                        data = DataProcessor.iosDataToJava(arg0.value(), genericPlaceholder);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                    callback.onData((R) data);
-                }
-            }
-        }, new FIRDatabaseReference.Block_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_2() {
-            @Override
-            public void call_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_2(NSError arg0)
-            {
-                callback.onError(new Exception(arg0.localizedDescription()));
-            }
-        });
+        ref().readValue(dataType, callback);
         terminateOperation();
     }
 
@@ -149,37 +147,32 @@ public class Database implements DatabaseDistribution {
      * {@inheritDoc}
      */
     @Override
-    @SuppressWarnings("unchecked")
-    public <T, R extends T> void onDataChange(Class<T> dataType, DataChangeListener<R> listener)
+    public <T, R extends T> void readValue(Class<T> dataType, ElementCallback<R> callback)
     {
-        final GenericPlaceholder genericPlaceholder = new GenericPlaceholder(listener.getClass());
-        dbReference().observeEventTypeWithBlockWithCancelBlock(FIRDataEventType.Value, new FIRDatabaseReference.Block_observeEventTypeWithBlockWithCancelBlock_1() {
+        ref().readValue(dataType, callback);
+        terminateOperation();
+    }
 
-            @Override
-            public void call_observeEventTypeWithBlockWithCancelBlock_1(FIRDataSnapshot arg0)
-            {
-                if (arg0.value() == null) {
-                    // TODO - onFileNotFound
-                    listener.onCanceled(new FileNotFoundException());
-                } else {
-                    T data = null;
-                    try {
-                        data = DataProcessor.iosDataToJava(arg0.value(), genericPlaceholder);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                    listener.onChange((R) data);
-                }
-            }
-        }, new FIRDatabaseReference.Block_observeEventTypeWithBlockWithCancelBlock_2() {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<R> listener)
+    {
+        ListenerRegistration registration = ref().onDataChange(dataType, listener);
+        terminateOperation();
+        return registration;
+    }
 
-            @Override
-            public void call_observeEventTypeWithBlockWithCancelBlock_2(NSError arg0)
-            {
-                listener.onCanceled(new Exception(arg0.localizedDescription()));
-            }
-        });
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events)
+    {
+        ListenerRegistration registration = ref().onChildChange(dataType, listener, events);
         terminateOperation();
+        return registration;
     }
 
     /**
@@ -188,7 +181,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public DatabaseDistribution push()
     {
-        dbReference = dbReference().childByAutoId();
+        ref = ref().push();
         return this;
     }
 
@@ -198,7 +191,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public void removeValue()
     {
-        dbReference().removeValue();
+        ref().removeValue();
         terminateOperation();
     }
 
@@ -208,17 +201,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public void removeValue(CompleteCallback completeCallback)
     {
-        dbReference().removeValueWithCompletionBlock(new FIRDatabaseReference.Block_removeValueWithCompletionBlock() {
-            @Override
-            public void call_removeValueWithCompletionBlock(NSError arg0, FIRDatabaseReference arg1)
-            {
-                if (arg0 != null) {
-                    completeCallback.onError(new Exception(arg0.localizedDescription()));
-                } else {
-                    completeCallback.onSuccess();
-                }
-            }
-        });
+        ref().removeValue(completeCallback);
         terminateOperation();
     }
 
@@ -228,7 +211,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public void updateChildren(Map<String, Object> data)
     {
-        dbReference().updateChildValues(NSDictionaryHelper.toNSDictionary(data));
+        ref().updateChildren(data);
         terminateOperation();
     }
 
@@ -238,17 +221,7 @@ public class Database implements DatabaseDistribution {
     @Override
     public void updateChildren(Map<String, Object> data, CompleteCallback completeCallback)
     {
-        dbReference().updateChildValuesWithCompletionBlock(NSDictionaryHelper.toNSDictionary(data), new FIRDatabaseReference.Block_updateChildValuesWithCompletionBlock() {
-            @Override
-            public void call_updateChildValuesWithCompletionBlock(NSError arg0, FIRDatabaseReference arg1)
-            {
-                if (arg0 != null) {
-                    completeCallback.onError(new Exception(arg0.localizedDescription()));
-                } else {
-                    completeCallback.onSuccess();
-                }
-            }
-        });
+        ref().updateChildren(data, completeCallback);
         terminateOperation();
     }
 
@@ -258,28 +231,17 @@ public class Database implements DatabaseDistribution {
     @Override
     public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, CompleteCallback completeCallback)
     {
-        final GenericPlaceholder genericPlaceholder = new GenericPlaceholder(transactionCallback.getClass());
-        dbReference().runTransactionBlockAndCompletionBlock(new FIRDatabaseReference.Block_runTransactionBlockAndCompletionBlock_0() {
-            @Override
-            public FIRTransactionResult call_runTransactionBlockAndCompletionBlock_0(FIRMutableData arg0)
-            {
-                // arg0 - value from database.
-                R transactionObject = DataProcessor.iosDataToJava(arg0.value(), genericPlaceholder);
-                arg0.setValue(DataProcessor.javaDataToIos(transactionCallback.run(transactionObject)));
-                return FIRTransactionResult.successWithValue(arg0);
-            }
-        }, new FIRDatabaseReference.Block_runTransactionBlockAndCompletionBlock_1() {
-            @Override
-            public void call_runTransactionBlockAndCompletionBlock_1(NSError arg0, boolean arg1, FIRDataSnapshot arg2)
-            {
-                if (completeCallback == null) return;
-                if (arg0 != null) {
-                    completeCallback.onError(new Exception(arg0.localizedDescription()));
-                } else {
-                    completeCallback.onSuccess();
-                }
-            }
-        });
+        ref().transaction(dataType, transactionCallback, completeCallback);
+        terminateOperation();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, TransactionPolicy transactionPolicy, CompleteCallback completeCallback)
+    {
+        ref().transaction(dataType, transactionCallback, transactionPolicy, completeCallback);
         terminateOperation();
     }
 
@@ -292,32 +254,143 @@ public class Database implements DatabaseDistribution {
         FIRDatabase.database().setPersistenceEnabled(enabled);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setDecodedValueCacheSize(long maxBytes)
+    {
+        decodedValueCache = maxBytes > 0 ? new DecodedValueCache(maxBytes) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCallbackDispatcher(CallbackDispatcher callbackDispatcher)
+    {
+        this.callbackDispatcher = callbackDispatcher;
+    }
+
+    /**
+     * @return Dispatcher which wraps callbacks and listeners given by user
+     */
+    CallbackDispatcher getCallbackDispatcher()
+    {
+        return callbackDispatcher;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void keepSynced(boolean synced)
     {
-        dbReference().keepSynced(synced);
+        ref().keepSynced(synced);
         terminateOperation();
     }
 
     /**
-     * Simple getter of {@link FIRDatabaseReference} which this {@link Database} instance will be deal with.
+     * Transforms snapshot value to java object, reuses object decoded earlier if the value has not changed.
+     * <p>
+     * If {@link LazySnapshot} is wanted the snapshot is wrapped without transforming its value.<p>
+     * If {@link List} is wanted and the value is dictionary, list is built from snapshot children in order of the query.
+     *
+     * @param key                Path with query id
+     * @param dataSnapshot       Snapshot with not null value
+     * @param genericPlaceholder {@link GenericPlaceholder}
+     * @param <T>                Type of object which you want to get
+     * @return Snapshot value java representation
+     */
+    @SuppressWarnings("unchecked")
+    <T> T iosDataToJava(String key, FIRDataSnapshot dataSnapshot, GenericPlaceholder genericPlaceholder)
+    {
+        if (genericPlaceholder.getGenericType() == LazySnapshot.class)
+            return (T) new Snapshot(dataSnapshot);
+        Object iosObject = dataSnapshot.value();
+        DecodedValueCache cache = decodedValueCache;
+        if (iosObject instanceof NSDictionary && genericPlaceholder.getGenericType() != null && List.class.isAssignableFrom(genericPlaceholder.getGenericType()))
+            return (T) DataProcessor.childrenToList(dataSnapshot, genericPlaceholder.getGenericGenericType(), cache, key);
+        if (cache == null || !(iosObject instanceof NSDictionary || iosObject instanceof NSArray))
+            return DataProcessor.iosDataToJava(iosObject, genericPlaceholder);
+        return DataProcessor.iosDataToJava(iosObject, genericPlaceholder, cache, key);
+    }
+
+    /**
+     * Adds data change listener to the observer shared by all listeners of the same query, creates observer if needed.
+     *
+     * @param key                Path with query id
+     * @param query              Firebase SDK query
+     * @param genericPlaceholder Generic type of data which {@code listener} wants to get
+     * @param listener           Listener
+     * @return Handle which removes only the given {@code listener}
+     */
+    ListenerRegistration addValueListener(String key, FIRDatabaseQuery query, GenericPlaceholder genericPlaceholder, DataChangeListener<?> listener)
+    {
+        ValueObserver observer;
+        ListenerRegistration registration;
+        synchronized (valueObservers) {
+            observer = valueObservers.get(key);
+            if (observer == null) {
+                observer = new ValueObserver(this, valueObservers, key, query);
+                valueObservers.put(key, observer);
+            }
+            registration = observer.add(genericPlaceholder, listener);
+        }
+        observer.deliverCurrent(registration);
+        return registration;
+    }
+
+    /**
+     * Removes all data change listeners of the query and detaches its observer, listeners of primitive values as well.
+     *
+     * @param key Path with query id
+     */
+    void removeValueListeners(String key)
+    {
+        ValueObserver observer;
+        synchronized (valueObservers) {
+            observer = valueObservers.get(key);
+        }
+        if (observer != null)
+            observer.removeAll();
+        for (QueryListenerRegistration registration : primitiveListeners.removeAll(key)) {
+            registration.detach();
+        }
+    }
+
+    /**
+     * @return Registry of observers added by {@link Ref#onChildChange(Class, ChildChangeListener, ChildEventType...)}
+     */
+    ListenerRegistry<QueryListenerRegistration> getChildListeners()
+    {
+        return childListeners;
+    }
+
+    /**
+     * @return Registry of listeners added by {@code onLongChange}, {@code onDoubleChange}, {@code onBooleanChange} and {@code onStringChange}
+     */
+    ListenerRegistry<QueryListenerRegistration> getPrimitiveListeners()
+    {
+        return primitiveListeners;
+    }
+
+    /**
+     * Simple getter of {@link Ref} which this {@link Database} instance will be deal with.
      *
-     * @return FirebaseSDK Database reference. Every action will be deal with it.
+     * @return Database reference handle. Every action will be deal with it.
      * @throws DatabaseReferenceNotSetException It is thrown when user forgot to call {@link #inReference(String)}
      */
-    private FIRDatabaseReference dbReference()
+    private Ref ref()
     {
-        if (dbReference == null)
+        if (ref == null)
             throw new DatabaseReferenceNotSetException("Please call GdxFIRDatabase#inReference() first.");
-        return dbReference;
+        return ref;
     }
 
     /**
-     * Reset {@link #dbReference} and {@link #databasePath} to initial state.
-     * After each flow-terminate operation{@link #dbReference} and {@link #databasePath} should be reset the initial value,
+     * Reset {@link #ref} to initial state.
+     * After each flow-terminate operation {@link #ref} should be reset the initial value,
      * it forces the users to call {@link #inReference(String)} before each flow-terminate operation.
      * <p>
      * Flow-terminate operations are: <uL>
@@ -325,15 +398,16 @@ public class Database implements DatabaseDistribution {
      * <li>{@link #setValue(Object, CompleteCallback)}</li>
      * <li>{@link #readValue(Class, DataCallback)}</li>
      * <li>{@link #onDataChange(Class, DataChangeListener)}</li>
+     * <li>{@link #onChildChange(Class, ChildChangeListener, ChildEventType...)}</li>
      * <li>{@link #updateChildren(Map)}</li>
      * <li>{@link #updateChildren(Map, CompleteCallback)}</li>
      * <li>{@link #transaction(Class, TransactionCallback, CompleteCallback)}</li>
+     * <li>{@link #transaction(Class, TransactionCallback, TransactionPolicy, CompleteCallback)}</li>
      * </uL>
      */
     private void terminateOperation()
     {
-        dbReference = null;
-        databasePath = null;
+        ref = null;
     }
 
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.ios.database;
+
+import com.google.firebasedatabase.FIRDataSnapshot;
+
+import apple.foundation.NSError;
+import apple.foundation.NSNull;
+import apple.foundation.NSNumber;
+import apple.foundation.NSString;
+import mk.gdx.firebase.callbacks.PrimitiveValueHandler;
+
+/**
+ * Passes snapshot value to {@link PrimitiveValueHandler} of primitive callback or listener.
+ * <p>
+ * {@link NSNumber} is read straight by {@code longValue()}, {@code doubleValue()} or {@code boolValue()} - depending on kind of the handler,<p>
+ * without wrapper object. Other values are transformed to Java and checked by the handler.
+ */
+class PrimitiveValueObserver {
+
+    private final PrimitiveValueHandler handler;
+
+    /**
+     * @param handler Handler of the callback or listener given by user
+     */
+    PrimitiveValueObserver(PrimitiveValueHandler handler)
+    {
+        this.handler = handler;
+    }
+
+    /**
+     * @param dataSnapshot Snapshot from Firebase SDK
+     */
+    void onSnapshot(FIRDataSnapshot dataSnapshot)
+    {
+        Object value = dataSnapshot.value();
+        if (value == null || value instanceof NSNull) {
+            handler.handle(null);
+            return;
+        }
+        if (value instanceof NSNumber) {
+            NSNumber number = (NSNumber) value;
+            switch (handler.getKind()) {
+                case LONG:
+                    handler.handleLong(number.longValue());
+                    return;
+                case DOUBLE:
+                    handler.handleDouble(number.doubleValue());
+                    return;
+                case BOOLEAN:
+                    handler.handleBoolean(number.boolValue());
+                    return;
+                default:
+                    break;
+            }
+        }
+        handler.handle(value instanceof NSString ? DataProcessor.processPrimitiveData(value, String.class) : DataProcessor.iosDataToJava(value));
+    }
+
+    /**
+     * @param error Error from Firebase SDK
+     */
+    void onError(NSError error)
+    {
+        handler.fail(new Exception(error.localizedDescription()));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.ios.database;
+
+import com.google.firebasedatabase.FIRDatabaseQuery;
+
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.ListenerRegistry;
+
+/**
+ * iOS implementation of {@link ListenerRegistration}.
+ * <p>
+ * Keeps observer handles returned by {@link FIRDatabaseQuery} together with the query, so observers can be removed alone.
+ */
+class QueryListenerRegistration implements ListenerRegistration {
+
+    private final ListenerRegistry<QueryListenerRegistration> registry;
+    private final String key;
+    private final FIRDatabaseQuery query;
+    private final long[] handles;
+
+    /**
+     * @param registry Registry which keeps this registration
+     * @param key      Key of the listened query inside {@code registry}
+     * @param query    Firebase SDK query
+     * @param handles  Handles of observers added to the {@code query}
+     */
+    QueryListenerRegistration(ListenerRegistry<QueryListenerRegistration> registry, String key, FIRDatabaseQuery query, long... handles)
+    {
+        this.registry = registry;
+        this.key = key;
+        this.query = query;
+        this.handles = handles;
+        registry.add(key, this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove()
+    {
+        if (registry.remove(key, this))
+            detach();
+    }
+
+    /**
+     * Removes observers from the query, registry is not touched.
+     */
+    void detach()
+    {
+        for (long handle : handles) {
+            query.removeObserverWithHandle(handle);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.ios.database;
+
+import com.badlogic.gdx.utils.TimeUtils;
+import com.google.firebasedatabase.FIRDataSnapshot;
+import com.google.firebasedatabase.FIRDatabaseReference;
+import com.google.firebasedatabase.FIRMutableData;
+import com.google.firebasedatabase.FIRTransactionResult;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import apple.foundation.NSError;
+import mk.gdx.firebase.callbacks.CompleteCallback;
+import mk.gdx.firebase.callbacks.TransactionCallback;
+import mk.gdx.firebase.callbacks.TransactionCompleteCallback;
+import mk.gdx.firebase.database.DatabaseRef;
+import mk.gdx.firebase.database.TransactionMetrics;
+import mk.gdx.firebase.database.TransactionPolicy;
+import mk.gdx.firebase.exceptions.TransactionAbortedException;
+import mk.gdx.firebase.ios.helpers.GenericPlaceholder;
+import mk.gdx.firebase.ios.helpers.NSDictionaryHelper;
+
+/**
+ * iOS implementation of {@link DatabaseRef}.
+ * <p>
+ * Keeps {@link FIRDatabaseReference} resolved once in the constructor, all fields are final so instance can be shared between threads.
+ * <p>
+ * Reading and listening is inherited from {@link RefQuery} - reference is a not filtered query.
+ *
+ * @see DatabaseRef
+ */
+public class Ref extends RefQuery implements DatabaseRef {
+
+    private final FIRDatabaseReference dbReference;
+
+    /**
+     * @param database     Database distribution which holds listeners registered by this handle
+     * @param dbReference  Firebase SDK reference for {@code databasePath}
+     * @param databasePath Database path
+     */
+    Ref(Database database, FIRDatabaseReference dbReference, String databasePath)
+    {
+        super(database, dbReference, databasePath, "");
+        this.dbReference = dbReference;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseRef child(String childPath)
+    {
+        return new Ref(database, dbReference.child(childPath), databasePath + "/" + childPath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Ref push()
+    {
+        FIRDatabaseReference pushed = dbReference.childByAutoId();
+        return new Ref(database, pushed, databasePath + "/" + pushed.key());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value)
+    {
+        dbReference.setValue(DataProcessor.javaDataToIos(value));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setValue(Object value, CompleteCallback completeCallback)
+    {
+        final CompleteCallback dispatchedCallback = database.getCallbackDispatcher().wrap(completeCallback);
+        dbReference.setValueWithCompletionBlock(DataProcessor.javaDataToIos(value), new FIRDatabaseReference.Block_setValueWithCompletionBlock() {
+            @Override
+            public void call_setValueWithCompletionBlock(NSError arg0, FIRDatabaseReference arg1)
+            {
+                if (arg0 != null) {
+                    dispatchedCallback.onError(new Exception(arg0.localizedDescription()));
+                } else {
+                    dispatchedCallback.onSuccess();
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue()
+    {
+        dbReference.removeValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeValue(CompleteCallback completeCallback)
+    {
+        final CompleteCallback dispatchedCallback = database.getCallbackDispatcher().wrap(completeCallback);
+        dbReference.removeValueWithCompletionBlock(new FIRDatabaseReference.Block_removeValueWithCompletionBlock() {
+            @Override
+            public void call_removeValueWithCompletionBlock(NSError arg0, FIRDatabaseReference arg1)
+            {
+                if (arg0 != null) {
+                    dispatchedCallback.onError(new Exception(arg0.localizedDescription()));
+                } else {
+                    dispatchedCallback.onSuccess();
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data)
+    {
+        dbReference.updateChildValues(NSDictionaryHelper.toNSDictionary(data));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateChildren(Map<String, Object> data, CompleteCallback completeCallback)
+    {
+        final CompleteCallback dispatchedCallback = database.getCallbackDispatcher().wrap(completeCallback);
+        dbReference.updateChildValuesWithCompletionBlock(NSDictionaryHelper.toNSDictionary(data), new FIRDatabaseReference.Block_updateChildValuesWithCompletionBlock() {
+            @Override
+            public void call_updateChildValuesWithCompletionBlock(NSError arg0, FIRDatabaseReference arg1)
+            {
+                if (arg0 != null) {
+                    dispatchedCallback.onError(new Exception(arg0.localizedDescription()));
+                } else {
+                    dispatchedCallback.onSuccess();
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, TransactionCallback<R> transactionCallback, CompleteCallback completeCallback)
+    {
+        transaction(dataType, transactionCallback, null, completeCallback);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T, R extends T> void transaction(Class<T> dataType, final TransactionCallback<R> transactionCallback, final TransactionPolicy transactionPolicy,
+                                             CompleteCallback completeCallback)
+    {
+        final CompleteCallback dispatchedCallback = database.getCallbackDispatcher().wrap(completeCallback);
+        final GenericPlaceholder genericPlaceholder = GenericPlaceholder.of(transactionCallback);
+        final long startTime = TimeUtils.millis();
+        final AtomicInteger attempts = new AtomicInteger();
+        final AtomicBoolean abortedByPolicy = new AtomicBoolean();
+        dbReference.runTransactionBlockAndCompletionBlock(new FIRDatabaseReference.Block_runTransactionBlockAndCompletionBlock_0() {
+            @Override
+            public FIRTransactionResult call_runTransactionBlockAndCompletionBlock_0(FIRMutableData arg0)
+            {
+                // arg0 - value from database.
+                R transactionObject = DataProcessor.iosDataToJava(arg0.value(), genericPlaceholder);
+                if (transactionPolicy != null && transactionPolicy.shouldAbort(transactionObject, attempts.get() + 1)) {
+                    abortedByPolicy.set(true);
+                    return FIRTransactionResult.abort();
+                }
+                abortedByPolicy.set(false);
+                // Only attempts which call the transaction callback are counted, aborted one is not.
+                attempts.incrementAndGet();
+                arg0.setValue(DataProcessor.javaDataToIos(transactionCallback.run(transactionObject)));
+                return FIRTransactionResult.successWithValue(arg0);
+            }
+        }, new FIRDatabaseReference.Block_runTransactionBlockAndCompletionBlock_1() {
+            @Override
+            public void call_runTransactionBlockAndCompletionBlock_1(NSError arg0, boolean arg1, FIRDataSnapshot arg2)
+            {
+                if (dispatchedCallback == null) return;
+                if (dispatchedCallback instanceof TransactionCompleteCallback) {
+                    ((TransactionCompleteCallback) dispatchedCallback).onMetrics(
+                            new TransactionMetrics(attempts.get(), TimeUtils.timeSinceMillis(startTime), arg1, abortedByPolicy.get()));
+                }
+                if (arg0 != null) {
+                    dispatchedCallback.onError(new Exception(arg0.localizedDescription()));
+                } else if (!arg1) {
+                    dispatchedCallback.onError(new TransactionAbortedException(abortedByPolicy.get()));
+                } else {
+                    dispatchedCallback.onSuccess();
+                }
+            }
+        });
+    }
+}
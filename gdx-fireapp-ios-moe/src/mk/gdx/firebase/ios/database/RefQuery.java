@@ -0,0 +1,520 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.ios.database;
+
+import com.google.firebasedatabase.FIRDataSnapshot;
+import com.google.firebasedatabase.FIRDatabaseQuery;
+import com.google.firebasedatabase.enums.FIRDataEventType;
+
+import java.io.FileNotFoundException;
+
+import apple.foundation.NSError;
+import mk.gdx.firebase.callbacks.BooleanCallback;
+import mk.gdx.firebase.callbacks.DataCallback;
+import mk.gdx.firebase.callbacks.DoubleCallback;
+import mk.gdx.firebase.callbacks.ElementCallback;
+import mk.gdx.firebase.callbacks.ElementDataCallback;
+import mk.gdx.firebase.callbacks.LongCallback;
+import mk.gdx.firebase.callbacks.PrimitiveValueHandler;
+import mk.gdx.firebase.database.ChildEventType;
+import mk.gdx.firebase.database.DatabaseQuery;
+import mk.gdx.firebase.database.LazySnapshot;
+import mk.gdx.firebase.database.ListenerRegistration;
+import mk.gdx.firebase.database.TypeToken;
+import mk.gdx.firebase.ios.helpers.GenericPlaceholder;
+import mk.gdx.firebase.listeners.BooleanChangeListener;
+import mk.gdx.firebase.listeners.ChildChangeListener;
+import mk.gdx.firebase.listeners.DataChangeListener;
+import mk.gdx.firebase.listeners.DoubleChangeListener;
+import mk.gdx.firebase.listeners.LongChangeListener;
+
+/**
+ * iOS implementation of {@link DatabaseQuery}.
+ * <p>
+ * Keeps {@link FIRDatabaseQuery} created once in the constructor, all fields are final so instance can be shared between threads.
+ *
+ * @see DatabaseQuery
+ */
+public class RefQuery implements DatabaseQuery {
+
+    protected final Database database;
+    protected final String databasePath;
+    private final FIRDatabaseQuery query;
+    private final String queryId;
+
+    /**
+     * @param database     Database distribution which holds listeners registered by this query
+     * @param query        Firebase SDK query for {@code databasePath}
+     * @param databasePath Database path
+     * @param queryId      Ordering and filtering of {@code query}, empty if not filtered
+     */
+    RefQuery(Database database, FIRDatabaseQuery query, String databasePath, String queryId)
+    {
+        this.database = database;
+        this.query = query;
+        this.databasePath = databasePath;
+        this.queryId = queryId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getPath()
+    {
+        return databasePath;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getQueryId()
+    {
+        return queryId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByChild(String childPath)
+    {
+        return query(query.queryOrderedByChild(childPath), "orderByChild=" + childPath);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByKey()
+    {
+        return query(query.queryOrderedByKey(), "orderByKey");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery orderByValue()
+    {
+        return query(query.queryOrderedByValue(), "orderByValue");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery limitToFirst(int limit)
+    {
+        return query(query.queryLimitedToFirst(limit), "limitToFirst=" + limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery limitToLast(int limit)
+    {
+        return query(query.queryLimitedToLast(limit), "limitToLast=" + limit);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(String value)
+    {
+        return query(query.queryStartingAtValue(DataProcessor.javaDataToIos(value)), "startAt=\"" + value + "\"");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(double value)
+    {
+        return query(query.queryStartingAtValue(DataProcessor.javaDataToIos(value)), "startAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery startAt(boolean value)
+    {
+        return query(query.queryStartingAtValue(DataProcessor.javaDataToIos(value)), "startAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(String value)
+    {
+        return query(query.queryEndingAtValue(DataProcessor.javaDataToIos(value)), "endAt=\"" + value + "\"");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(double value)
+    {
+        return query(query.queryEndingAtValue(DataProcessor.javaDataToIos(value)), "endAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery endAt(boolean value)
+    {
+        return query(query.queryEndingAtValue(DataProcessor.javaDataToIos(value)), "endAt=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(String value)
+    {
+        return query(query.queryEqualToValue(DataProcessor.javaDataToIos(value)), "equalTo=\"" + value + "\"");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(double value)
+    {
+        return query(query.queryEqualToValue(DataProcessor.javaDataToIos(value)), "equalTo=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DatabaseQuery equalTo(boolean value)
+    {
+        return query(query.queryEqualToValue(DataProcessor.javaDataToIos(value)), "equalTo=" + value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R extends T> void readValue(Class<T> dataType, DataCallback<R> callback)
+    {
+        final GenericPlaceholder genericPlaceholder = placeholder(dataType, callback);
+        final DataCallback<R> dispatchedCallback = database.getCallbackDispatcher().wrap(callback);
+        query.observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock(FIRDataEventType.Value, new FIRDatabaseQuery.Block_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_1() {
+            @Override
+            public void call_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_1(FIRDataSnapshot arg0, String arg1)
+            {
+                if (arg0.value() == null) {
+                    dispatchedCallback.onError(new FileNotFoundException());
+                    return;
+                }
+                T data;
+                try {
+                    data = database.iosDataToJava(listenersKey(), arg0, genericPlaceholder);
+                } catch (Exception e) {
+                    dispatchedCallback.onError(e);
+                    return;
+                }
+                dispatchedCallback.onData((R) data);
+            }
+        }, new FIRDatabaseQuery.Block_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_2() {
+            @Override
+            public void call_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_2(NSError arg0)
+            {
+                dispatchedCallback.onError(new Exception(arg0.localizedDescription()));
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Elements are children of {@link LazySnapshot} decoded by {@link ElementDataCallback}.
+     */
+    @Override
+    public <T, R extends T> void readValue(Class<T> dataType, ElementCallback<R> callback)
+    {
+        readValue(LazySnapshot.class, new ElementDataCallback<>(dataType, callback));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R extends T> ListenerRegistration onDataChange(Class<T> dataType, DataChangeListener<R> listener)
+    {
+        if (listener == null) {
+            database.removeValueListeners(listenersKey());
+            return null;
+        }
+        return database.addValueListener(listenersKey(), query, placeholder(dataType, listener), database.getCallbackDispatcher().wrap(listener));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * One native observer is registered for each of the given {@code events}.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R extends T> ListenerRegistration onChildChange(Class<T> dataType, ChildChangeListener<R> listener, ChildEventType... events)
+    {
+        if (listener == null) {
+            detachChildListeners();
+            return null;
+        }
+        final GenericPlaceholder genericPlaceholder = placeholder(dataType, listener);
+        final ChildChangeListener<R> dispatchedListener = database.getCallbackDispatcher().wrap(listener);
+        ChildEventType[] eventTypes = events.length == 0 ? ChildEventType.values() : events;
+        long[] handles = new long[eventTypes.length];
+        for (int i = 0; i < eventTypes.length; i++) {
+            final ChildEventType eventType = eventTypes[i];
+            handles[i] = query.observeEventTypeAndPreviousSiblingKeyWithBlockWithCancelBlock(nativeEventType(eventType), new FIRDatabaseQuery.Block_observeEventTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_1() {
+                @Override
+                public void call_observeEventTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_1(FIRDataSnapshot arg0, String arg1)
+                {
+                    R data = null;
+                    if (arg0.value() != null) {
+                        try {
+                            data = genericPlaceholder.getGenericType() == LazySnapshot.class ? (R) new Snapshot(arg0)
+                                    : DataProcessor.<R>iosDataToJava(arg0.value(), genericPlaceholder);
+                        } catch (Exception e) {
+                            dispatchedListener.onCanceled(e);
+                            return;
+                        }
+                    }
+                    switch (eventType) {
+                        case ADDED:
+                            dispatchedListener.onChildAdded(arg0.key(), data, arg1);
+                            break;
+                        case CHANGED:
+                            dispatchedListener.onChildChanged(arg0.key(), data, arg1);
+                            break;
+                        case REMOVED:
+                            dispatchedListener.onChildRemoved(arg0.key(), data);
+                            break;
+                        case MOVED:
+                            dispatchedListener.onChildMoved(arg0.key(), data, arg1);
+                            break;
+                    }
+                }
+            }, new FIRDatabaseQuery.Block_observeEventTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_2() {
+                @Override
+                public void call_observeEventTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_2(NSError arg0)
+                {
+                    dispatchedListener.onCanceled(new Exception(arg0.localizedDescription()));
+                }
+            });
+        }
+        return new QueryListenerRegistration(database.getChildListeners(), listenersKey(), query, handles);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readLong(LongCallback callback)
+    {
+        readPrimitive(new PrimitiveValueObserver(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readDouble(DoubleCallback callback)
+    {
+        readPrimitive(new PrimitiveValueObserver(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readBoolean(BooleanCallback callback)
+    {
+        readPrimitive(new PrimitiveValueObserver(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readString(DataCallback<String> callback)
+    {
+        readPrimitive(new PrimitiveValueObserver(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(callback))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onLongChange(LongChangeListener listener)
+    {
+        return observePrimitive(new PrimitiveValueObserver(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onDoubleChange(DoubleChangeListener listener)
+    {
+        return observePrimitive(new PrimitiveValueObserver(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onBooleanChange(BooleanChangeListener listener)
+    {
+        return observePrimitive(new PrimitiveValueObserver(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListenerRegistration onStringChange(DataChangeListener<String> listener)
+    {
+        return observePrimitive(new PrimitiveValueObserver(PrimitiveValueHandler.of(database.getCallbackDispatcher().wrap(listener))));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void keepSynced(boolean synced)
+    {
+        query.keepSynced(synced);
+    }
+
+    /**
+     * @param eventType Child event type
+     * @return {@link FIRDataEventType} equivalent of the given {@code eventType}
+     */
+    private static long nativeEventType(ChildEventType eventType)
+    {
+        switch (eventType) {
+            case ADDED:
+                return FIRDataEventType.ChildAdded;
+            case CHANGED:
+                return FIRDataEventType.ChildChanged;
+            case REMOVED:
+                return FIRDataEventType.ChildRemoved;
+            default:
+                return FIRDataEventType.ChildMoved;
+        }
+    }
+
+    /**
+     * Reads value of the query once.
+     *
+     * @param observer Observer of primitive value
+     */
+    private void readPrimitive(final PrimitiveValueObserver observer)
+    {
+        query.observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock(FIRDataEventType.Value, new FIRDatabaseQuery.Block_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_1() {
+            @Override
+            public void call_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_1(FIRDataSnapshot arg0, String arg1)
+            {
+                observer.onSnapshot(arg0);
+            }
+        }, new FIRDatabaseQuery.Block_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_2() {
+            @Override
+            public void call_observeSingleEventOfTypeAndPreviousSiblingKeyWithBlockWithCancelBlock_2(NSError arg0)
+            {
+                observer.onError(arg0);
+            }
+        });
+    }
+
+    /**
+     * Adds native observer of the query value, it has its own handle.
+     *
+     * @param observer Observer of primitive value
+     * @return Registration which removes the native observer
+     */
+    private ListenerRegistration observePrimitive(final PrimitiveValueObserver observer)
+    {
+        long handle = query.observeEventTypeWithBlockWithCancelBlock(FIRDataEventType.Value, new FIRDatabaseQuery.Block_observeEventTypeWithBlockWithCancelBlock_1() {
+            @Override
+            public void call_observeEventTypeWithBlockWithCancelBlock_1(FIRDataSnapshot arg0)
+            {
+                observer.onSnapshot(arg0);
+            }
+        }, new FIRDatabaseQuery.Block_observeEventTypeWithBlockWithCancelBlock_2() {
+            @Override
+            public void call_observeEventTypeWithBlockWithCancelBlock_2(NSError arg0)
+            {
+                observer.onError(arg0);
+            }
+        });
+        return new QueryListenerRegistration(database.getPrimitiveListeners(), listenersKey(), query, handle);
+    }
+
+    /**
+     * @param dataType Type of data given by user
+     * @param callback Callback or listener given by user
+     * @return Placeholder of {@link LazySnapshot} if it is wanted, placeholder of {@code callback} generic type otherwise
+     */
+    private static GenericPlaceholder placeholder(Class<?> dataType, Object callback)
+    {
+        if (dataType == LazySnapshot.class)
+            return new GenericPlaceholder(TypeToken.of(LazySnapshot.class));
+        return GenericPlaceholder.of(callback);
+    }
+
+    /**
+     * Removes all child observers of this query.
+     */
+    private void detachChildListeners()
+    {
+        for (QueryListenerRegistration registration : database.getChildListeners().removeAll(listenersKey())) {
+            registration.detach();
+        }
+    }
+
+    /**
+     * @return Key under which observers of this query are kept by {@link Database}
+     */
+    private String listenersKey()
+    {
+        return queryId.isEmpty() ? databasePath : databasePath + "?" + queryId;
+    }
+
+    /**
+     * @param newQuery Firebase SDK query with one more ordering or filtering rule
+     * @param param    Text representation of the new rule
+     * @return New query
+     */
+    private DatabaseQuery query(FIRDatabaseQuery newQuery, String param)
+    {
+        return new RefQuery(database, newQuery, databasePath, queryId.isEmpty() ? param : queryId + "&" + param);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.ios.database;
+
+import com.google.firebasedatabase.FIRDataSnapshot;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import apple.foundation.NSDictionary;
+import apple.foundation.NSEnumerator;
+import apple.foundation.NSNull;
+import mk.gdx.firebase.database.LazySnapshot;
+import mk.gdx.firebase.database.TypeToken;
+import mk.gdx.firebase.ios.helpers.GenericPlaceholder;
+
+/**
+ * iOS implementation of {@link LazySnapshot} - wraps {@link FIRDataSnapshot} which is given by Firebase SDK.
+ * <p>
+ * Native value of the snapshot is transformed by {@link DataProcessor} only in {@link #getValue(Class)}.
+ */
+class Snapshot implements LazySnapshot {
+
+    private final FIRDataSnapshot dataSnapshot;
+
+    /**
+     * @param dataSnapshot Snapshot from Firebase SDK
+     */
+    Snapshot(FIRDataSnapshot dataSnapshot)
+    {
+        this.dataSnapshot = dataSnapshot;
+    }
+
+    @Override
+    public String getKey()
+    {
+        return dataSnapshot.key();
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return dataSnapshot.exists();
+    }
+
+    @Override
+    public boolean hasChild(String path)
+    {
+        return dataSnapshot.hasChild(path);
+    }
+
+    @Override
+    public LazySnapshot child(String path)
+    {
+        return new Snapshot(dataSnapshot.childSnapshotForPath(path));
+    }
+
+    @Override
+    public long childrenCount()
+    {
+        return dataSnapshot.childrenCount();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getValue(Class<T> dataType)
+    {
+        if (dataType == LazySnapshot.class)
+            return (T) this;
+        Object value = dataSnapshot.value();
+        if (value == null || value instanceof NSNull)
+            return null;
+        if (value instanceof NSDictionary && List.class.isAssignableFrom(dataType))
+            return (T) DataProcessor.childrenToList(dataSnapshot, null, null, null);
+        return DataProcessor.iosDataToJava(value, new GenericPlaceholder(TypeToken.of(dataType)));
+    }
+
+    @Override
+    public Iterator<LazySnapshot> iterator()
+    {
+        final NSEnumerator<?> children = dataSnapshot.children();
+        return new Iterator<LazySnapshot>() {
+            private FIRDataSnapshot next = (FIRDataSnapshot) children.nextObject();
+
+            @Override
+            public boolean hasNext()
+            {
+                return next != null;
+            }
+
+            @Override
+            public LazySnapshot next()
+            {
+                if (next == null)
+                    throw new NoSuchElementException();
+                LazySnapshot snapshot = new Snapshot(next);
+                next = (FIRDataSnapshot) children.nextObject();
+                return snapshot;
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.ios.database;
+
+import com.badlogic.gdx.utils.ObjectMap;
+import com.google.firebasedatabase.FIRDataSnapshot;
+import com.google.firebasedatabase.FIRDatabaseQuery;
+import com.google.firebasedatabase.enums.FIRDataEventType;
+
+import java.io.FileNotFoundException;
+
+import apple.foundation.NSError;
+import mk.gdx.firebase.database.SharedValueObserver;
+import mk.gdx.firebase.ios.helpers.GenericPlaceholder;
+
+/**
+ * iOS implementation of {@link SharedValueObserver} - one {@link FIRDatabaseQuery} value observer for all data change listeners.
+ * <p>
+ * Type key of listener is its {@link GenericPlaceholder}.
+ */
+class ValueObserver extends SharedValueObserver<FIRDataSnapshot> {
+
+    private final Database database;
+    private final FIRDatabaseQuery query;
+    private long handle;
+
+    /**
+     * @param database Database distribution which decodes snapshots
+     * @param pool     Observers of the database
+     * @param key      Key of the observer inside {@code pool}
+     * @param query    Firebase SDK query
+     */
+    ValueObserver(Database database, ObjectMap<String, ValueObserver> pool, String key, FIRDatabaseQuery query)
+    {
+        super(pool, key);
+        this.database = database;
+        this.query = query;
+    }
+
+    @Override
+    protected void attach()
+    {
+        handle = query.observeEventTypeWithBlockWithCancelBlock(FIRDataEventType.Value, new FIRDatabaseQuery.Block_observeEventTypeWithBlockWithCancelBlock_1() {
+            @Override
+            public void call_observeEventTypeWithBlockWithCancelBlock_1(FIRDataSnapshot arg0)
+            {
+                if (arg0.value() == null) {
+                    dispatchCancel(new FileNotFoundException());
+                } else {
+                    dispatchChange(arg0);
+                }
+            }
+        }, new FIRDatabaseQuery.Block_observeEventTypeWithBlockWithCancelBlock_2() {
+            @Override
+            public void call_observeEventTypeWithBlockWithCancelBlock_2(NSError arg0)
+            {
+                dispatchCancel(new Exception(arg0.localizedDescription()));
+            }
+        });
+    }
+
+    @Override
+    protected void detach()
+    {
+        query.removeObserverWithHandle(handle);
+    }
+
+    @Override
+    protected Object decode(FIRDataSnapshot snapshot, Object typeKey)
+    {
+        return database.iosDataToJava(getKey(), snapshot, (GenericPlaceholder) typeKey);
+    }
+}
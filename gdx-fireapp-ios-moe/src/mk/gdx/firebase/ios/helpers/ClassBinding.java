@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.ios.helpers;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.reflect.ClassReflection;
+import com.badlogic.gdx.utils.reflect.Constructor;
+import com.badlogic.gdx.utils.reflect.Field;
+import com.badlogic.gdx.utils.reflect.ReflectionException;
+
+import java.util.Map;
+
+/**
+ * Fields of a POJO class, collected once and shared by {@link MapDeserializator} and {@link NSDictionaryHelper}.
+ * <p>
+ * Same fields are used as by {@link com.badlogic.gdx.utils.Json}: all non-static, non-transient fields of the class and its superclasses.
+ */
+class ClassBinding {
+    private static final ObjectMap<Class<?>, ClassBinding> bindings = new ObjectMap<>();
+
+    private final Class<?> type;
+    private Constructor constructor;
+    final Array<Field> fieldList;
+    final ObjectMap<String, Field> fields;
+    final ObjectMap<Field, Class<?>> elementTypes;
+    final ObjectMap<Field, java.lang.reflect.Field> primitiveFields;
+
+    private ClassBinding(Class<?> type)
+    {
+        this.type = type;
+        fieldList = new Array<>();
+        fields = new ObjectMap<>();
+        elementTypes = new ObjectMap<>();
+        primitiveFields = new ObjectMap<>();
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : ClassReflection.getDeclaredFields(current)) {
+                if (field.isStatic() || field.isTransient() || field.isSynthetic() || fields.containsKey(field.getName()))
+                    continue;
+                if (!field.isAccessible())
+                    field.setAccessible(true);
+                fieldList.add(field);
+                fields.put(field.getName(), field);
+                // Same as Json - element type of map is its value type.
+                Class<?> elementType = field.getElementType(Map.class.isAssignableFrom(field.getType()) ? 1 : 0);
+                if (elementType != null)
+                    elementTypes.put(field, elementType);
+                if (field.getType().isPrimitive())
+                    addPrimitiveField(current, field);
+            }
+        }
+    }
+
+    /**
+     * Keeps {@link java.lang.reflect.Field} of primitive field, so it can be set without wrapper object.
+     *
+     * @param declaringClass Class which declares the field
+     * @param field          Primitive field
+     */
+    private void addPrimitiveField(Class<?> declaringClass, Field field)
+    {
+        try {
+            java.lang.reflect.Field javaField = declaringClass.getDeclaredField(field.getName());
+            javaField.setAccessible(true);
+            primitiveFields.put(field, javaField);
+        } catch (Exception e) {
+            // Field is set by libGDX reflection then.
+        }
+    }
+
+    /**
+     * @param type Class
+     * @return Fields of the class, collected once
+     */
+    static ClassBinding of(Class<?> type)
+    {
+        synchronized (bindings) {
+            ClassBinding binding = bindings.get(type);
+            if (binding == null) {
+                binding = new ClassBinding(type);
+                bindings.put(type, binding);
+            }
+            return binding;
+        }
+    }
+
+    /**
+     * @return New instance created by no-arg constructor
+     * @throws ReflectionException If class has not no-arg constructor
+     */
+    Object newInstance() throws ReflectionException
+    {
+        Constructor constructor = this.constructor;
+        if (constructor == null) {
+            constructor = ClassReflection.getDeclaredConstructor(type);
+            constructor.setAccessible(true);
+            this.constructor = constructor;
+        }
+        return constructor.newInstance();
+    }
+}
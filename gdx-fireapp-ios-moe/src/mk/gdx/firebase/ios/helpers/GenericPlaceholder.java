@@ -1,9 +1,14 @@
 package mk.gdx.firebase.ios.helpers;
 
+import com.badlogic.gdx.Gdx;
+
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
 
-import libcore.reflect.ParameterizedTypeImpl;
+import mk.gdx.firebase.callbacks.DelegatingCallback;
+import mk.gdx.firebase.callbacks.TypedCallback;
+import mk.gdx.firebase.database.TypeToken;
 
 /**
  * Is a class responsible for keeping generic type of interface with generic type.
@@ -11,54 +16,122 @@ import libcore.reflect.ParameterizedTypeImpl;
  * Usage:
  * {@code
  * SomeInterface<String> si = new SomeInterface<>(){};
- * GenericPlaceholder gp = new GenericPlaceholder(si.getClass());
+ * GenericPlaceholder gp = GenericPlaceholder.of(si);
  * }
  * <p>
- * With the help of this class you can pass GenericType through multiple methods and still be able to get generic type {@link Class}.
+ * With the help of this class you can pass GenericType through multiple methods and still be able to get generic type {@link Class}.<p>
+ * Types are resolved once per callback class, placeholders are immutable and shared.
  */
 public class GenericPlaceholder {
-    private Type genericType;
+    private static final ConcurrentHashMap<Class<?>, GenericPlaceholder> placeholders = new ConcurrentHashMap<>();
+
+    private final Class<?> genericType;
+    private final Class<?> genericGenericType;
 
     /**
      * GenericPlaceholder constructor with {@link Class} of interface as argument.
      * <p>
-     * {@link Type} of given interface generic type will be get here. If some error occur
-     * when it is getting then {@link Exception#printStackTrace()} will be call.
+     * {@link Type} of given interface generic type will be get here. If it can not be read, error is logged and both types are null.<p>
+     * Prefer {@link #of(Object)}, which does not repeat this work for the same class.
      *
      * @param interfaceWithGenericClass {@link Class} of interface with some generic type. Every {@link Class} pass here should declare generic type
      */
     public GenericPlaceholder(Class<?> interfaceWithGenericClass)
     {
-        try {
-            genericType = ((ParameterizedType) (interfaceWithGenericClass.getGenericInterfaces()[0])).getActualTypeArguments()[0];
-        } catch (Exception e) {
-            e.printStackTrace();
+        Type type = findTypeArgument(interfaceWithGenericClass);
+        genericType = type != null ? TypeToken.rawType(type) : null;
+        genericGenericType = type instanceof ParameterizedType ? TypeToken.rawType(((ParameterizedType) type).getActualTypeArguments()[0]) : null;
+        if (genericType == null && Gdx.app != null)
+            Gdx.app.error("GenericPlaceholder", "Generic type of " + interfaceWithGenericClass.getName()
+                    + " can not be resolved, implement TypedCallback to give it explicitly.");
+    }
+
+    /**
+     * @param typeToken Type given explicitly
+     */
+    public GenericPlaceholder(TypeToken<?> typeToken)
+    {
+        genericType = typeToken.getRawType();
+        genericGenericType = typeToken.getElementType();
+    }
+
+    /**
+     * Gives placeholder for the generic type declared by class of the callback given by user.
+     * <p>
+     * If the callback only delegates to other one ({@link DelegatingCallback}), class of the delegate is used.<p>
+     * If the callback is {@link TypedCallback}, its {@link TypeToken} is used.
+     *
+     * @param callback Callback or listener
+     * @return Placeholder, shared between all callbacks of the same class
+     */
+    public static GenericPlaceholder of(Object callback)
+    {
+        while (true) {
+            if (callback instanceof TypedCallback)
+                return new GenericPlaceholder(((TypedCallback) callback).getTypeToken());
+            if (!(callback instanceof DelegatingCallback))
+                break;
+            callback = ((DelegatingCallback) callback).getDelegate();
+        }
+        Class<?> callbackClass = callback.getClass();
+        GenericPlaceholder placeholder = placeholders.get(callbackClass);
+        if (placeholder == null) {
+            placeholder = new GenericPlaceholder(callbackClass);
+            GenericPlaceholder previous = placeholders.putIfAbsent(callbackClass, placeholder);
+            if (previous != null)
+                placeholder = previous;
         }
+        return placeholder;
     }
 
     /**
-     * @return Generic type {@link Class}.  If {@link #genericType} do not has it {@code null} will be returned.
+     * @return Generic type {@link Class}.  If it was not resolved {@code null} will be returned.
      */
     public Class<?> getGenericType()
     {
-        try {
-            return ((ParameterizedTypeImpl) genericType).getRawType();
-        } catch (Exception e) {
-            return null;
-        }
+        return genericType;
     }
 
     /**
-     * @return Generic type of {@link #getGenericType()} {@link Class}. If {@link #genericType} do not has it {@code null} will be returned.
+     * @return Generic type of {@link #getGenericType()} {@link Class}. If it was not resolved {@code null} will be returned.
      */
     public Class<?> getGenericGenericType()
     {
-        try {
-            return (Class<?>) ((ParameterizedTypeImpl) genericType).getActualTypeArguments()[0];
-        } catch (Exception e) {
-            return null;
-        }
+        return genericGenericType;
     }
 
+    /**
+     * Placeholders are equal when they keep the same generic type, so decoded values may be shared between them.
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof GenericPlaceholder)) return false;
+        GenericPlaceholder other = (GenericPlaceholder) o;
+        return genericType == other.genericType && genericGenericType == other.genericGenericType;
+    }
 
+    @Override
+    public int hashCode()
+    {
+        return 31 * (genericType != null ? genericType.hashCode() : 0) + (genericGenericType != null ? genericGenericType.hashCode() : 0);
+    }
+
+    /**
+     * Looks for the first parameterized interface of the class or its superclasses.
+     *
+     * @param type Callback class
+     * @return Type argument of the interface, null if there is no such interface
+     */
+    private static Type findTypeArgument(Class<?> type)
+    {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Type genericInterface : current.getGenericInterfaces()) {
+                if (genericInterface instanceof ParameterizedType)
+                    return ((ParameterizedType) genericInterface).getActualTypeArguments()[0];
+            }
+        }
+        return null;
+    }
 }
@@ -1,35 +1,154 @@
 package mk.gdx.firebase.ios.helpers;
 
-import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.reflect.ArrayReflection;
+import com.badlogic.gdx.utils.reflect.Field;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+import mk.gdx.firebase.database.ValueMapper;
+import mk.gdx.firebase.database.ValueMappers;
 
 /**
  * Class which deserialize {@code Map<String, Object>} to POJO.
+ * <p>
+ * Fields of the POJO are set directly from map entries, field metadata of each class is collected only once.<p>
+ * Same fields are used as by {@link com.badlogic.gdx.utils.Json}: all non-static, non-transient fields of the class and its superclasses.<p>
+ * Entries without matching field are skipped, as Firebase SDK does on Android.
  */
 public class MapDeserializator {
 
     /**
      * Transforms {@code Map<String,Object>} to {@code T object}.
      * <p>
-     * Transformation flow is as follow:
+     * If {@code wantedType} has {@link ValueMapper} (see {@link mk.gdx.firebase.database.MappedValue}), it is used. Otherwise transformation flow is as follow:
      * <ul>
-     * <li>Transform {@code map} to Json string by {@link Json#toJson(Object)}
-     * <li>Transform Json string to POJO object by {@link Json#fromJson(Class, String)}
+     * <li>Create instance of {@code wantedType} by its no-arg constructor
+     * <li>Set each field from map entry with the same name, nested maps and lists are transformed to field types
      * </ul>
      *
      * @param map        Map which we want to transform.
      * @param wantedType Class type we want to get
      * @param <T>        Generic type of class we want to get. Needed if type we want have nested generic type.
-     * @return Deserialized object, may be null
+     * @return Deserialized object, null if some value does not fit its field or the instance can not be created
      */
+    @SuppressWarnings("unchecked")
     public static <T> T deserialize(Map<String, Object> map, Class<T> wantedType)
     {
         try {
-            String jsonString = new Json().toJson(map);
-            return new Json().fromJson(wantedType, jsonString);
+            return (T) bind(map, wantedType);
         } catch (Exception e) {
             return null;
         }
     }
+
+    /**
+     * @param map  Map with field values
+     * @param type POJO class
+     * @return New instance of {@code type} with fields set, by {@link ValueMapper} of the {@code type} if there is one
+     * @throws Exception If instance can not be created or some value does not fit its field
+     */
+    @SuppressWarnings("unchecked")
+    private static Object bind(Map<?, ?> map, Class<?> type) throws Exception
+    {
+        ValueMapper<?> mapper = ValueMappers.get(type);
+        if (mapper != null)
+            return mapper.fromMap((Map<String, Object>) map);
+        ClassBinding binding = ClassBinding.of(type);
+        Object object = binding.newInstance();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            Field field = binding.fields.get(String.valueOf(entry.getKey()));
+            if (field == null)
+                continue;
+            Object value = convert(entry.getValue(), field.getType(), binding.elementTypes.get(field));
+            if (value != null || !field.getType().isPrimitive())
+                field.set(object, value);
+        }
+        return object;
+    }
+
+    /**
+     * @param data        Value from the map, may be null
+     * @param type        Wanted type
+     * @param elementType Type of elements if {@code type} is collection or map, may be null
+     * @return {@code data} as instance of {@code type}
+     * @throws Exception If {@code data} can not be transformed
+     */
+    @SuppressWarnings("unchecked")
+    private static Object convert(Object data, Class<?> type, Class<?> elementType) throws Exception
+    {
+        if (data == null)
+            return null;
+        if (data instanceof Number) {
+            Number number = (Number) data;
+            if (type == int.class || type == Integer.class) return number.intValue();
+            if (type == long.class || type == Long.class) return number.longValue();
+            if (type == float.class || type == Float.class) return number.floatValue();
+            if (type == double.class || type == Double.class) return number.doubleValue();
+            if (type == short.class || type == Short.class) return number.shortValue();
+            if (type == byte.class || type == Byte.class) return number.byteValue();
+            if (type == boolean.class || type == Boolean.class) return number.intValue() != 0;
+        }
+        if ((type == boolean.class || type == Boolean.class) && data instanceof Boolean)
+            return data;
+        if (type == String.class)
+            return data.toString();
+        if (type.isEnum() && data instanceof String)
+            return Enum.valueOf((Class<Enum>) type, (String) data);
+        if (data instanceof List) {
+            List<?> list = (List<?>) data;
+            if (type.isArray()) {
+                Class<?> componentType = type.getComponentType();
+                Object array = ArrayReflection.newInstance(componentType, list.size());
+                for (int i = 0; i < list.size(); i++)
+                    ArrayReflection.set(array, i, convert(list.get(i), componentType, null));
+                return array;
+            }
+            if (Collection.class.isAssignableFrom(type)) {
+                Collection<Object> collection = newCollection(type, list.size());
+                for (Object element : list)
+                    collection.add(elementType != null ? convert(element, elementType, null) : element);
+                return collection;
+            }
+        }
+        if (data instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) data;
+            if (Map.class.isAssignableFrom(type)) {
+                if (elementType == null && type.isInstance(data))
+                    return data;
+                Map<Object, Object> result = type.isInterface() ? new HashMap<>() : (Map<Object, Object>) ClassBinding.of(type).newInstance();
+                for (Map.Entry<?, ?> entry : map.entrySet())
+                    result.put(entry.getKey(), elementType != null ? convert(entry.getValue(), elementType, null) : entry.getValue());
+                return result;
+            }
+            if (type != Object.class && !type.isPrimitive() && !type.isArray() && !Collection.class.isAssignableFrom(type))
+                return bind(map, type);
+        }
+        if (type.isInstance(data))
+            return data;
+        throw new IllegalArgumentException(data.getClass().getName() + " can not be set as " + type.getName());
+    }
+
+    /**
+     * @param type Collection type of the field
+     * @param size Expected number of elements
+     * @return New empty collection
+     * @throws Exception If collection can not be created
+     */
+    @SuppressWarnings("unchecked")
+    private static Collection<Object> newCollection(Class<?> type, int size) throws Exception
+    {
+        if (type.isAssignableFrom(ArrayList.class))
+            return new ArrayList<>(size);
+        if (type.isAssignableFrom(HashSet.class))
+            return new HashSet<>();
+        if (type.isInterface() && Set.class.isAssignableFrom(type))
+            throw new IllegalArgumentException("Unsupported collection type: " + type.getName());
+        return (Collection<Object>) ClassBinding.of(type).newInstance();
+    }
 }
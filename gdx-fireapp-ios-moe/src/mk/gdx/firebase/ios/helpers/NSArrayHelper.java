@@ -61,9 +61,9 @@ public class NSArrayHelper {
     @SuppressWarnings("unchecked")
     public static NSMutableArray<? extends NSObject> toArray(List list)
     {
-        NSMutableArray<NSObject> nsMutableArray = (NSMutableArray<NSObject>) NSMutableArray.alloc().init();
-        for (Object value : list) {
-            nsMutableArray.add(DataProcessor.javaDataToIos(value));
+        NSMutableArray<NSObject> nsMutableArray = (NSMutableArray<NSObject>) NSMutableArray.alloc().initWithCapacity(list.size());
+        for (int i = 0, size = list.size(); i < size; i++) {
+            nsMutableArray.add(DataProcessor.javaDataToIos(list.get(i)));
         }
         return nsMutableArray;
     }
@@ -16,16 +16,18 @@
 
 package mk.gdx.firebase.ios.helpers;
 
-import com.badlogic.gdx.utils.Json;
+import com.badlogic.gdx.utils.reflect.Field;
+import com.badlogic.gdx.utils.reflect.ReflectionException;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 
 import apple.NSObject;
 import apple.foundation.NSDictionary;
 import apple.foundation.NSMutableDictionary;
 import apple.foundation.NSString;
+import mk.gdx.firebase.database.ValueMapper;
+import mk.gdx.firebase.database.ValueMappers;
 import mk.gdx.firebase.ios.database.DataProcessor;
 
 /**
@@ -46,29 +48,52 @@ public class NSDictionaryHelper {
         return map;
     }
 
+    /**
+     * Transforms {@code map} to {@code NSDictionary}, keys are taken from {@link NSStringPool}.
+     *
+     * @param map Map with Java values, transformed by {@link DataProcessor#javaDataToIos(Object)}
+     * @return New dictionary, not null
+     */
     @SuppressWarnings("unchecked")
     public static NSDictionary toNSDictionary(Map<String, Object> map)
     {
-        NSMutableDictionary<NSString, NSObject> dictionary = (NSMutableDictionary<NSString, NSObject>) NSMutableDictionary.alloc().init();
-        Set<String> keySet = map.keySet();
-        for (String key : keySet) {
-            Object value = map.get(key);
-            dictionary.put(NSString.alloc().initWithString(key), DataProcessor.javaDataToIos(value));
+        NSMutableDictionary<NSString, NSObject> dictionary = (NSMutableDictionary<NSString, NSObject>) NSMutableDictionary.alloc().initWithCapacity(map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            dictionary.put(NSStringPool.get(String.valueOf(entry.getKey())), DataProcessor.javaDataToIos(entry.getValue()));
         }
         return dictionary;
     }
 
-    // TODO - check type erasure error occur?
+    /**
+     * Transforms {@code object} to {@code NSDictionary}.
+     * <p>
+     * Objects which have {@link ValueMapper} are transformed by it. Fields of other objects are read directly, without Json string,<p>
+     * the same fields are used as by {@link com.badlogic.gdx.utils.Json}. Null fields are skipped.
+     *
+     * @param object Map or POJO
+     * @return New dictionary, not null
+     * @throws IllegalArgumentException If field of the {@code object} can not be read
+     */
     @SuppressWarnings("unchecked")
     public static NSDictionary toNSDictionary(Object object)
     {
-        if (object instanceof Map) {
+        if (object instanceof Map)
             return toNSDictionary((Map) object);
-        } else {
-            String objectJsonData = new Json().toJson(object);
-            Map objectMap = new Json().fromJson(HashMap.class, objectJsonData);
-            return toNSDictionary(objectMap);
+        ValueMapper mapper = ValueMappers.get(object.getClass());
+        if (mapper != null)
+            return toNSDictionary(mapper.toMap(object));
+        ClassBinding binding = ClassBinding.of(object.getClass());
+        NSMutableDictionary<NSString, NSObject> dictionary = (NSMutableDictionary<NSString, NSObject>) NSMutableDictionary.alloc().initWithCapacity(binding.fieldList.size);
+        try {
+            for (int i = 0; i < binding.fieldList.size; i++) {
+                Field field = binding.fieldList.get(i);
+                Object value = field.get(object);
+                if (value != null)
+                    dictionary.put(NSStringPool.get(field.getName()), DataProcessor.javaDataToIos(value));
+            }
+        } catch (ReflectionException e) {
+            throw new IllegalArgumentException(e);
         }
+        return dictionary;
     }
-
 }
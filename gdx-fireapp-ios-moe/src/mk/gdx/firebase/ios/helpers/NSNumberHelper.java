@@ -1,36 +1,119 @@
 package mk.gdx.firebase.ios.helpers;
 
+import java.lang.reflect.Field;
+
 import apple.foundation.NSNumber;
 
 /**
  * Transforms {@code NSNumber} to java {@code Number} equivalent.
+ * <p>
+ * Kind of the number is taken from the first character of {@link NSNumber#objCType()} by lookup table prepared once,<p>
+ * so there is no string comparison for each number.
  */
 public class NSNumberHelper {
 
+    private static final byte UNKNOWN = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte INTEGER = 2;
+    private static final byte UNSIGNED_LONG = 3;
+    private static final byte FLOAT = 4;
+    private static final byte DOUBLE = 5;
+
+    private static final byte[] KINDS = new byte[128];
+
+    static {
+        // Firebase gives booleans as "c" (char), so it is taken as boolean as well.
+        KINDS['c'] = BOOLEAN;
+        KINDS['B'] = BOOLEAN;
+        for (char code : new char[]{'C', 's', 'S', 'i', 'I', 'l', 'L', 'q'})
+            KINDS[code] = INTEGER;
+        KINDS['Q'] = UNSIGNED_LONG;
+        KINDS['f'] = FLOAT;
+        KINDS['d'] = DOUBLE;
+    }
+
+    private NSNumberHelper()
+    {
+
+    }
+
     /**
      * Transforms {@code NSNumber} to java {@code Number} equivalent.
      * <p>
-     * Possible values are instances of {@link Number}
+     * Possible values are: {@link Boolean} for {@code c} and {@code B}, {@link Long} for integer types,<p>
+     * {@link Float} for {@code f} and {@link Double} for {@code d}. Unsigned 64-bit value which does not fit {@link Long} is given as {@link Double}.<p>
+     * Number of unknown type is given as {@link Long} if it has no fraction, as {@link Double} otherwise.
      *
      * @param nsNumber {@code NSNumber} that you want to transform.
-     * @return Transformed value, default value is {@link NSNumber#integerValue()}
+     * @return Transformed value, not null
      */
     public static Object getNSNumberPrimitive(NSNumber nsNumber)
     {
-        String cType = nsNumber.objCType();
-        switch (cType) {
-            case "c":
+        switch (kind(nsNumber)) {
+            case BOOLEAN:
                 return nsNumber.boolValue();
-            case "i":
-                return nsNumber.integerValue();
-            case "q":
+            case INTEGER:
                 return nsNumber.longValue();
-            case "f":
+            case UNSIGNED_LONG:
+                long unsigned = nsNumber.unsignedLongLongValue();
+                if (unsigned >= 0)
+                    return unsigned;
+                return (double) (unsigned >>> 1) * 2.0 + (unsigned & 1);
+            case FLOAT:
                 return nsNumber.floatValue();
-            case "d":
+            case DOUBLE:
                 return nsNumber.doubleValue();
             default:
-                return nsNumber.integerValue();
+                long longValue = nsNumber.longValue();
+                double doubleValue = nsNumber.doubleValue();
+                if (doubleValue == longValue)
+                    return longValue;
+                return doubleValue;
         }
     }
+
+    /**
+     * Writes number straight to the primitive field, without wrapper object.
+     *
+     * @param field    Accessible field of primitive type
+     * @param object   Object which field should be set
+     * @param nsNumber Value of the field
+     * @return True if field was set, false if field type is not numeric nor boolean
+     * @throws IllegalAccessException If field is not accessible
+     */
+    public static boolean setField(Field field, Object object, NSNumber nsNumber) throws IllegalAccessException
+    {
+        Class<?> type = field.getType();
+        if (type == int.class) {
+            field.setInt(object, nsNumber.intValue());
+        } else if (type == long.class) {
+            field.setLong(object, nsNumber.longValue());
+        } else if (type == double.class) {
+            field.setDouble(object, nsNumber.doubleValue());
+        } else if (type == float.class) {
+            field.setFloat(object, nsNumber.floatValue());
+        } else if (type == boolean.class) {
+            field.setBoolean(object, nsNumber.boolValue());
+        } else if (type == short.class) {
+            field.setShort(object, nsNumber.shortValue());
+        } else if (type == byte.class) {
+            field.setByte(object, nsNumber.charValue());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param nsNumber Number
+     * @return Kind of the number, one of the constants
+     */
+    private static byte kind(NSNumber nsNumber)
+    {
+        String cType = nsNumber.objCType();
+        if (cType == null || cType.isEmpty())
+            return UNKNOWN;
+        char code = cType.charAt(0);
+        return code < KINDS.length ? KINDS[code] : UNKNOWN;
+    }
 }
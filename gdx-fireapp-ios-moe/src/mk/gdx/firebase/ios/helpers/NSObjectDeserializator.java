@@ -0,0 +1,261 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.ios.helpers;
+
+import com.badlogic.gdx.utils.reflect.ArrayReflection;
+import com.badlogic.gdx.utils.reflect.Field;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import apple.NSObject;
+import apple.foundation.NSArray;
+import apple.foundation.NSDictionary;
+import apple.foundation.NSNull;
+import apple.foundation.NSNumber;
+import apple.foundation.NSString;
+import mk.gdx.firebase.database.ValueMapper;
+import mk.gdx.firebase.database.ValueMappers;
+import mk.gdx.firebase.ios.database.DataProcessor;
+
+/**
+ * Transforms iOS objects straight to the wanted Java type, in one pass over native collections.
+ * <p>
+ * Lists and maps are pre-sized from native collection counts, numbers are read as the wanted primitive type and POJO fields<p>
+ * are set while the dictionary is walked - without intermediate {@code List}/{@code Map} tree. Primitive fields are set by {@link NSNumberHelper#setField},<p>
+ * without wrapper object.
+ * <p>
+ * Keys without matching field are skipped. When a dictionary can not be bound directly to the POJO, it is transformed to {@code Map}<p>
+ * and passed to {@link MapDeserializator} as before.
+ */
+public class NSObjectDeserializator {
+
+    private NSObjectDeserializator()
+    {
+
+    }
+
+    /**
+     * @param nsArray     Native array
+     * @param elementType Type of list elements, may be null
+     * @return New list with elements transformed to {@code elementType} if possible, not null
+     */
+    @SuppressWarnings("unchecked")
+    public static List toList(NSArray<?> nsArray, Class<?> elementType)
+    {
+        int count = (int) nsArray.count();
+        List list = new ArrayList(count);
+        for (int i = 0; i < count; i++)
+            list.add(toElement(nsArray.objectAtIndex(i), elementType));
+        return list;
+    }
+
+    /**
+     * Transforms children of the dictionary to list, in order of their keys - push ids are ordered by creation time.
+     * <p>
+     * Order of a query is not known here, when snapshot is available its children should be used instead.
+     *
+     * @param nsDictionary Native dictionary
+     * @param elementType  Type of list elements, may be null
+     * @return New list with values of the dictionary transformed to {@code elementType} if possible, not null
+     */
+    @SuppressWarnings("unchecked")
+    public static List toList(NSDictionary<?, ?> nsDictionary, Class<?> elementType)
+    {
+        List<String> keys = new ArrayList<>((int) nsDictionary.count());
+        for (Object key : nsDictionary.keySet())
+            keys.add((String) key);
+        Collections.sort(keys);
+        List list = new ArrayList(keys.size());
+        for (String key : keys)
+            list.add(toElement(nsDictionary.get(key), elementType));
+        return list;
+    }
+
+    /**
+     * @param iosObject   Native value of list element
+     * @param elementType Type of list elements, may be null
+     * @return Element transformed to {@code elementType} if possible
+     */
+    public static Object toElement(Object iosObject, Class<?> elementType)
+    {
+        boolean typed = elementType != null && elementType != Object.class && !Map.class.isAssignableFrom(elementType);
+        if (typed && iosObject instanceof NSDictionary) {
+            return toObject((NSDictionary<?, ?>) iosObject, elementType);
+        } else if (typed && iosObject instanceof NSNumber && Number.class.isAssignableFrom(elementType)) {
+            return toNumber((NSNumber) iosObject, elementType);
+        }
+        return DataProcessor.iosDataToJava(iosObject);
+    }
+
+    /**
+     * @param nsDictionary Native dictionary
+     * @param wantedType   POJO type or map
+     * @return Instance of {@code wantedType}, or {@code Map} if the dictionary can not be transformed to {@code wantedType}
+     */
+    public static Object toObject(NSDictionary<?, ?> nsDictionary, Class<?> wantedType)
+    {
+        if (!Map.class.isAssignableFrom(wantedType) && wantedType != Object.class && ValueMappers.get(wantedType) == null) {
+            try {
+                return bind(nsDictionary, wantedType);
+            } catch (Exception e) {
+                // Falls back to the map below.
+            }
+        }
+        Map<String, Object> map = toMap(nsDictionary, null);
+        if (!Map.class.isAssignableFrom(wantedType) && wantedType != Object.class) {
+            Object deserialized = MapDeserializator.deserialize(map, wantedType);
+            if (deserialized != null)
+                return deserialized;
+        }
+        return map;
+    }
+
+    /**
+     * @param nsDictionary Native dictionary
+     * @param type         POJO type
+     * @return New instance of {@code type} with fields set from the dictionary
+     * @throws Exception If dictionary does not fit the type
+     */
+    @SuppressWarnings("unchecked")
+    private static Object bind(NSDictionary<?, ?> nsDictionary, Class<?> type) throws Exception
+    {
+        ValueMapper<?> mapper = ValueMappers.get(type);
+        if (mapper != null)
+            return mapper.fromMap(toMap(nsDictionary, null));
+        ClassBinding binding = ClassBinding.of(type);
+        Object object = binding.newInstance();
+        for (Object key : nsDictionary.keySet()) {
+            Field field = binding.fields.get((String) key);
+            if (field == null)
+                continue;
+            Object iosValue = nsDictionary.get(key);
+            if (iosValue instanceof NSNumber && field.getType().isPrimitive()) {
+                java.lang.reflect.Field javaField = binding.primitiveFields.get(field);
+                if (javaField != null && NSNumberHelper.setField(javaField, object, (NSNumber) iosValue))
+                    continue;
+            }
+            Object value = decode(iosValue, field.getType(), binding.elementTypes.get(field));
+            if (value != null || !field.getType().isPrimitive())
+                field.set(object, value);
+        }
+        return object;
+    }
+
+    /**
+     * @param iosObject   Native value, may be null
+     * @param type        Wanted type
+     * @param elementType Type of elements if {@code type} is collection or map, may be null
+     * @return Java value of the {@code type}
+     * @throws Exception If value does not fit the type
+     */
+    @SuppressWarnings("unchecked")
+    private static Object decode(Object iosObject, Class<?> type, Class<?> elementType) throws Exception
+    {
+        if (iosObject == null || iosObject instanceof NSNull)
+            return null;
+        if (iosObject instanceof NSNumber) {
+            NSNumber number = (NSNumber) iosObject;
+            if (type == boolean.class || type == Boolean.class) return number.boolValue();
+            if (type == String.class) return String.valueOf(NSNumberHelper.getNSNumberPrimitive(number));
+            Object value = type.isPrimitive() || Number.class.isAssignableFrom(type) ? toNumber(number, type) : NSNumberHelper.getNSNumberPrimitive(number);
+            if (value == null || !(type.isPrimitive() || type.isInstance(value)))
+                throw new IllegalArgumentException("Number can not be set as " + type.getName());
+            return value;
+        }
+        if (iosObject instanceof NSString) {
+            String string = DataProcessor.processPrimitiveData(iosObject, String.class);
+            if (type == String.class || type == Object.class || type == CharSequence.class) return string;
+            if (type.isEnum()) return Enum.valueOf((Class<Enum>) type, string);
+            if ((type == char.class || type == Character.class) && string.length() > 0) return string.charAt(0);
+            throw new IllegalArgumentException("String can not be set as " + type.getName());
+        }
+        if (iosObject instanceof NSArray) {
+            NSArray<?> nsArray = (NSArray<?>) iosObject;
+            int count = (int) nsArray.count();
+            if (type.isArray()) {
+                Object array = ArrayReflection.newInstance(type.getComponentType(), count);
+                for (int i = 0; i < count; i++)
+                    ArrayReflection.set(array, i, decode(nsArray.objectAtIndex(i), type.getComponentType(), null));
+                return array;
+            }
+            if (type == Object.class || type.isAssignableFrom(ArrayList.class)) {
+                List<Object> list = new ArrayList<>(count);
+                Class<?> wantedElementType = elementType != null ? elementType : Object.class;
+                for (int i = 0; i < count; i++)
+                    list.add(decode(nsArray.objectAtIndex(i), wantedElementType, null));
+                return list;
+            }
+            throw new IllegalArgumentException("Array can not be set as " + type.getName());
+        }
+        if (iosObject instanceof NSDictionary) {
+            NSDictionary<?, ?> nsDictionary = (NSDictionary<?, ?>) iosObject;
+            if (type == Object.class || type.isAssignableFrom(HashMap.class))
+                return toMap(nsDictionary, elementType);
+            if (type.isPrimitive() || type.isArray() || type.isInterface() || Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type))
+                throw new IllegalArgumentException("Dictionary can not be set as " + type.getName());
+            return bind(nsDictionary, type);
+        }
+        if (type.isInstance(iosObject))
+            return iosObject;
+        throw new IllegalArgumentException(iosObject.getClass().getName() + " can not be set as " + type.getName());
+    }
+
+    /**
+     * @param nsDictionary Native dictionary
+     * @param valueType    Type of map values, may be null
+     * @return New pre-sized map
+     */
+    private static Map<String, Object> toMap(NSDictionary<?, ?> nsDictionary, Class<?> valueType)
+    {
+        Map<String, Object> map = new HashMap<>((int) (nsDictionary.count() * 4 / 3) + 1);
+        for (Object key : nsDictionary.keySet()) {
+            Object value = nsDictionary.get(key);
+            if (valueType != null && valueType != Object.class) {
+                try {
+                    map.put((String) key, decode(value, valueType, null));
+                    continue;
+                } catch (Exception e) {
+                    // Value is kept as it is, same as before.
+                }
+            }
+            map.put((String) key, DataProcessor.iosDataToJava(value));
+        }
+        return map;
+    }
+
+    /**
+     * @param number Native number
+     * @param type   Wanted number type, primitive or wrapper
+     * @return Number of the {@code type}, read without intermediate boxing; for {@code Number} type as described by {@code objCType}
+     */
+    private static Object toNumber(NSNumber number, Class<?> type)
+    {
+        if (type == int.class || type == Integer.class) return number.intValue();
+        if (type == long.class || type == Long.class) return number.longValue();
+        if (type == double.class || type == Double.class) return number.doubleValue();
+        if (type == float.class || type == Float.class) return number.floatValue();
+        if (type == short.class || type == Short.class) return number.shortValue();
+        if (type == byte.class || type == Byte.class) return number.charValue();
+        if (type == boolean.class) return number.boolValue();
+        return NSNumberHelper.getNSNumberPrimitive(number);
+    }
+}
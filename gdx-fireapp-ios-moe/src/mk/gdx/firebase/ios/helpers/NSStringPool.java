@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 mk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mk.gdx.firebase.ios.helpers;
+
+import com.badlogic.gdx.utils.ObjectMap;
+
+import apple.foundation.NSString;
+
+/**
+ * Keeps {@link NSString} instances of frequently used strings, for ex. dictionary keys, so they are not created again for each write.
+ * <p>
+ * Only short strings are kept and number of kept strings is bounded - when pool is full, strings are created as before.<p>
+ * {@link NSString} is immutable, so one instance can be put to many dictionaries.
+ */
+public class NSStringPool {
+
+    private static final int MAX_LENGTH = 64;
+    private static final int MAX_SIZE = 4096;
+    private static final ObjectMap<String, NSString> pool = new ObjectMap<>();
+
+    private NSStringPool()
+    {
+
+    }
+
+    /**
+     * @param value Java string
+     * @return {@link NSString} equal to {@code value}, shared if {@code value} is short
+     */
+    public static NSString get(String value)
+    {
+        if (value.length() > MAX_LENGTH)
+            return NSString.alloc().initWithString(value);
+        synchronized (pool) {
+            NSString nsString = pool.get(value);
+            if (nsString == null) {
+                nsString = NSString.alloc().initWithString(value);
+                if (pool.size < MAX_SIZE)
+                    pool.put(value, nsString);
+            }
+            return nsString;
+        }
+    }
+
+    /**
+     * Releases all kept strings.
+     */
+    public static void clear()
+    {
+        synchronized (pool) {
+            pool.clear();
+        }
+    }
+}